@@ -11,6 +11,9 @@ CREATE TABLE rule_sets (
     description TEXT,
     version VARCHAR(50) DEFAULT '1.0',
     status VARCHAR(50) DEFAULT 'draft', -- draft, active, archived
+    memoize BOOLEAN DEFAULT false, -- cache results per distinct referenced input values
+    shadow_of UUID REFERENCES rule_sets(id) ON DELETE SET NULL, -- live rule set this one shadows
+    shadow_sample_rate DOUBLE PRECISION, -- fraction of live evaluations replayed against the shadow
     category VARCHAR(100), -- loan_approval, discounts, routing, etc.
     created_by UUID REFERENCES users(id),
     team_id UUID REFERENCES teams(id),
@@ -48,20 +51,51 @@ WHERE enabled = true;
 CREATE INDEX idx_rules_conditions ON rules USING GIN (conditions);
 CREATE INDEX idx_rules_actions ON rules USING GIN (actions);
 
+-- ============================================
+-- RULE SET SNAPSHOTS (Published Versions)
+-- ============================================
+
+-- Immutable copy of a rule set's enabled rules, written on every publish.
+-- Running process instances stay pinned to the version they started with.
+CREATE TABLE rule_set_snapshots (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    rule_set_id UUID NOT NULL REFERENCES rule_sets(id) ON DELETE CASCADE,
+    version INT NOT NULL,
+    rules JSONB NOT NULL, -- Rules in priority order: id, name, priority, conditions, actions
+    published_by VARCHAR(255),
+    published_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (rule_set_id, version)
+);
+
+-- ============================================
+-- RULE PIPELINES
+-- ============================================
+
+-- Named, ordered chain of rule sets evaluated in one call; each stage sees
+-- the variables the earlier stages set.
+CREATE TABLE rule_pipelines (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    name VARCHAR(255) NOT NULL UNIQUE,
+    description TEXT,
+    stages JSONB NOT NULL DEFAULT '[]', -- Rule set ids in evaluation order
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- ============================================
 -- RULE EXECUTIONS (Audit Trail)
 -- ============================================
 
 CREATE TABLE rule_executions (
     id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
-    rule_set_id UUID REFERENCES rule_sets(id),
-    rule_id UUID REFERENCES rules(id),
+    rule_set_id UUID REFERENCES rule_sets(id) ON DELETE SET NULL,
+    rule_id UUID, -- No foreign key: published snapshots keep matching rules deleted since
     workflow_instance_id VARCHAR(255),
     node_id VARCHAR(255),
     input_data JSONB,
     output_data JSONB,
     matched BOOLEAN, -- Did this rule match?
-    execution_time_ms INT,
+    execution_time_ms NUMERIC(12, 3),
     executed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
@@ -6,6 +6,16 @@ import Link from 'next/link';
 import { ConfirmDialog } from '@/components/ConfirmDialog';
 import { UserManagementPanel } from '@/components/UserManagementPanel';
 
+// The task list is served in pages, newest first; X-Next-Cursor points at the next one
+async function fetchTaskPage(query: string = '', cursor: string | null = null): Promise<{ tasks: any[]; nextCursor: string | null }> {
+    const params = new URLSearchParams(query);
+    params.set('limit', '200');
+    if (cursor) params.set('cursor', cursor);
+    const res = await fetch(`http://localhost:8081/api/runtime/tasks?${params}`);
+    if (!res.ok) throw new Error(`Failed to fetch tasks: HTTP ${res.status}`);
+    return { tasks: await res.json(), nextCursor: res.headers.get('X-Next-Cursor') };
+}
+
 export default function DashboardPage() {
     const [deployments, setDeployments] = useState<any[]>([]);
     const [instances, setInstances] = useState<any[]>([]);
@@ -56,23 +66,22 @@ export default function DashboardPage() {
     const fetchData = async () => {
         setIsLoading(true);
         try {
-            const [defsRes, instsRes, tasksRes, historyRes, workflowsRes] = await Promise.all([
+            const [defsRes, instsRes, tasksPage, historyRes, workflowsRes] = await Promise.all([
                 fetch('http://localhost:8081/api/runtime/definitions'),
                 fetch('http://localhost:8081/api/runtime/instances'),
-                fetch('http://localhost:8081/api/runtime/tasks'),
+                fetchTaskPage(), // Newest page only; polled every 5s
                 fetch('http://localhost:8081/api/audit/instances'),
                 fetch('http://localhost:8081/api/workflows')
             ]);
 
             const defs = await defsRes.json();
             const insts = await instsRes.json();
-            const tasksData = await tasksRes.json();
             const historyData = historyRes.ok ? await historyRes.json() : [];
             const workflowsData = workflowsRes.ok ? await workflowsRes.json() : [];
 
             setDeployments(defs);
             setInstances(insts);
-            setTasks(tasksData);
+            setTasks(tasksPage.tasks);
             setHistory(historyData);
             setSavedWorkflows(workflowsData);
         } catch (error) {
@@ -1203,21 +1212,41 @@ function TaskModal({ isOpen, onClose, task, onSuccess }: { isOpen: boolean; onCl
 
 function InstanceDetailsModal({ isOpen, onClose, instance }: { isOpen: boolean; onClose: () => void; instance: any }) {
     const [tasks, setTasks] = useState<any[]>([]);
+    const [nextCursor, setNextCursor] = useState<string | null>(null);
     const [loading, setLoading] = useState(false);
+    const [loadingMore, setLoadingMore] = useState(false);
     const [comment, setComment] = useState('');
     const [sending, setSending] = useState<string | null>(null);
 
+    const taskQuery = instance ? `processInstanceId=${encodeURIComponent(instance.id)}` : '';
+
     useEffect(() => {
         if (isOpen && instance) {
             setLoading(true);
-            fetch(`http://localhost:8081/api/runtime/tasks?processInstanceId=${instance.id}`)
-                .then(res => res.json())
-                .then(data => setTasks(data))
+            fetchTaskPage(taskQuery)
+                .then(page => {
+                    setTasks(page.tasks);
+                    setNextCursor(page.nextCursor);
+                })
                 .catch(console.error)
                 .finally(() => setLoading(false));
         }
     }, [isOpen, instance]);
 
+    const handleLoadMore = async () => {
+        if (!nextCursor) return;
+        setLoadingMore(true);
+        try {
+            const page = await fetchTaskPage(taskQuery, nextCursor);
+            setTasks(current => [...current, ...page.tasks]);
+            setNextCursor(page.nextCursor);
+        } catch (e) {
+            console.error(e);
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
     const handleSendComment = async (taskId: string) => {
         if (!comment.trim()) return;
         setSending(taskId);
@@ -1303,6 +1332,16 @@ function InstanceDetailsModal({ isOpen, onClose, instance }: { isOpen: boolean;
                                             </div>
                                         </div>
                                     ))}
+                                    {nextCursor && (
+                                        <button
+                                            onClick={handleLoadMore}
+                                            disabled={loadingMore}
+                                            className="w-full py-2 border border-gray-200 rounded-sm text-xs font-bold uppercase tracking-wide text-gray-600 hover:bg-gray-50 disabled:opacity-50 transition-colors flex items-center justify-center gap-1"
+                                        >
+                                            {loadingMore && <Loader2 size={12} className="animate-spin" />}
+                                            Load more tasks
+                                        </button>
+                                    )}
                                 </div>
                             )}
                         </section>
@@ -0,0 +1,127 @@
+package com.snapflow.engine.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.snapflow.engine.model.Rule;
+import com.snapflow.engine.repository.RuleRepository;
+import com.snapflow.engine.repository.RuleSetSnapshotRepository;
+import com.snapflow.engine.rules.LookupTableResolver;
+import com.snapflow.engine.service.HotRuleSetCompiler;
+import com.snapflow.engine.service.RuleExecutionAuditor;
+import com.snapflow.engine.service.RuleMetrics;
+import com.snapflow.engine.service.RuleSetCache;
+import com.snapflow.engine.service.RuleSetMemoizer;
+import com.snapflow.engine.service.RulesEngineService;
+import com.snapflow.engine.service.ShadowEvaluator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wires a {@link RulesEngineService} the way Spring would, minus the
+ * container and the database: rules come from an in-memory repository,
+ * nothing is published (so the live rules are evaluated), metrics go to a
+ * simple registry and memoization is off. Auditing is off unless asked for;
+ * when on, every evaluation builds its record but nothing is written (there
+ * is no writer thread, so the full queue drops them). Rule sets are promoted
+ * to generated classes only when asked to, never by the evaluation count.
+ */
+final class BenchmarkEngine {
+
+    private final Map<UUID, List<Rule>> ruleSets = new ConcurrentHashMap<>();
+    private final RulesEngineService service;
+    private final RuleSetCache cache;
+    private final HotRuleSetCompiler compiler;
+
+    BenchmarkEngine() {
+        this(false);
+    }
+
+    BenchmarkEngine(boolean audit) {
+        RuleRepository repository = (RuleRepository) Proxy.newProxyInstance(
+                RuleRepository.class.getClassLoader(),
+                new Class<?>[] { RuleRepository.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findByRuleSetIdAndEnabledOrderByPriorityDesc":
+                            return ruleSets.getOrDefault((UUID) args[0], List.of());
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkRuleRepository";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        RuleSetSnapshotRepository snapshots = (RuleSetSnapshotRepository) Proxy.newProxyInstance(
+                RuleSetSnapshotRepository.class.getClassLoader(),
+                new Class<?>[] { RuleSetSnapshotRepository.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findTopByRuleSetIdOrderByVersionDesc":
+                        case "findByRuleSetIdAndVersion":
+                            return Optional.empty();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkSnapshotRepository";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache = new RuleSetCache(repository, snapshots, LookupTableResolver.NONE,
+                new RuleMetrics(registry, 1000, 64), 500, 200, 3_600_000);
+        compiler = new HotRuleSetCompiler(registry, false, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        RuleExecutionAuditor auditor = new RuleExecutionAuditor(null, new ObjectMapper(),
+                audit, 1.0, 1, "drop", 0, 1, 1000);
+
+        service = new RulesEngineService();
+        inject(service, "ruleSetCache", cache);
+        inject(service, "auditor", auditor);
+        inject(service, "hotRuleSetCompiler", compiler);
+        inject(service, "memoizer", new RuleSetMemoizer(null, registry, false, 0));
+        inject(service, "shadowEvaluator", new ShadowEvaluator(null, cache, registry, false, 1, 1, 0));
+    }
+
+    UUID add(List<Rule> rules) {
+        UUID ruleSetId = rules.isEmpty() ? UUID.randomUUID() : rules.get(0).getRuleSetId();
+        ruleSets.put(ruleSetId, rules);
+        // Compile now so the measurement only sees cache hits
+        service.loadRuleSet(ruleSetId);
+        return ruleSetId;
+    }
+
+    /**
+     * Generate the rule set's class now, as the hot tier would after enough
+     * evaluations. Indexed rule sets are never promoted and stay interpreted.
+     */
+    void promote(UUID ruleSetId) {
+        compiler.promote(cache.get(ruleSetId));
+    }
+
+    RulesEngineService service() {
+        return service;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot wire " + fieldName, e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.snapflow.engine.benchmark;
+
+import com.snapflow.engine.model.Rule;
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.RuleCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of testing a single compiled condition, per operator, for a matching input
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConditionOperatorBenchmark {
+
+    @Param({ "equals", "notEquals", "greaterThan", "lessThanOrEqual", "contains", "startsWith",
+            "endsWith", "matchesRegex", "in", "notIn", "isTrue", "isNotNull" })
+    public String operator;
+
+    private CompiledRule rule;
+    private Map<String, Object> input;
+
+    @Setup
+    public void setUp() {
+        Object value;
+        Object fieldValue;
+        switch (operator) {
+            case "greaterThan":
+                value = 100;
+                fieldValue = 250.5;
+                break;
+            case "lessThanOrEqual":
+                value = "300";
+                fieldValue = 250;
+                break;
+            case "contains":
+                value = "gold";
+                fieldValue = "customer-gold-tier";
+                break;
+            case "startsWith":
+                value = "customer";
+                fieldValue = "customer-gold-tier";
+                break;
+            case "endsWith":
+                value = "tier";
+                fieldValue = "customer-gold-tier";
+                break;
+            case "matchesRegex":
+                value = "^customer-[a-z]+-tier$";
+                fieldValue = "customer-gold-tier";
+                break;
+            case "in":
+                value = List.of("bronze", "silver", "gold", "platinum");
+                fieldValue = "gold";
+                break;
+            case "notIn":
+                value = List.of("bronze", "silver", "platinum");
+                fieldValue = "gold";
+                break;
+            case "isTrue":
+                value = null;
+                fieldValue = Boolean.TRUE;
+                break;
+            case "isNotNull":
+                value = null;
+                fieldValue = "gold";
+                break;
+            case "notEquals":
+                value = "silver";
+                fieldValue = "gold";
+                break;
+            default:
+                value = "gold";
+                fieldValue = "gold";
+        }
+
+        Map<String, Object> condition = new HashMap<>();
+        condition.put("field", "subject");
+        condition.put("operator", operator);
+        condition.put("value", value);
+
+        Rule source = new Rule();
+        source.setId(UUID.randomUUID());
+        source.setName(operator);
+        source.setPriority(1);
+        source.setConditions(Map.of("conditionLogic", "AND", "conditions", List.of(condition)));
+        source.setActions(Map.of("actions", List.of()));
+        rule = RuleCompiler.compileRule(source);
+
+        input = new HashMap<>();
+        input.put("subject", fieldValue);
+        if (!rule.matches(input)) {
+            throw new IllegalStateException("Benchmark input does not satisfy " + operator);
+        }
+    }
+
+    @Benchmark
+    public boolean test() {
+        return rule.matches(input);
+    }
+}
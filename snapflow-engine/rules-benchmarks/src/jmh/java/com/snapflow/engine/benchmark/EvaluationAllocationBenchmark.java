@@ -0,0 +1,75 @@
+package com.snapflow.engine.benchmark;
+
+import com.snapflow.engine.service.RulesEngineService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated per {@link RulesEngineService#evaluateRuleSet} as the input
+ * grows with fields the rules never read. Run with the gc profiler (the
+ * default in build.gradle) and compare {@code gc.alloc.rate.norm} across
+ * {@code inputSize}: it should stay flat, since the output only records the
+ * variables the matched rule's actions set. With {@code audit} on, every
+ * evaluation also builds its audit record (sample rate 1.0, the default),
+ * which should stay flat too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EvaluationAllocationBenchmark {
+
+    private static final int RULE_COUNT = 10;
+
+    @Param({ "8", "64", "512", "4096" })
+    public int inputSize;
+
+    @Param({ "INTERPRETED", "GENERATED" })
+    public String tier;
+
+    @Param({ "false", "true" })
+    public boolean audit;
+
+    private RulesEngineService rulesEngine;
+    private UUID ruleSetId;
+    private Map<String, Object> input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkEngine engine = new BenchmarkEngine(audit);
+        ruleSetId = engine.add(SyntheticRuleSets.rules(UUID.randomUUID(), RULE_COUNT,
+                SyntheticRuleSets.Operators.MIXED, "AND"));
+        if ("GENERATED".equals(tier)) {
+            engine.promote(ruleSetId);
+        }
+        rulesEngine = engine.service();
+
+        input = new HashMap<>(SyntheticRuleSets.input(RULE_COUNT, SyntheticRuleSets.Position.LAST));
+        for (int i = 0; input.size() < inputSize; i++) {
+            input.put("unused" + i, i);
+        }
+        if (rulesEngine.evaluateRuleSet(ruleSetId, input).get("decision") == null) {
+            throw new IllegalStateException("Synthetic input did not match");
+        }
+    }
+
+    @Benchmark
+    public Object evaluateRuleSet() {
+        return rulesEngine.evaluateRuleSet(ruleSetId, input).get("decision");
+    }
+}
@@ -0,0 +1,74 @@
+package com.snapflow.engine.benchmark;
+
+import com.snapflow.engine.service.RulesEngineService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link RulesEngineService#evaluateRuleSet} on a cached rule set,
+ * across rule set sizes, key condition operators, AND/OR logic, the
+ * position of the matching rule and the execution tier (compiled plan
+ * interpreted, or promoted to a generated class; indexed rule sets are never
+ * promoted, so both tiers measure the same thing for them).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RuleSetEvaluationBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int ruleCount;
+
+    @Param({ "EQUALS", "RANGE", "REGEX", "IN", "MIXED" })
+    public SyntheticRuleSets.Operators operators;
+
+    @Param({ "AND", "OR" })
+    public String logic;
+
+    @Param({ "FIRST", "LAST" })
+    public SyntheticRuleSets.Position matchPosition;
+
+    @Param({ "INTERPRETED", "GENERATED" })
+    public String tier;
+
+    private RulesEngineService rulesEngine;
+    private UUID ruleSetId;
+    private Map<String, Object> input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkEngine engine = new BenchmarkEngine();
+        ruleSetId = engine.add(SyntheticRuleSets.rules(UUID.randomUUID(), ruleCount, operators, logic));
+        if ("GENERATED".equals(tier)) {
+            engine.promote(ruleSetId);
+        }
+        rulesEngine = engine.service();
+        input = SyntheticRuleSets.input(ruleCount, matchPosition);
+
+        Object decision = rulesEngine.evaluateRuleSet(ruleSetId, input).get("decision");
+        String expected = "D" + (matchPosition == SyntheticRuleSets.Position.FIRST ? 0 : ruleCount - 1);
+        if (!expected.equals(decision)) {
+            throw new IllegalStateException("Synthetic input matched " + decision + ", expected " + expected);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> evaluateRuleSet() {
+        return rulesEngine.evaluateRuleSet(ruleSetId, input);
+    }
+}
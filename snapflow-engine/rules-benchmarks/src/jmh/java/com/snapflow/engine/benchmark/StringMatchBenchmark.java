@@ -0,0 +1,99 @@
+package com.snapflow.engine.benchmark;
+
+import com.snapflow.engine.model.Rule;
+import com.snapflow.engine.service.RulesEngineService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Screening-style rule sets where every rule tests one free-text field with
+ * contains/startsWith/endsWith against its own pattern, evaluated against a
+ * description matched only by the last rule, or by none. With the patterns
+ * in one automaton the cost should stay flat as the number of rules grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StringMatchBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int ruleCount;
+
+    @Param({ "contains", "startsWith", "endsWith" })
+    public String operator;
+
+    @Param({ "LAST", "NONE" })
+    public String match;
+
+    private RulesEngineService rulesEngine;
+    private UUID ruleSetId;
+    private Map<String, Object> input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        UUID id = UUID.randomUUID();
+        List<Rule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            Rule rule = new Rule();
+            rule.setId(UUID.randomUUID());
+            rule.setRuleSetId(id);
+            rule.setName("rule-" + i);
+            rule.setPriority(ruleCount - i);
+            rule.setEnabled(true);
+            Map<String, Object> condition = new HashMap<>();
+            condition.put("field", "description");
+            condition.put("operator", operator);
+            condition.put("value", pattern(i));
+            rule.setConditions(Map.of("conditionLogic", "AND", "conditions", List.of(condition)));
+            rule.setActions(Map.of("actions", List.of(
+                    Map.of("type", "setVariable", "variable", "decision", "value", "D" + i))));
+            rules.add(rule);
+        }
+
+        BenchmarkEngine engine = new BenchmarkEngine();
+        ruleSetId = engine.add(rules);
+        rulesEngine = engine.service();
+
+        String token = "LAST".equals(match) ? pattern(ruleCount - 1) : "MRC-NONE#";
+        String text = "POS PURCHASE REF 0048213 CARD PRESENT CONTACTLESS LONDON GB";
+        String description = "startsWith".equals(operator) ? token + " " + text
+                : "endsWith".equals(operator) ? text + " " + token
+                : "POS PURCHASE REF 0048213 " + token + " CARD PRESENT LONDON GB";
+        input = new HashMap<>();
+        input.put("description", description);
+        input.put("amount", 125.0);
+
+        Object decision = rulesEngine.evaluateRuleSet(ruleSetId, input).get("decision");
+        Object expected = "LAST".equals(match) ? "D" + (ruleCount - 1) : null;
+        if (expected == null ? decision != null : !expected.equals(decision)) {
+            throw new IllegalStateException("Synthetic input matched " + decision + ", expected " + expected);
+        }
+    }
+
+    private static String pattern(int i) {
+        return "MRC-" + i + "#";
+    }
+
+    @Benchmark
+    public Map<String, Object> evaluateRuleSet() {
+        return rulesEngine.evaluateRuleSet(ruleSetId, input);
+    }
+}
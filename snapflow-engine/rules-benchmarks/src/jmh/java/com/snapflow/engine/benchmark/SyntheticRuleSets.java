@@ -0,0 +1,118 @@
+package com.snapflow.engine.benchmark;
+
+import com.snapflow.engine.model.Rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Synthetic rule sets for benchmarks.
+ *
+ * Rule {@code i} has two filler conditions plus one key condition that only
+ * its own target input satisfies. With AND logic the fillers are true, with
+ * OR logic they are false, so every rule tests all three conditions unless
+ * it matches. Rules are returned in priority order (highest first), the way
+ * the repository returns them.
+ */
+public final class SyntheticRuleSets {
+
+    /** Key condition operators: one of them for every rule, or a rotation of all of them */
+    public enum Operators {
+        EQUALS, RANGE, REGEX, IN, MIXED
+    }
+
+    public enum Position {
+        FIRST, LAST
+    }
+
+    private static final Operators[] ROTATION = {
+            Operators.EQUALS, Operators.RANGE, Operators.REGEX, Operators.IN };
+
+    private SyntheticRuleSets() {
+    }
+
+    static List<Rule> rules(UUID ruleSetId, int count, Operators operators, String logic) {
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule rule = new Rule();
+            rule.setId(UUID.randomUUID());
+            rule.setRuleSetId(ruleSetId);
+            rule.setName("rule-" + i);
+            rule.setPriority(count - i);
+            rule.setEnabled(true);
+
+            List<Map<String, Object>> conditions = new ArrayList<>();
+            if ("AND".equals(logic)) {
+                conditions.add(condition("region", "equals", "EU"));
+                conditions.add(condition("score", "greaterThan", 0));
+            } else {
+                conditions.add(condition("region", "equals", "NONE"));
+                conditions.add(condition("score", "lessThan", 0));
+            }
+            conditions.add(keyCondition(i, count, operatorFor(operators, i)));
+
+            Map<String, Object> conditionMap = new HashMap<>();
+            conditionMap.put("conditionLogic", logic);
+            conditionMap.put("conditions", conditions);
+            rule.setConditions(conditionMap);
+
+            Map<String, Object> action = new HashMap<>();
+            action.put("type", "setVariable");
+            action.put("variable", "decision");
+            action.put("value", "D" + i);
+            rule.setActions(Map.of("actions", List.of(action)));
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * Input matched by the first rule, or only by the last one
+     */
+    static Map<String, Object> input(int count, Position position) {
+        int target = position == Position.FIRST ? 0 : count - 1;
+        Map<String, Object> input = new HashMap<>();
+        input.put("region", "EU");
+        input.put("score", 42);
+        input.put("customerId", "CUST-000123");
+        input.put("code", "C" + target);
+        input.put("amount", threshold(target, count) + 5);
+        input.put("sku", "SKU-" + target + "-ABC");
+        input.put("category", "cat" + target + "b");
+        return input;
+    }
+
+    private static Operators operatorFor(Operators operators, int i) {
+        return operators == Operators.MIXED ? ROTATION[i % ROTATION.length] : operators;
+    }
+
+    private static Map<String, Object> keyCondition(int i, int count, Operators operator) {
+        switch (operator) {
+            case EQUALS:
+                return condition("code", "equals", "C" + i);
+            case RANGE:
+                // Later rules have lower thresholds, so an input just above
+                // rule i's threshold fails every earlier rule
+                return condition("amount", "greaterThanOrEqual", threshold(i, count));
+            case REGEX:
+                return condition("sku", "matchesRegex", "^SKU-" + i + "-[A-Z]+$");
+            default:
+                return condition("category", "in", List.of("cat" + i + "a", "cat" + i + "b", "cat" + i + "c"));
+        }
+    }
+
+    private static long threshold(int i, int count) {
+        return (long) (count - 1 - i) * 10;
+    }
+
+    private static Map<String, Object> condition(String field, String operator, Object value) {
+        Map<String, Object> condition = new HashMap<>();
+        condition.put("field", field);
+        condition.put("operator", operator);
+        condition.put("value", value);
+        return condition;
+    }
+}
@@ -0,0 +1,34 @@
+package com.snapflow.engine.config;
+
+import com.snapflow.engine.delegate.RulesGatewayParseHandler;
+import com.snapflow.engine.delegate.RulesServiceTaskParseHandler;
+import org.flowable.engine.parse.BpmnParseHandler;
+import org.flowable.spring.SpringProcessEngineConfiguration;
+import org.flowable.spring.boot.EngineConfigurationConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class FlowableConfig {
+
+    /**
+     * BPMN parse handlers for the SnapFlow extension attributes, run after
+     * Flowable's own so they can replace the behavior it set up
+     */
+    @Bean
+    public EngineConfigurationConfigurer<SpringProcessEngineConfiguration> snapflowParseHandlers(
+            RulesGatewayParseHandler gatewayParseHandler, RulesServiceTaskParseHandler serviceTaskParseHandler) {
+        return configuration -> {
+            List<BpmnParseHandler> handlers = new ArrayList<>();
+            if (configuration.getPostBpmnParseHandlers() != null) {
+                handlers.addAll(configuration.getPostBpmnParseHandlers());
+            }
+            handlers.add(gatewayParseHandler);
+            handlers.add(serviceTaskParseHandler);
+            configuration.setPostBpmnParseHandlers(handlers);
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package com.snapflow.engine.controller;
+
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.service.ConditionOrderOptimizer;
+import com.snapflow.engine.service.HotRuleSetCompiler;
+import com.snapflow.engine.service.RuleExecutionAuditor;
+import com.snapflow.engine.service.RuleSetCache;
+import com.snapflow.engine.service.RuleSetMemoizer;
+import com.snapflow.engine.service.RuleSetWarmup;
+import com.snapflow.engine.service.ShadowEvaluator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/rules")
+@CrossOrigin(origins = "*")
+public class RulesAdminController {
+
+    private final RuleSetCache ruleSetCache;
+    private final RuleExecutionAuditor auditor;
+    private final RuleSetWarmup warmup;
+    private final HotRuleSetCompiler hotRuleSetCompiler;
+    private final RuleSetMemoizer memoizer;
+    private final ConditionOrderOptimizer conditionOrderOptimizer;
+    private final ShadowEvaluator shadowEvaluator;
+
+    @Autowired
+    public RulesAdminController(RuleSetCache ruleSetCache, RuleExecutionAuditor auditor, RuleSetWarmup warmup,
+            HotRuleSetCompiler hotRuleSetCompiler, RuleSetMemoizer memoizer,
+            ConditionOrderOptimizer conditionOrderOptimizer, ShadowEvaluator shadowEvaluator) {
+        this.ruleSetCache = ruleSetCache;
+        this.auditor = auditor;
+        this.warmup = warmup;
+        this.hotRuleSetCompiler = hotRuleSetCompiler;
+        this.memoizer = memoizer;
+        this.conditionOrderOptimizer = conditionOrderOptimizer;
+        this.shadowEvaluator = shadowEvaluator;
+    }
+
+    // ============ Rule Set Cache ============
+
+    @GetMapping("/cache")
+    public Map<String, Object> getCacheStatistics() {
+        return ruleSetCache.getStatistics();
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> clearCache() {
+        ruleSetCache.invalidateAll();
+        return ResponseEntity.ok().build();
+    }
+
+    @DeleteMapping("/cache/{ruleSetId}")
+    public ResponseEntity<Void> evictRuleSet(@PathVariable UUID ruleSetId) {
+        ruleSetCache.invalidate(ruleSetId);
+        return ResponseEntity.ok().build();
+    }
+
+    // ============ Memoization ============
+
+    @GetMapping("/memo")
+    public Map<String, Object> getMemoStatistics() {
+        return memoizer.getStatistics();
+    }
+
+    // ============ Condition Order ============
+
+    @GetMapping("/condition-order")
+    public Map<String, Object> getConditionOrderStatistics() {
+        return conditionOrderOptimizer.getStatistics();
+    }
+
+    @GetMapping("/condition-order/{ruleSetId}")
+    public Map<String, Object> getConditionOrder(@PathVariable UUID ruleSetId) {
+        return conditionOrderOptimizer.describe(ruleSetId);
+    }
+
+    /**
+     * Reorder now instead of waiting for the next scheduled run
+     */
+    @PostMapping("/condition-order")
+    public Map<String, Object> reorderConditions() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("groupsReordered", conditionOrderOptimizer.optimize());
+        return result;
+    }
+
+    // ============ Execution Audit ============
+
+    @GetMapping("/audit")
+    public Map<String, Object> getAuditStatistics() {
+        return auditor.getStatistics();
+    }
+
+    // ============ Shadow Evaluation ============
+
+    @GetMapping("/shadows")
+    public Map<String, Object> getShadowStatistics() {
+        return shadowEvaluator.getStatistics();
+    }
+
+    // ============ Warm-up ============
+
+    @GetMapping("/warmup")
+    public Map<String, Object> getWarmupReport() {
+        return warmup.getLastReport();
+    }
+
+    @PostMapping("/warmup")
+    public Map<String, Object> runWarmup() {
+        return warmup.warmUp();
+    }
+
+    // ============ Generated Classes ============
+
+    /**
+     * Tier settings and counters; which rule sets are promoted is listed per entry under /cache
+     */
+    @GetMapping("/codegen")
+    public Map<String, Object> getCodegenStatistics() {
+        return hotRuleSetCompiler.getStatistics();
+    }
+
+    /**
+     * Promote a rule set now instead of waiting for it to become hot.
+     * Indexed rule sets are never promoted. Evicting the rule set from the
+     * cache drops the generated class again.
+     */
+    @PostMapping("/codegen/{ruleSetId}")
+    public Map<String, Object> promoteRuleSet(@PathVariable UUID ruleSetId) {
+        CompiledRuleSet ruleSet = ruleSetCache.get(ruleSetId);
+        Map<String, Object> result = new HashMap<>();
+        result.put("ruleSetId", ruleSetId);
+        result.put("indexed", ruleSet.isIndexed());
+        result.put("promoted", ruleSet.isPromoted() || hotRuleSetCompiler.promote(ruleSet));
+        result.put("generationMicros", ruleSet.getGenerationNanos() / 1000);
+        return result;
+    }
+}
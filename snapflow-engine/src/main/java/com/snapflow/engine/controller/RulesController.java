@@ -2,15 +2,38 @@ package com.snapflow.engine.controller;
 
 import com.snapflow.engine.model.Rule;
 import com.snapflow.engine.model.RuleSet;
+import com.snapflow.engine.model.RulePipeline;
+import com.snapflow.engine.model.RuleSetSnapshot;
+import com.snapflow.engine.repository.RulePipelineRepository;
 import com.snapflow.engine.repository.RuleRepository;
 import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.repository.RuleSetSnapshotRepository;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.EvaluationStats;
+import com.snapflow.engine.rules.LookupTable;
+import com.snapflow.engine.rules.RuleCompiler;
+import com.snapflow.engine.service.BatchEvaluationService;
+import com.snapflow.engine.service.EvaluationContext;
+import com.snapflow.engine.service.LookupTableService;
+import com.snapflow.engine.service.RuleImportService;
+import com.snapflow.engine.service.RuleMetrics;
+import com.snapflow.engine.service.RulePipelineService;
+import com.snapflow.engine.service.RuleSetPublisher;
 import com.snapflow.engine.service.RulesEngineService;
+import com.snapflow.engine.service.ShadowEvaluator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 @RestController
@@ -29,6 +52,33 @@ public class RulesController {
     @Autowired
     private RulesEngineService rulesEngine;
 
+    @Autowired
+    private BatchEvaluationService batchEvaluationService;
+
+    @Autowired
+    private RuleSetSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private RuleSetPublisher ruleSetPublisher;
+
+    @Autowired
+    private LookupTableService lookupTableService;
+
+    @Autowired
+    private RuleImportService ruleImportService;
+
+    @Autowired
+    private ShadowEvaluator shadowEvaluator;
+
+    @Autowired
+    private RuleMetrics ruleMetrics;
+
+    @Autowired
+    private RulePipelineRepository pipelineRepository;
+
+    @Autowired
+    private RulePipelineService pipelineService;
+
     // ============ Rule Sets ============
 
     @GetMapping("/rule-sets")
@@ -45,6 +95,9 @@ public class RulesController {
 
     @PostMapping("/rule-sets")
     public ResponseEntity<RuleSet> createRuleSet(@RequestBody RuleSet ruleSet) {
+        // Shadowing is registered through /shadow so the evaluator knows about it
+        ruleSet.setShadowOf(null);
+        ruleSet.setShadowSampleRate(null);
         RuleSet saved = ruleSetRepository.save(ruleSet);
         return ResponseEntity.ok(saved);
     }
@@ -57,6 +110,7 @@ public class RulesController {
                     existing.setDescription(ruleSet.getDescription());
                     existing.setVersion(ruleSet.getVersion());
                     existing.setStatus(ruleSet.getStatus());
+                    existing.setMemoize(ruleSet.getMemoize());
                     RuleSet updated = ruleSetRepository.save(existing);
 
                     // Invalidate cache
@@ -70,13 +124,62 @@ public class RulesController {
     @DeleteMapping("/rule-sets/{id}")
     public ResponseEntity<Void> deleteRuleSet(@PathVariable UUID id) {
         if (ruleSetRepository.existsById(id)) {
+            snapshotRepository.deleteByRuleSetId(id);
             ruleSetRepository.deleteById(id);
-            rulesEngine.invalidateCache(id);
+            rulesEngine.removeFromCache(id);
+            ruleMetrics.remove(id);
+            shadowEvaluator.ruleSetDeleted(id);
             return ResponseEntity.ok().build();
         }
         return ResponseEntity.notFound().build();
     }
 
+    // ============ Snapshots ============
+
+    /**
+     * Publish the current rules as a new immutable version. From then on the
+     * rule set is evaluated from its latest published version only.
+     */
+    @PostMapping("/rule-sets/{id}/publish")
+    public ResponseEntity<Map<String, Object>> publishRuleSet(
+            @PathVariable UUID id,
+            @RequestParam(required = false) String publishedBy) {
+        try {
+            return ruleSetPublisher.publish(id, publishedBy)
+                    .map(snapshot -> ResponseEntity.ok(snapshotSummary(snapshot)))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Rule set was published concurrently, retry"));
+        }
+    }
+
+    @GetMapping("/rule-sets/{id}/snapshots")
+    public ResponseEntity<List<Map<String, Object>>> getSnapshots(@PathVariable UUID id) {
+        List<Map<String, Object>> snapshots = new ArrayList<>();
+        for (RuleSetSnapshot snapshot : snapshotRepository.findByRuleSetIdOrderByVersionDesc(id)) {
+            snapshots.add(snapshotSummary(snapshot));
+        }
+        return ResponseEntity.ok(snapshots);
+    }
+
+    @GetMapping("/rule-sets/{id}/snapshots/{version}")
+    public ResponseEntity<RuleSetSnapshot> getSnapshot(@PathVariable UUID id, @PathVariable Integer version) {
+        return snapshotRepository.findByRuleSetIdAndVersion(id, version)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private Map<String, Object> snapshotSummary(RuleSetSnapshot snapshot) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("ruleSetId", snapshot.getRuleSetId());
+        summary.put("version", snapshot.getVersion());
+        summary.put("ruleCount", snapshot.getRules() != null ? snapshot.getRules().size() : 0);
+        summary.put("publishedBy", snapshot.getPublishedBy());
+        summary.put("publishedAt", snapshot.getPublishedAt());
+        return summary;
+    }
+
     // ============ Rules ============
 
     @GetMapping("/rule-sets/{ruleSetId}/rules")
@@ -103,6 +206,34 @@ public class RulesController {
         return ResponseEntity.ok(saved);
     }
 
+    /**
+     * Import a decision table, one rule per row, in a single transaction.
+     * Accepts CSV (header row first) or JSON ({"columns": [...], "rows": [[...]]}).
+     * Returns 422 with the per-row errors when the import was rolled back.
+     */
+    @PostMapping(value = "/rule-sets/{ruleSetId}/rules/import",
+            consumes = { "text/csv", MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Map<String, Object>> importRules(
+            @PathVariable UUID ruleSetId,
+            @RequestParam(defaultValue = "false") boolean replace,
+            @RequestParam(defaultValue = "false") boolean skipInvalid,
+            HttpServletRequest request) {
+        if (!ruleSetRepository.existsById(ruleSetId)) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            Map<String, Object> result = MediaType.APPLICATION_JSON.isCompatibleWith(
+                    MediaType.parseMediaType(request.getContentType()))
+                    ? ruleImportService.importJson(ruleSetId, request.getInputStream(), replace, skipInvalid)
+                    : ruleImportService.importCsv(ruleSetId, request.getInputStream(), replace, skipInvalid);
+            return Boolean.TRUE.equals(result.get("committed"))
+                    ? ResponseEntity.ok(result)
+                    : ResponseEntity.unprocessableEntity().body(result);
+        } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid decision table: " + e.getMessage()));
+        }
+    }
+
     @PutMapping("/rules/{id}")
     public ResponseEntity<Rule> updateRule(@PathVariable UUID id, @RequestBody Rule rule) {
         return ruleRepository.findById(id)
@@ -140,9 +271,25 @@ public class RulesController {
     @PostMapping("/rule-sets/{ruleSetId}/evaluate")
     public ResponseEntity<Map<String, Object>> evaluateRules(
             @PathVariable UUID ruleSetId,
+            @RequestParam(defaultValue = "false") boolean includeStats,
+            @RequestParam(required = false) Integer version,
             @RequestBody Map<String, Object> inputData) {
         try {
-            Map<String, Object> result = rulesEngine.evaluateRuleSet(ruleSetId, inputData);
+            if (version != null && snapshotRepository.findByRuleSetIdAndVersion(ruleSetId, version).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            CompiledRuleSet ruleSet = rulesEngine.loadRuleSet(ruleSetId, version);
+            if (includeStats) {
+                // Wrap the output together with how many rules the index let us skip
+                EvaluationStats stats = new EvaluationStats();
+                Map<String, Object> result = rulesEngine.evaluate(ruleSet, inputData,
+                        EvaluationContext.withStats(stats));
+                Map<String, Object> response = new HashMap<>();
+                response.put("output", result);
+                response.put("stats", stats.toMap());
+                return ResponseEntity.ok(response);
+            }
+            Map<String, Object> result = rulesEngine.evaluate(ruleSet, inputData, EvaluationContext.NONE);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             logger.error("Error evaluating rules", e);
@@ -150,110 +297,262 @@ public class RulesController {
         }
     }
 
-    // ============ Rule Testing ============
-
-    @PostMapping("/rules/{id}/test")
-    public ResponseEntity<Map<String, Object>> testRule(
-            @PathVariable UUID id,
+    /**
+     * Evaluate in explain mode: the output plus every rule visited, each
+     * condition's result, where evaluation short-circuited and per-rule timings
+     */
+    @PostMapping("/rule-sets/{ruleSetId}/explain")
+    public ResponseEntity<Map<String, Object>> explainRules(
+            @PathVariable UUID ruleSetId,
+            @RequestParam(required = false) Integer version,
             @RequestBody Map<String, Object> inputData) {
-        return ruleRepository.findById(id)
-                .map(rule -> {
-                    try {
-                        // Create a temporary rule set with just this rule
-                        Map<String, Object> result = new HashMap<>(inputData);
+        try {
+            if (version != null && snapshotRepository.findByRuleSetIdAndVersion(ruleSetId, version).isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(rulesEngine.explain(rulesEngine.loadRuleSet(ruleSetId, version), inputData));
+        } catch (Exception e) {
+            logger.error("Error explaining rules", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 
-                        // Evaluate conditions
-                        boolean matched = evaluateConditionsForTest(rule.getConditions(), inputData);
+    /**
+     * Evaluate many inputs against one rule-set snapshot. Accepts a JSON array
+     * or NDJSON (application/x-ndjson) and streams results back in input order
+     * in the same format, one {"index", "output" | "error"} entry per record.
+     */
+    @PostMapping(value = "/rule-sets/{ruleSetId}/evaluate/batch",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public void evaluateRulesBatch(
+            @PathVariable UUID ruleSetId,
+            @RequestParam(required = false) Integer parallelism,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        int effectiveParallelism = batchEvaluationService.resolveParallelism(parallelism);
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+
+        response.setCharacterEncoding("UTF-8");
+        if (MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)) {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            batchEvaluationService.evaluateNdjson(ruleSetId, request.getInputStream(),
+                    response.getOutputStream(), effectiveParallelism);
+        } else {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            batchEvaluationService.evaluateJsonArray(ruleSetId, request.getInputStream(),
+                    response.getOutputStream(), effectiveParallelism);
+        }
+    }
 
-                        Map<String, Object> response = new HashMap<>();
-                        response.put("matched", matched);
-                        response.put("inputData", inputData);
+    // ============ Lookup Tables ============
 
-                        if (matched) {
-                            // Execute actions on a copy of input data
-                            executeActionsForTest(rule.getActions(), result);
-                            response.put("outputData", result);
-                        }
+    @GetMapping("/lookup-tables")
+    public ResponseEntity<List<Map<String, Object>>> getLookupTables() {
+        return ResponseEntity.ok(lookupTableService.list());
+    }
 
-                        return ResponseEntity.ok(response);
-                    } catch (Exception e) {
-                        logger.error("Error testing rule", e);
-                        Map<String, Object> errorMap = new HashMap<>();
-                        errorMap.put("error", e.getMessage());
-                        return ResponseEntity.badRequest().body(errorMap);
-                    }
-                })
-                .orElseGet(() -> {
-                    return ResponseEntity.notFound().build();
-                });
+    @GetMapping("/lookup-tables/{name}")
+    public ResponseEntity<Map<String, Object>> getLookupTable(@PathVariable String name) {
+        Map<String, Object> table = lookupTableService.describe(name);
+        return table != null ? ResponseEntity.ok(table) : ResponseEntity.notFound().build();
     }
 
-    // Helper methods for testing (simplified versions)
-    @SuppressWarnings("unchecked")
-    private boolean evaluateConditionsForTest(Map<String, Object> conditionsMap, Map<String, Object> data) {
-        if (conditionsMap == null || conditionsMap.isEmpty()) {
-            return true;
+    @GetMapping("/lookup-tables/{name}/lookup")
+    public ResponseEntity<Map<String, Object>> lookupKey(@PathVariable String name, @RequestParam String key) {
+        Map<String, Object> result = lookupTableService.lookup(name, key);
+        return result != null ? ResponseEntity.ok(result) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Create or replace a lookup table from a CSV body ({@code key[,value]},
+     * or {@code low,high[,value]} for kind=ranges). Pass sorted=true when the
+     * rows are already in key order to stream them without buffering.
+     */
+    @PutMapping(value = "/lookup-tables/{name}", consumes = { "text/csv", MediaType.TEXT_PLAIN_VALUE })
+    public ResponseEntity<Map<String, Object>> uploadLookupTable(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "keys") String kind,
+            @RequestParam(defaultValue = "string") String keyType,
+            @RequestParam(defaultValue = "false") boolean header,
+            @RequestParam(defaultValue = "false") boolean sorted,
+            HttpServletRequest request) throws IOException {
+        try {
+            return ResponseEntity.ok(lookupTableService.upload(name, request.getInputStream(),
+                    LookupTable.Kind.valueOf(kind.toUpperCase()), LookupTable.KeyType.valueOf(keyType.toUpperCase()),
+                    header, sorted));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
+    }
 
-        List<Map<String, Object>> conditions = (List<Map<String, Object>>) conditionsMap.get("conditions");
-        if (conditions == null || conditions.isEmpty()) {
-            return true;
+    @DeleteMapping("/lookup-tables/{name}")
+    public ResponseEntity<Void> deleteLookupTable(@PathVariable String name) throws IOException {
+        try {
+            return lookupTableService.delete(name)
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+    }
 
-        String logic = (String) conditionsMap.getOrDefault("conditionLogic", "AND");
+    // ============ Shadow Evaluation ============
 
-        if ("AND".equals(logic)) {
-            return conditions.stream().allMatch(c -> evaluateConditionForTest(c, data));
-        } else {
-            return conditions.stream().anyMatch(c -> evaluateConditionForTest(c, data));
+    /**
+     * Evaluate this rule set in the background against a sample of the live
+     * rule set's real inputs and compare the decisions. Nothing it decides is
+     * applied; replaces any earlier registration and resets its statistics.
+     */
+    @PutMapping("/rule-sets/{id}/shadow")
+    public ResponseEntity<Map<String, Object>> registerShadow(
+            @PathVariable UUID id,
+            @RequestParam("of") UUID liveRuleSetId,
+            @RequestParam(defaultValue = "0.1") double sampleRate) {
+        try {
+            return shadowEvaluator.register(id, liveRuleSetId, sampleRate)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
-    private boolean evaluateConditionForTest(Map<String, Object> condition, Map<String, Object> data) {
-        String field = (String) condition.get("field");
-        String operator = (String) condition.get("operator");
-        Object conditionValue = condition.get("value");
-        Object fieldValue = data.get(field);
-
-        // Simplified evaluation for testing
-        switch (operator) {
-            case "equals":
-                return Objects.equals(fieldValue, conditionValue);
-            case "greaterThan":
-                return compareNumbers(fieldValue, conditionValue) > 0;
-            case "lessThan":
-                return compareNumbers(fieldValue, conditionValue) < 0;
-            default:
-                return false;
+    /**
+     * Divergence statistics and recent mismatches since the shadow was registered
+     */
+    @GetMapping("/rule-sets/{id}/shadow")
+    public ResponseEntity<Map<String, Object>> getShadow(@PathVariable UUID id) {
+        Map<String, Object> shadow = shadowEvaluator.describe(id);
+        return shadow != null ? ResponseEntity.ok(shadow) : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/rule-sets/{id}/shadow")
+    public ResponseEntity<Void> unregisterShadow(@PathVariable UUID id) {
+        return shadowEvaluator.unregister(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    // ============ Pipelines ============
+
+    @GetMapping("/pipelines")
+    public ResponseEntity<List<RulePipeline>> getAllPipelines() {
+        return ResponseEntity.ok(pipelineRepository.findAll());
+    }
+
+    @GetMapping("/pipelines/{id}")
+    public ResponseEntity<RulePipeline> getPipeline(@PathVariable UUID id) {
+        return pipelineRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/pipelines")
+    public ResponseEntity<?> createPipeline(@RequestBody RulePipeline pipeline) {
+        String error = validateStages(pipeline.getStages());
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", error));
+        }
+        try {
+            return ResponseEntity.ok(pipelineRepository.save(pipeline));
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "A pipeline named " + pipeline.getName() + " already exists"));
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void executeActionsForTest(Map<String, Object> actionsMap, Map<String, Object> outputData) {
-        if (actionsMap == null || actionsMap.isEmpty()) {
-            return;
+    @PutMapping("/pipelines/{id}")
+    public ResponseEntity<?> updatePipeline(@PathVariable UUID id, @RequestBody RulePipeline pipeline) {
+        String error = validateStages(pipeline.getStages());
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", error));
         }
+        return pipelineRepository.findById(id)
+                .<ResponseEntity<?>>map(existing -> {
+                    existing.setName(pipeline.getName());
+                    existing.setDescription(pipeline.getDescription());
+                    existing.setStages(pipeline.getStages());
+                    RulePipeline updated = pipelineRepository.save(existing);
+                    pipelineService.invalidate(id);
+                    return ResponseEntity.ok(updated);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        List<Map<String, Object>> actions = (List<Map<String, Object>>) actionsMap.get("actions");
-        if (actions == null) {
-            return;
+    @DeleteMapping("/pipelines/{id}")
+    public ResponseEntity<Void> deletePipeline(@PathVariable UUID id) {
+        if (pipelineRepository.existsById(id)) {
+            pipelineRepository.deleteById(id);
+            pipelineService.invalidate(id);
+            return ResponseEntity.ok().build();
         }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Evaluate every stage of a pipeline in order, each seeing what the
+     * earlier stages set. Returns the combined output and changes plus, per
+     * stage, the matched rule, its changes and how long it took.
+     */
+    @PostMapping("/pipelines/{id}/evaluate")
+    public ResponseEntity<Map<String, Object>> evaluatePipeline(
+            @PathVariable UUID id,
+            @RequestBody Map<String, Object> inputData) {
+        try {
+            return pipelineService.evaluate(id, inputData, EvaluationContext.NONE)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            logger.error("Error evaluating pipeline", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 
-        for (Map<String, Object> action : actions) {
-            String type = (String) action.get("type");
-            if ("setVariable".equals(type)) {
-                String variable = (String) action.get("variable");
-                Object value = action.get("value");
-                outputData.put(variable, value);
+    private String validateStages(List<UUID> stages) {
+        if (stages == null || stages.isEmpty()) {
+            return "A pipeline needs at least one stage";
+        }
+        for (UUID ruleSetId : stages) {
+            if (ruleSetId == null || !ruleSetRepository.existsById(ruleSetId)) {
+                return "Rule set not found: " + ruleSetId;
             }
         }
+        return null;
     }
 
-    private int compareNumbers(Object a, Object b) {
-        if (a == null || b == null)
-            return 0;
-        double aNum = ((Number) a).doubleValue();
-        double bNum = ((Number) b).doubleValue();
-        return Double.compare(aNum, bNum);
+    // ============ Rule Testing ============
+
+    /**
+     * Test one rule on its own against an input, with the real engine: the
+     * rule is compiled exactly as it would be in its rule set and explained
+     */
+    @PostMapping("/rules/{id}/test")
+    public ResponseEntity<Map<String, Object>> testRule(
+            @PathVariable UUID id,
+            @RequestBody Map<String, Object> inputData) {
+        return ruleRepository.findById(id)
+                .map(rule -> {
+                    try {
+                        Map<String, Object> trace = rulesEngine.explain(
+                                RuleCompiler.compileRule(rule, lookupTableService), inputData);
+
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("matched", trace.get("matched"));
+                        response.put("inputData", inputData);
+                        if (Boolean.TRUE.equals(trace.get("matched"))) {
+                            response.put("outputData", trace.get("output"));
+                        }
+                        response.put("trace", trace);
+                        return ResponseEntity.ok(response);
+                    } catch (Exception e) {
+                        logger.error("Error testing rule", e);
+                        Map<String, Object> errorMap = new HashMap<>();
+                        errorMap.put("error", e.getMessage());
+                        return ResponseEntity.badRequest().body(errorMap);
+                    }
+                })
+                .orElseGet(() -> {
+                    return ResponseEntity.notFound().build();
+                });
     }
 }
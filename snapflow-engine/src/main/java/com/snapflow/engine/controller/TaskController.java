@@ -1,13 +1,21 @@
 package com.snapflow.engine.controller;
 
 import com.snapflow.engine.model.FormDefinition;
+import com.snapflow.engine.model.UserGroup;
 import com.snapflow.engine.repository.FormRepository;
+import com.snapflow.engine.repository.UserRepository;
+import com.snapflow.engine.service.TaskEventStream;
+import com.snapflow.engine.service.TaskInboxService;
 import org.flowable.engine.RuntimeService;
 import org.flowable.engine.TaskService;
 import org.flowable.task.api.Task;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -17,44 +25,60 @@ import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/runtime/tasks")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { TaskController.NEXT_CURSOR_HEADER, TaskController.TOTAL_COUNT_HEADER })
 public class TaskController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
     private final TaskService taskService;
     private final RuntimeService runtimeService;
     private final FormRepository formRepository;
+    private final TaskInboxService taskInboxService;
+    private final TaskEventStream taskEventStream;
+    private final UserRepository userRepository;
 
     @Autowired
-    public TaskController(TaskService taskService, RuntimeService runtimeService, FormRepository formRepository) {
+    public TaskController(TaskService taskService, RuntimeService runtimeService, FormRepository formRepository,
+            TaskInboxService taskInboxService, TaskEventStream taskEventStream, UserRepository userRepository) {
         this.taskService = taskService;
         this.runtimeService = runtimeService;
         this.formRepository = formRepository;
+        this.taskInboxService = taskInboxService;
+        this.taskEventStream = taskEventStream;
+        this.userRepository = userRepository;
     }
 
     // 1. List Active Tasks
+    // Newest first, one bounded page per call. The body stays a plain array;
+    // the cursor of the next page (absent on the last) and, when requested,
+    // the total count come back as headers.
     @GetMapping
-    public List<Map<String, Object>> getTasks(@RequestParam(required = false) String assignee) {
-        // Simple query: if assignee provided, filter by it. Else return all active
-        // tasks.
-        // In a real app, you'd filter by logged-in user.
-        var query = taskService.createTaskQuery().active();
-
-        if (assignee != null && !assignee.isEmpty()) {
-            query.taskAssignee(assignee);
+    public ResponseEntity<?> getTasks(@RequestParam(required = false) String assignee,
+            @RequestParam(required = false) String candidateUser,
+            @RequestParam(required = false) List<String> candidateGroup,
+            @RequestParam(required = false) String processInstanceId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) List<String> fields,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        TaskInboxService.Filter filter =
+                new TaskInboxService.Filter(assignee, candidateUser, candidateGroup, processInstanceId);
+        TaskInboxService.Page page;
+        try {
+            page = taskInboxService.page(filter, cursor, limit, fields, includeTotal);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
 
-        List<Task> tasks = query.orderByTaskCreateTime().desc().list();
-
-        return tasks.stream().map(task -> {
-            Map<String, Object> map = new HashMap<>();
-            map.put("id", task.getId());
-            map.put("name", task.getName());
-            map.put("assignee", task.getAssignee());
-            map.put("createTime", task.getCreateTime());
-            map.put("processInstanceId", task.getProcessInstanceId());
-            map.put("formKey", task.getFormKey());
-            return map;
-        }).collect(Collectors.toList());
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        if (page.getTotal() != null) {
+            headers.set(TOTAL_COUNT_HEADER, page.getTotal().toString());
+        }
+        return ResponseEntity.ok().headers(headers).body(page.getTasks());
     }
 
     // 2. Get Task Form Data (Definition + Variables)
@@ -102,4 +126,35 @@ public class TaskController {
             return ResponseEntity.status(500).body("Failed to complete task: " + e.getMessage());
         }
     }
+
+    // 4. Stream Inbox Changes
+    // Server-sent events for tasks created, assigned, updated or completed in
+    // the inbox of the user or of their groups (from the user's identity when
+    // none are given). EventSource reconnects with Last-Event-ID and gets what
+    // it missed, or a "reset" event when it must reload the task list.
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTasks(@RequestParam String user,
+            @RequestParam(required = false) List<String> group,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        List<String> groups = group;
+        if (groups == null) {
+            groups = userRepository.findByUsername(user)
+                    .map(found -> found.getGroups().stream().map(UserGroup::getCode).collect(Collectors.toList()))
+                    .orElse(List.of());
+        }
+        Long resumeFrom = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                resumeFrom = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                // Not one of ours: treated as too old, so the client is told to reset
+                resumeFrom = -1L;
+            }
+        }
+        try {
+            return ResponseEntity.ok(taskEventStream.subscribe(user, groups, resumeFrom));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
 }
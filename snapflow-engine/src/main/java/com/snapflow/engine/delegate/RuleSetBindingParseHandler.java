@@ -0,0 +1,115 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.service.RuleSetHandle;
+import com.snapflow.engine.service.RulesEngineService;
+import org.flowable.bpmn.model.FlowElement;
+import org.flowable.bpmn.model.FlowableListener;
+import org.flowable.bpmn.model.ImplementationType;
+import org.flowable.bpmn.model.Process;
+import org.flowable.common.engine.api.FlowableException;
+import org.flowable.engine.impl.bpmn.parser.BpmnParse;
+import org.flowable.engine.delegate.ExecutionListener;
+import org.flowable.engine.impl.bpmn.parser.handler.AbstractBpmnParseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.UUID;
+
+/**
+ * Base for parse handlers that bind a flow element to a rule set when its
+ * process definition is parsed. Runs after Flowable's own handlers, so
+ * subclasses can replace the behavior those set up.
+ *
+ * A new deployment referencing a malformed or unknown rule set fails. When
+ * an existing definition is parsed again (e.g. after a restart), a rule set
+ * deleted since only logs a warning, so running instances are not stranded.
+ *
+ * Every bound rule set is also registered with the process's
+ * {@link RuleSetPinningListener}, so new instances are pinned to its
+ * published version as they start.
+ */
+public abstract class RuleSetBindingParseHandler<T extends FlowElement> extends AbstractBpmnParseHandler<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleSetBindingParseHandler.class);
+
+    /** Namespace of the SnapFlow BPMN extension attributes */
+    public static final String SNAPFLOW_NAMESPACE = "http://snapflow.com/bpmn";
+
+    static final String RULE_SET_ATTRIBUTE = "ruleSet";
+
+    protected final RulesEngineService rulesEngine;
+    private final RuleSetRepository ruleSetRepository;
+
+    @Value("${snapflow.rules.snapshots.pin-process-instances:true}")
+    protected boolean pinProcessInstances = true;
+
+    protected RuleSetBindingParseHandler(RulesEngineService rulesEngine, RuleSetRepository ruleSetRepository) {
+        this.rulesEngine = rulesEngine;
+        this.ruleSetRepository = ruleSetRepository;
+    }
+
+    /**
+     * The {@code snapflow:ruleSet} attribute of an element, or null
+     */
+    protected static String ruleSetAttribute(FlowElement element) {
+        String value = element.getAttributeValue(SNAPFLOW_NAMESPACE, RULE_SET_ATTRIBUTE);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Validate a rule set reference and bind it, compiling the plan now
+     * rather than on the first instance that reaches the element
+     */
+    protected RuleSetHandle bind(BpmnParse bpmnParse, T element, String ruleSetReference) {
+        UUID ruleSetId;
+        try {
+            ruleSetId = UUID.fromString(ruleSetReference);
+        } catch (IllegalArgumentException e) {
+            throw new FlowableException(element.getId() + " references invalid rule set id: " + ruleSetReference);
+        }
+        if (!ruleSetRepository.existsById(ruleSetId)) {
+            if (bpmnParse.getDeployment().isNew()) {
+                throw new FlowableException(element.getId() + " references unknown rule set: " + ruleSetId);
+            }
+            logger.warn("{} references rule set {}, which no longer exists", element.getId(), ruleSetId);
+        }
+
+        RuleSetHandle ruleSet = rulesEngine.bindRuleSet(ruleSetId);
+        ruleSet.get();
+        if (pinProcessInstances) {
+            pinningListener(bpmnParse.getCurrentProcess()).add(ruleSet);
+        }
+        logger.debug("{} bound to rule set {}", element.getId(), ruleSetId);
+        return ruleSet;
+    }
+
+    /**
+     * The process's pinning start listener, added on the first bound element
+     */
+    private static RuleSetPinningListener pinningListener(Process process) {
+        for (FlowableListener listener : process.getExecutionListeners()) {
+            if (listener.getInstance() instanceof RuleSetPinningListener) {
+                return (RuleSetPinningListener) listener.getInstance();
+            }
+        }
+        RuleSetPinningListener pinning = new RuleSetPinningListener();
+        FlowableListener listener = new FlowableListener();
+        listener.setEvent(ExecutionListener.EVENTNAME_START);
+        listener.setImplementationType(ImplementationType.IMPLEMENTATION_TYPE_INSTANCE);
+        listener.setInstance(pinning);
+        process.getExecutionListeners().add(listener);
+        return pinning;
+    }
+
+    /**
+     * Fail a new deployment; log when an existing definition is parsed again
+     */
+    protected void reject(BpmnParse bpmnParse, T element, String reason) {
+        if (bpmnParse.getDeployment().isNew()) {
+            throw new FlowableException(element.getId() + ": " + reason);
+        }
+        logger.warn("{}: {}", element.getId(), reason);
+    }
+}
@@ -0,0 +1,38 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.service.RuleSetHandle;
+import org.flowable.engine.delegate.DelegateExecution;
+import org.flowable.engine.delegate.ExecutionListener;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process start listener that pins a new instance to the published version
+ * of every rule set its definition binds, as current when the instance
+ * starts. Added by {@link RuleSetBindingParseHandler}, one per process
+ * definition; rule sets named only at runtime by the {@code ruleSetId}
+ * variable are still pinned at their first evaluation.
+ */
+public class RuleSetPinningListener implements ExecutionListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<RuleSetHandle> ruleSets = new CopyOnWriteArrayList<>();
+
+    void add(RuleSetHandle ruleSet) {
+        for (RuleSetHandle bound : ruleSets) {
+            if (bound.getRuleSetId().equals(ruleSet.getRuleSetId())) {
+                return;
+            }
+        }
+        ruleSets.add(ruleSet);
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        for (RuleSetHandle ruleSet : ruleSets) {
+            RulesEngineDelegate.pin(execution, ruleSet.getRuleSetId(), ruleSet.get().getSnapshotVersion());
+        }
+    }
+}
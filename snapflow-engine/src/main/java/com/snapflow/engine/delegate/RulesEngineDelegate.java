@@ -1,15 +1,23 @@
 package com.snapflow.engine.delegate;
 
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.service.EvaluationContext;
+import com.snapflow.engine.service.RuleSetHandle;
 import com.snapflow.engine.service.RulesEngineService;
 import org.flowable.engine.delegate.DelegateExecution;
 import org.flowable.engine.delegate.JavaDelegate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 @Component("rulesEngineDelegate")
@@ -17,16 +25,27 @@ public class RulesEngineDelegate implements JavaDelegate {
 
     private static final Logger logger = LoggerFactory.getLogger(RulesEngineDelegate.class);
 
+    /** Process variable prefix recording the snapshot version an instance is pinned to */
+    static final String PINNED_VERSION_PREFIX = "_ruleSetVersion_";
+
     @Autowired
     private RulesEngineService rulesEngine;
 
+    @Value("${snapflow.rules.snapshots.pin-process-instances:true}")
+    private boolean pinProcessInstances = true;
+
+    /**
+     * Evaluate the rule set named by the {@code ruleSetId} variable. Service
+     * tasks that declare their rule set in the BPMN are bound at deployment
+     * and go through {@link #execute(DelegateExecution, RuleSetHandle)} instead.
+     */
     @Override
     public void execute(DelegateExecution execution) {
         logger.info("Executing Rules Engine Delegate for process: {}", execution.getProcessInstanceId());
 
         try {
             // Get rule set ID from node configuration
-            String ruleSetIdStr = (String) execution.getVariable("ruleSetId");
+            String ruleSetIdStr = (String) execution.getVariable("ruleSetId", false);
             if (ruleSetIdStr == null || ruleSetIdStr.isEmpty()) {
                 logger.error("No ruleSetId provided");
                 execution.setVariable("_rulesEngineError", "No ruleSetId provided");
@@ -34,31 +53,112 @@ public class RulesEngineDelegate implements JavaDelegate {
             }
 
             UUID ruleSetId = UUID.fromString(ruleSetIdStr);
+            evaluate(execution, loadRuleSet(rulesEngine, execution, ruleSetId, pinProcessInstances));
 
-            // Collect input variables (exclude internal variables starting with _)
-            Map<String, Object> inputData = new HashMap<>();
-            execution.getVariables().forEach((key, value) -> {
-                if (!key.startsWith("_")) {
-                    inputData.put(key, value);
-                }
-            });
-
-            logger.info("Input data: {}", inputData);
-
-            // Evaluate rules
-            Map<String, Object> outputData = rulesEngine.evaluateRuleSet(ruleSetId, inputData);
-
-            // Set output variables back to execution
-            outputData.forEach((key, value) -> {
-                execution.setVariable(key, value);
-                logger.debug("Set variable: {} = {}", key, value);
-            });
+        } catch (Exception e) {
+            logger.error("Error executing rules engine", e);
+            execution.setVariable("_rulesEngineError", e.getMessage());
+        }
+    }
 
-            logger.info("Rules evaluated successfully. Output: {}", outputData);
+    /**
+     * Evaluate a rule set bound when the process definition was deployed
+     */
+    public void execute(DelegateExecution execution, RuleSetHandle ruleSet) {
+        logger.debug("Executing bound rule set {} for process: {}", ruleSet.getRuleSetId(),
+                execution.getProcessInstanceId());
 
+        try {
+            evaluate(execution, loadRuleSet(rulesEngine, execution, ruleSet, pinProcessInstances));
         } catch (Exception e) {
             logger.error("Error executing rules engine", e);
             execution.setVariable("_rulesEngineError", e.getMessage());
         }
     }
+
+    private void evaluate(DelegateExecution execution, CompiledRuleSet ruleSet) {
+        Map<String, Object> inputData = fetchInput(execution, ruleSet.getReferencedFields());
+
+        logger.debug("Input data: {}", inputData);
+
+        // Evaluate rules
+        Map<String, Object> changes = rulesEngine.evaluateChanges(ruleSet, inputData,
+                EvaluationContext.forProcess(execution.getProcessInstanceId(), execution.getCurrentActivityId()));
+
+        int written = writeBack(execution, inputData, changes);
+
+        logger.info("Rules evaluated successfully. Changed: {}, variables written: {}", changes.keySet(), written);
+    }
+
+    /**
+     * Fetch only the variables the rules read (exclude internal variables starting with _)
+     */
+    static Map<String, Object> fetchInput(DelegateExecution execution, Collection<String> referencedFields) {
+        List<String> fields = new ArrayList<>();
+        for (String field : referencedFields) {
+            if (!field.startsWith("_")) {
+                fields.add(field);
+            }
+        }
+        return fields.isEmpty()
+                ? new HashMap<>()
+                : new HashMap<>(execution.getVariables(fields, false));
+    }
+
+    /**
+     * Write back only what the actions created or changed; returns the number of variables written
+     */
+    static int writeBack(DelegateExecution execution, Map<String, Object> inputData, Map<String, Object> changes) {
+        int written = 0;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String key = change.getKey();
+            Object value = change.getValue();
+            if (!inputData.containsKey(key) && Objects.equals(execution.getVariable(key, false), value)) {
+                continue; // not fetched as input, but already holds this value
+            }
+            execution.setVariable(key, value);
+            written++;
+            logger.debug("Set variable: {} = {}", key, value);
+        }
+        return written;
+    }
+
+    /**
+     * Load the rule set version this process instance is pinned to.
+     * Rule sets its definition binds are pinned when the instance starts
+     * (see {@link RuleSetPinningListener}); any other rule set is pinned to
+     * the published version current at its first evaluation. Either way,
+     * later publishes don't change the instance's decisions.
+     */
+    static CompiledRuleSet loadRuleSet(RulesEngineService rulesEngine, DelegateExecution execution, UUID ruleSetId,
+            boolean pinProcessInstances) {
+        return loadRuleSet(rulesEngine, execution, rulesEngine.bindRuleSet(ruleSetId), pinProcessInstances);
+    }
+
+    static CompiledRuleSet loadRuleSet(RulesEngineService rulesEngine, DelegateExecution execution,
+            RuleSetHandle ruleSet, boolean pinProcessInstances) {
+        CompiledRuleSet current = ruleSet.get();
+        if (!pinProcessInstances) {
+            return current;
+        }
+        Object pinned = execution.getVariable(PINNED_VERSION_PREFIX + ruleSet.getRuleSetId(), false);
+        if (pinned instanceof Number) {
+            int version = ((Number) pinned).intValue();
+            return current.getSnapshotVersion() == version
+                    ? current
+                    : rulesEngine.loadRuleSet(ruleSet.getRuleSetId(), version);
+        }
+        pin(execution, ruleSet.getRuleSetId(), current.getSnapshotVersion());
+        return current;
+    }
+
+    /**
+     * Record the snapshot version an instance is pinned to; a rule set that
+     * was never published has nothing to pin yet
+     */
+    static void pin(DelegateExecution execution, UUID ruleSetId, int snapshotVersion) {
+        if (snapshotVersion > 0) {
+            execution.setVariable(PINNED_VERSION_PREFIX + ruleSetId, snapshotVersion);
+        }
+    }
 }
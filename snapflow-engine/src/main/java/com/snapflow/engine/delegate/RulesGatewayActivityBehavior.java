@@ -0,0 +1,108 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.rules.ActionNodes;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.service.EvaluationContext;
+import com.snapflow.engine.service.RuleSetHandle;
+import com.snapflow.engine.service.RulesEngineService;
+import org.flowable.bpmn.model.ExclusiveGateway;
+import org.flowable.bpmn.model.SequenceFlow;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEventType;
+import org.flowable.common.engine.api.delegate.event.FlowableEventDispatcher;
+import org.flowable.engine.delegate.DelegateExecution;
+import org.flowable.engine.delegate.event.impl.FlowableEventBuilder;
+import org.flowable.engine.impl.bpmn.behavior.ExclusiveGatewayActivityBehavior;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.engine.impl.persistence.entity.ExecutionEntity;
+import org.flowable.engine.impl.util.CommandContextUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exclusive gateway that takes the outgoing sequence flow chosen by a rule
+ * set. The matched rule's {@code routeTo} action names either the target
+ * node or the sequence flow; the decision is read from the evaluation output
+ * in memory, so nothing is written to process variables.
+ *
+ * When no rule routes, or it routes somewhere this gateway does not lead,
+ * the gateway falls back to the ordinary conditions and default flow.
+ * Process instances are pinned to rule set versions like
+ * {@link RulesEngineDelegate} pins them.
+ */
+public class RulesGatewayActivityBehavior extends ExclusiveGatewayActivityBehavior {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LoggerFactory.getLogger(RulesGatewayActivityBehavior.class);
+
+    private final transient RulesEngineService rulesEngine;
+    private final transient RuleSetHandle ruleSet;
+    private final boolean pinProcessInstances;
+    private final transient Map<String, SequenceFlow> flowsByRoute;
+
+    public RulesGatewayActivityBehavior(RulesEngineService rulesEngine, RuleSetHandle ruleSet,
+            boolean pinProcessInstances, ExclusiveGateway gateway) {
+        this.rulesEngine = rulesEngine;
+        this.ruleSet = ruleSet;
+        this.pinProcessInstances = pinProcessInstances;
+        // Route by target node id, or by sequence flow id when the ids differ
+        this.flowsByRoute = new HashMap<>();
+        for (SequenceFlow flow : gateway.getOutgoingFlows()) {
+            flowsByRoute.putIfAbsent(flow.getTargetRef(), flow);
+        }
+        for (SequenceFlow flow : gateway.getOutgoingFlows()) {
+            flowsByRoute.putIfAbsent(flow.getId(), flow);
+        }
+    }
+
+    @Override
+    public void leave(DelegateExecution execution) {
+        SequenceFlow flow = route(execution);
+        if (flow == null) {
+            super.leave(execution);
+            return;
+        }
+
+        ExclusiveGateway gateway = (ExclusiveGateway) execution.getCurrentFlowElement();
+        ProcessEngineConfigurationImpl configuration = CommandContextUtil.getProcessEngineConfiguration();
+        FlowableEventDispatcher dispatcher = configuration != null ? configuration.getEventDispatcher() : null;
+        if (dispatcher != null && dispatcher.isEnabled()) {
+            // What the standard gateway does before taking a flow
+            dispatcher.dispatchEvent(FlowableEventBuilder.createActivityEvent(
+                    FlowableEngineEventType.ACTIVITY_COMPLETED, gateway.getId(), gateway.getName(), execution.getId(),
+                    execution.getProcessInstanceId(), execution.getProcessDefinitionId(), gateway),
+                    configuration.getEngineCfgKey());
+        }
+
+        // Leaving with a sequence flow as the current element takes exactly that flow
+        execution.setCurrentFlowElement(flow);
+        bpmnActivityBehavior.performDefaultOutgoingBehavior((ExecutionEntity) execution);
+    }
+
+    /**
+     * The sequence flow the rule set picks, or null to fall back to conditions
+     */
+    private SequenceFlow route(DelegateExecution execution) {
+        CompiledRuleSet plan = RulesEngineDelegate.loadRuleSet(rulesEngine, execution, ruleSet, pinProcessInstances);
+        Map<String, Object> inputData = RulesEngineDelegate.fetchInput(execution, plan.getReferencedFields());
+        Map<String, Object> outputData = rulesEngine.evaluate(plan, inputData,
+                EvaluationContext.forProcess(execution.getProcessInstanceId(), execution.getCurrentActivityId()));
+
+        Object route = outputData.get(ActionNodes.ROUTE_TO_NODE_VARIABLE);
+        if (route == null) {
+            logger.debug("Gateway {}: no rule routed, using conditions", execution.getCurrentActivityId());
+            return null;
+        }
+        SequenceFlow flow = flowsByRoute.get(route.toString());
+        if (flow == null) {
+            logger.warn("Gateway {}: rule set {} routed to {}, which is not an outgoing flow or target; using conditions",
+                    execution.getCurrentActivityId(), ruleSet.getRuleSetId(), route);
+            return null;
+        }
+        logger.debug("Gateway {}: routing to {} via {}", execution.getCurrentActivityId(), route, flow.getId());
+        return flow;
+    }
+}
@@ -0,0 +1,37 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.service.RuleSetHandle;
+import com.snapflow.engine.service.RulesEngineService;
+import org.flowable.bpmn.model.BaseElement;
+import org.flowable.bpmn.model.ExclusiveGateway;
+import org.flowable.engine.impl.bpmn.parser.BpmnParse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds exclusive gateways declaring {@code snapflow:ruleSet="<ruleSetId>"}
+ * to that rule set when their process definition is parsed, replacing the
+ * standard gateway behavior with {@link RulesGatewayActivityBehavior}.
+ */
+@Component
+public class RulesGatewayParseHandler extends RuleSetBindingParseHandler<ExclusiveGateway> {
+
+    public RulesGatewayParseHandler(RulesEngineService rulesEngine, RuleSetRepository ruleSetRepository) {
+        super(rulesEngine, ruleSetRepository);
+    }
+
+    @Override
+    protected Class<? extends BaseElement> getHandledType() {
+        return ExclusiveGateway.class;
+    }
+
+    @Override
+    protected void executeParse(BpmnParse bpmnParse, ExclusiveGateway gateway) {
+        String ruleSetReference = ruleSetAttribute(gateway);
+        if (ruleSetReference == null) {
+            return;
+        }
+        RuleSetHandle ruleSet = bind(bpmnParse, gateway, ruleSetReference);
+        gateway.setBehavior(new RulesGatewayActivityBehavior(rulesEngine, ruleSet, pinProcessInstances, gateway));
+    }
+}
@@ -0,0 +1,93 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.service.RuleSetHandle;
+import com.snapflow.engine.service.RulesEngineService;
+import org.flowable.bpmn.model.BaseElement;
+import org.flowable.bpmn.model.FieldExtension;
+import org.flowable.bpmn.model.ImplementationType;
+import org.flowable.bpmn.model.ServiceTask;
+import org.flowable.engine.impl.bpmn.behavior.MultiInstanceActivityBehavior;
+import org.flowable.engine.impl.bpmn.parser.BpmnParse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds {@code rulesEngineDelegate} service tasks to their rule set when the
+ * process definition is parsed. The rule set is declared either as an
+ * attribute or as a field:
+ *
+ * <pre>
+ * &lt;serviceTask id="score" flowable:delegateExpression="${rulesEngineDelegate}" snapflow:ruleSet="..."/&gt;
+ *
+ * &lt;serviceTask id="score" flowable:delegateExpression="${rulesEngineDelegate}"&gt;
+ *   &lt;extensionElements&gt;
+ *     &lt;flowable:field name="ruleSetId" stringValue="..."/&gt;
+ *   &lt;/extensionElements&gt;
+ * &lt;/serviceTask&gt;
+ * </pre>
+ *
+ * Bound tasks run {@link RulesTaskActivityBehavior}. Tasks declaring neither
+ * keep reading the {@code ruleSetId} process variable at runtime.
+ */
+@Component
+public class RulesServiceTaskParseHandler extends RuleSetBindingParseHandler<ServiceTask> {
+
+    static final String DELEGATE_EXPRESSION = "${rulesEngineDelegate}";
+    static final String RULE_SET_FIELD = "ruleSetId";
+
+    private final RulesEngineDelegate delegate;
+
+    public RulesServiceTaskParseHandler(RulesEngineService rulesEngine, RuleSetRepository ruleSetRepository,
+            RulesEngineDelegate delegate) {
+        super(rulesEngine, ruleSetRepository);
+        this.delegate = delegate;
+    }
+
+    @Override
+    protected Class<? extends BaseElement> getHandledType() {
+        return ServiceTask.class;
+    }
+
+    @Override
+    protected void executeParse(BpmnParse bpmnParse, ServiceTask task) {
+        boolean rulesTask =
+                ImplementationType.IMPLEMENTATION_TYPE_DELEGATEEXPRESSION.equals(task.getImplementationType())
+                        && DELEGATE_EXPRESSION.equals(task.getImplementation().trim());
+        String ruleSetReference = ruleSetAttribute(task);
+        if (ruleSetReference != null && !rulesTask) {
+            reject(bpmnParse, task, "snapflow:ruleSet is only supported on " + DELEGATE_EXPRESSION + " tasks");
+            return;
+        }
+        if (ruleSetReference == null && rulesTask) {
+            ruleSetReference = ruleSetField(bpmnParse, task);
+        }
+        if (ruleSetReference == null) {
+            return;
+        }
+
+        RuleSetHandle ruleSet = bind(bpmnParse, task, ruleSetReference);
+        RulesTaskActivityBehavior behavior = new RulesTaskActivityBehavior(delegate, ruleSet);
+        if (task.getBehavior() instanceof MultiInstanceActivityBehavior) {
+            // Flowable wrapped the standard behavior; swap what runs per instance
+            ((MultiInstanceActivityBehavior) task.getBehavior()).setInnerActivityBehavior(behavior);
+        } else {
+            task.setBehavior(behavior);
+        }
+    }
+
+    private String ruleSetField(BpmnParse bpmnParse, ServiceTask task) {
+        for (FieldExtension field : task.getFieldExtensions()) {
+            if (!RULE_SET_FIELD.equals(field.getFieldName())) {
+                continue;
+            }
+            String value = field.getStringValue();
+            if (value == null || value.isBlank()) {
+                // An expression can only be resolved per execution, which is what binding avoids
+                reject(bpmnParse, task, "the " + RULE_SET_FIELD + " field must be a string value");
+                return null;
+            }
+            return value.trim();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.snapflow.engine.delegate;
+
+import com.snapflow.engine.service.RuleSetHandle;
+import org.flowable.engine.delegate.DelegateExecution;
+import org.flowable.engine.impl.bpmn.behavior.AbstractBpmnActivityBehavior;
+
+/**
+ * Service task bound to a rule set at deployment: evaluates it through
+ * {@link RulesEngineDelegate} from the handle, without the delegate
+ * expression, the {@code ruleSetId} variable or a cache lookup.
+ */
+public class RulesTaskActivityBehavior extends AbstractBpmnActivityBehavior {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient RulesEngineDelegate delegate;
+    private final transient RuleSetHandle ruleSet;
+
+    public RulesTaskActivityBehavior(RulesEngineDelegate delegate, RuleSetHandle ruleSet) {
+        this.delegate = delegate;
+        this.ruleSet = ruleSet;
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        delegate.execute(execution, ruleSet);
+        leave(execution);
+    }
+}
@@ -28,6 +28,18 @@ public class RuleSet {
     @Column(length = 50)
     private String status = "draft"; // draft, active, archived
 
+    // Cache the matched rule per distinct combination of referenced input values
+    @Column(name = "memoize")
+    private Boolean memoize = false;
+
+    // When set, this rule set is evaluated in the background against a sample
+    // of the live rule set's traffic and its decisions compared, never applied
+    @Column(name = "shadow_of")
+    private UUID shadowOf;
+
+    @Column(name = "shadow_sample_rate")
+    private Double shadowSampleRate;
+
     @Column(name = "created_by")
     private String createdBy;
 
@@ -78,6 +90,30 @@ public class RuleSet {
         this.status = status;
     }
 
+    public Boolean getMemoize() {
+        return memoize;
+    }
+
+    public void setMemoize(Boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    public UUID getShadowOf() {
+        return shadowOf;
+    }
+
+    public void setShadowOf(UUID shadowOf) {
+        this.shadowOf = shadowOf;
+    }
+
+    public Double getShadowSampleRate() {
+        return shadowSampleRate;
+    }
+
+    public void setShadowSampleRate(Double shadowSampleRate) {
+        this.shadowSampleRate = shadowSampleRate;
+    }
+
     public String getCreatedBy() {
         return createdBy;
     }
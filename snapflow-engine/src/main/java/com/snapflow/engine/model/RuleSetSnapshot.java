@@ -0,0 +1,90 @@
+package com.snapflow.engine.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable published version of a rule set: the enabled rules, in priority
+ * order, exactly as they were when the rule set was published
+ */
+@Entity
+@Table(name = "rule_set_snapshots",
+        uniqueConstraints = @UniqueConstraint(columnNames = { "rule_set_id", "version" }))
+public class RuleSetSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "rule_set_id", nullable = false, updatable = false)
+    private UUID ruleSetId;
+
+    @Column(nullable = false, updatable = false)
+    private Integer version;
+
+    // Each entry: id, name, priority, conditions, actions
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(nullable = false, updatable = false, columnDefinition = "jsonb")
+    private List<Map<String, Object>> rules;
+
+    @Column(name = "published_by", updatable = false)
+    private String publishedBy;
+
+    @Column(name = "published_at", nullable = false, updatable = false)
+    private LocalDateTime publishedAt = LocalDateTime.now();
+
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public UUID getRuleSetId() {
+        return ruleSetId;
+    }
+
+    public void setRuleSetId(UUID ruleSetId) {
+        this.ruleSetId = ruleSetId;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public List<Map<String, Object>> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<Map<String, Object>> rules) {
+        this.rules = rules;
+    }
+
+    public String getPublishedBy() {
+        return publishedBy;
+    }
+
+    public void setPublishedBy(String publishedBy) {
+        this.publishedBy = publishedBy;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+
+    public void setPublishedAt(LocalDateTime publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+}
@@ -0,0 +1,14 @@
+package com.snapflow.engine.repository;
+
+import com.snapflow.engine.model.RulePipeline;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RulePipelineRepository extends JpaRepository<RulePipeline, UUID> {
+
+    Optional<RulePipeline> findByName(String name);
+}
@@ -16,4 +16,6 @@ public interface RuleSetRepository extends JpaRepository<RuleSet, UUID> {
     List<RuleSet> findByStatus(String status);
 
     List<RuleSet> findByCreatedBy(String createdBy);
+
+    List<RuleSet> findByShadowOfIsNotNull();
 }
@@ -0,0 +1,23 @@
+package com.snapflow.engine.repository;
+
+import com.snapflow.engine.model.RuleSetSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RuleSetSnapshotRepository extends JpaRepository<RuleSetSnapshot, UUID> {
+
+    Optional<RuleSetSnapshot> findTopByRuleSetIdOrderByVersionDesc(UUID ruleSetId);
+
+    Optional<RuleSetSnapshot> findByRuleSetIdAndVersion(UUID ruleSetId, Integer version);
+
+    List<RuleSetSnapshot> findByRuleSetIdOrderByVersionDesc(UUID ruleSetId);
+
+    @Transactional
+    void deleteByRuleSetId(UUID ruleSetId);
+}
@@ -0,0 +1,11 @@
+package com.snapflow.engine.rules;
+
+import java.util.Map;
+
+/**
+ * A compiled rule action, applied to the output data when its rule matches.
+ */
+public interface ActionNode {
+
+    void apply(Map<String, Object> outputData);
+}
@@ -0,0 +1,90 @@
+package com.snapflow.engine.rules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Typed action nodes produced by {@link RuleCompiler}
+ */
+public final class ActionNodes {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActionNodes.class);
+
+    public static final String ROUTE_TO_NODE_VARIABLE = "_routeToNode";
+
+    private ActionNodes() {
+    }
+
+    /**
+     * setVariable: put a constant value into the output
+     */
+    public static final class SetVariable implements ActionNode {
+
+        private final String variable;
+        private final Object value;
+
+        SetVariable(String variable, Object value) {
+            this.variable = variable;
+            this.value = value;
+        }
+
+        public String getVariable() {
+            return variable;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public void apply(Map<String, Object> outputData) {
+            outputData.put(variable, value);
+            logger.debug("Set variable: {} = {}", variable, value);
+        }
+    }
+
+    /**
+     * routeTo: record the target node for the process to follow
+     */
+    public static final class RouteTo implements ActionNode {
+
+        private final String targetNode;
+
+        RouteTo(String targetNode) {
+            this.targetNode = targetNode;
+        }
+
+        public String getTargetNode() {
+            return targetNode;
+        }
+
+        @Override
+        public void apply(Map<String, Object> outputData) {
+            outputData.put(ROUTE_TO_NODE_VARIABLE, targetNode);
+            logger.debug("Route to node: {}", targetNode);
+        }
+    }
+
+    /**
+     * logMessage: write a message to the engine log
+     */
+    public static final class LogMessage implements ActionNode {
+
+        private final String message;
+
+        LogMessage(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public void apply(Map<String, Object> outputData) {
+            logger.info("Rule action log: {}", message);
+        }
+    }
+}
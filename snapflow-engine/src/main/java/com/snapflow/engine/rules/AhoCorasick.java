@@ -0,0 +1,177 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Aho-Corasick automaton over a fixed set of patterns, compiled to a dense
+ * transition table: each input char costs one class lookup and one array
+ * read, whatever the number of patterns, and every state knows all the
+ * patterns that end there.
+ *
+ * Chars are mapped to classes first so the table is only as wide as the set
+ * of distinct chars in the patterns (class 0 is every other char, which
+ * always leads back to the root).
+ */
+final class AhoCorasick {
+
+    /** Largest transition table built; bigger pattern sets are not indexed */
+    static final int MAX_TABLE_SIZE = 1 << 21;
+
+    private static final int[] NONE = new int[0];
+
+    private final int[] asciiClasses;
+    private final char[] otherChars;
+    private final int[] otherClasses;
+    private final int width;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final int[] lengths;
+
+    private AhoCorasick(int[] asciiClasses, char[] otherChars, int[] otherClasses, int width,
+            int[] transitions, int[][] outputs, int[] lengths) {
+        this.asciiClasses = asciiClasses;
+        this.otherChars = otherChars;
+        this.otherClasses = otherClasses;
+        this.width = width;
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Build the automaton for non-empty patterns, identified by their index in
+     * the list; null if the transition table would exceed {@link #MAX_TABLE_SIZE}
+     */
+    static AhoCorasick build(List<String> patterns) {
+        // Char classes, ASCII by direct lookup and the rest by binary search
+        TreeSet<Character> alphabet = new TreeSet<>();
+        int maxStates = 1;
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                alphabet.add(pattern.charAt(i));
+            }
+            maxStates += pattern.length();
+        }
+        int[] asciiClasses = new int[128];
+        List<Character> others = new ArrayList<>();
+        int classCount = 1;
+        Map<Character, Integer> classOf = new HashMap<>();
+        for (char c : alphabet) {
+            classOf.put(c, classCount);
+            if (c < 128) {
+                asciiClasses[c] = classCount;
+            } else {
+                others.add(c);
+            }
+            classCount++;
+        }
+        char[] otherChars = new char[others.size()];
+        int[] otherClasses = new int[others.size()];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherChars[i] = others.get(i);
+            otherClasses[i] = classOf.get(otherChars[i]);
+        }
+        int width = classCount;
+        if ((long) maxStates * width > MAX_TABLE_SIZE) {
+            return null;
+        }
+
+        // Trie: 0 means no edge (the root is never a child)
+        int[] transitions = new int[maxStates * width];
+        List<List<Integer>> ends = new ArrayList<>();
+        ends.add(new ArrayList<>());
+        int stateCount = 1;
+        int[] lengths = new int[patterns.size()];
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            lengths[id] = pattern.length();
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int slot = state * width + classOf.get(pattern.charAt(i));
+                if (transitions[slot] == 0) {
+                    transitions[slot] = stateCount++;
+                    ends.add(new ArrayList<>());
+                }
+                state = transitions[slot];
+            }
+            ends.get(state).add(id);
+        }
+
+        // Breadth-first: failure links, then missing edges filled in from the
+        // failure state so scanning never has to follow a link
+        int[] failure = new int[stateCount];
+        int[][] outputs = new int[stateCount][];
+        outputs[0] = NONE;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < width; c++) {
+            int child = transitions[c];
+            if (child != 0) {
+                failure[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(ends.get(state), outputs[failure[state]]);
+            for (int c = 0; c < width; c++) {
+                int slot = state * width + c;
+                int child = transitions[slot];
+                if (child != 0) {
+                    failure[child] = transitions[failure[state] * width + c];
+                    queue.add(child);
+                } else {
+                    transitions[slot] = transitions[failure[state] * width + c];
+                }
+            }
+        }
+
+        return new AhoCorasick(asciiClasses, otherChars, otherClasses, width,
+                Arrays.copyOf(transitions, stateCount * width), outputs, lengths);
+    }
+
+    /**
+     * State after reading {@code c} in {@code state}; scanning starts in state 0
+     */
+    int next(int state, char c) {
+        int charClass;
+        if (c < 128) {
+            charClass = asciiClasses[c];
+        } else {
+            int found = Arrays.binarySearch(otherChars, c);
+            charClass = found >= 0 ? otherClasses[found] : 0;
+        }
+        return transitions[state * width + charClass];
+    }
+
+    /**
+     * Patterns that end at the current position in {@code state}
+     */
+    int[] matches(int state) {
+        return outputs[state];
+    }
+
+    int patternCount() {
+        return lengths.length;
+    }
+
+    int length(int pattern) {
+        return lengths[pattern];
+    }
+
+    private static int[] merge(List<Integer> own, int[] inherited) {
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        int[] merged = Arrays.copyOf(inherited, inherited.length + own.size());
+        for (int i = 0; i < own.size(); i++) {
+            merged[inherited.length + i] = own.get(i);
+        }
+        return merged;
+    }
+}
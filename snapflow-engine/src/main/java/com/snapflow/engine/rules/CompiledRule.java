@@ -0,0 +1,86 @@
+package com.snapflow.engine.rules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable execution plan for a single rule
+ */
+public final class CompiledRule {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledRule.class);
+
+    private final int position;
+    private final UUID id;
+    private final String name;
+    private final int priority;
+    private final ConditionNode condition;
+    private final ActionNode[] actions;
+    private final ConditionFailures failures;
+
+    CompiledRule(int position, UUID id, String name, int priority, ConditionNode condition, ActionNode[] actions,
+            ConditionFailures failures) {
+        this.position = position;
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+        this.condition = condition;
+        this.actions = actions;
+        this.failures = failures;
+    }
+
+    /**
+     * Position in the rule set's priority order, or -1 for a rule compiled on its own
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public ConditionNode getCondition() {
+        return condition;
+    }
+
+    public ActionNode[] getActions() {
+        return actions.clone();
+    }
+
+    public boolean matches(Map<String, Object> data) {
+        return condition.test(data);
+    }
+
+    ConditionFailures getFailures() {
+        return failures;
+    }
+
+    /**
+     * Execute actions in order; a failing action is logged and skipped.
+     * Returns the number of actions that failed.
+     */
+    public int apply(Map<String, Object> outputData) {
+        int failures = 0;
+        for (ActionNode action : actions) {
+            try {
+                action.apply(outputData);
+            } catch (RuntimeException e) {
+                failures++;
+                logger.error("Error executing action in rule: " + name, e);
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,363 @@
+package com.snapflow.engine.rules;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable execution plan for a rule set: enabled rules in priority order,
+ * plus a discrimination index when the set is large enough to benefit.
+ *
+ * A plan without an index that is evaluated often can be promoted to a
+ * generated {@link RuleSetMatcher}; the rules themselves do not change, only
+ * how their conditions are tested. The promotion is dropped together with the
+ * plan when the rule set changes. Indexed plans are not promoted: the index
+ * only tests a few rules per evaluation, so each rule's generated code would
+ * rarely run often enough to be JIT-compiled.
+ */
+public final class CompiledRuleSet {
+
+    private static final ThreadLocal<RuleIndex.Candidates> CANDIDATES =
+            ThreadLocal.withInitial(RuleIndex.Candidates::new);
+
+    private final UUID ruleSetId;
+    private final long version;
+    private final int snapshotVersion;
+    private final CompiledRule[] rules;
+    private final RuleIndex index;
+    private final Set<String> referencedFields;
+    private final LookupTableRef[] tables;
+    private final EvaluationListener listener;
+    private final Tier tier;
+
+    CompiledRuleSet(UUID ruleSetId, long version, int snapshotVersion, CompiledRule[] rules) {
+        this(ruleSetId, version, snapshotVersion, rules, RuleIndex.build(rules), collectFields(rules),
+                collectTables(rules), EvaluationListener.NONE, new Tier());
+    }
+
+    private CompiledRuleSet(UUID ruleSetId, long version, int snapshotVersion, CompiledRule[] rules,
+            RuleIndex index, Set<String> referencedFields, LookupTableRef[] tables, EvaluationListener listener,
+            Tier tier) {
+        this.ruleSetId = ruleSetId;
+        this.version = version;
+        this.snapshotVersion = snapshotVersion;
+        this.rules = rules;
+        this.index = index;
+        this.referencedFields = referencedFields;
+        this.tables = tables;
+        this.listener = listener;
+        this.tier = tier;
+        // Condition failures are reported by the shared rules, so a view
+        // without metrics leaves them reporting where they did
+        if (listener != EvaluationListener.NONE) {
+            for (CompiledRule rule : rules) {
+                rule.getFailures().bind(listener);
+            }
+        }
+    }
+
+    /**
+     * The same plan (sharing rules, index and generated matcher) reporting to
+     * the given listener. Condition failures keep going to the last listener
+     * other than {@link EvaluationListener#NONE}.
+     */
+    public CompiledRuleSet withListener(EvaluationListener listener) {
+        return new CompiledRuleSet(ruleSetId, version, snapshotVersion, rules, index, referencedFields, tables,
+                listener, tier);
+    }
+
+    public EvaluationListener getListener() {
+        return listener;
+    }
+
+    public UUID getRuleSetId() {
+        return ruleSetId;
+    }
+
+    /**
+     * Version stamp of the rule set at the time it was loaded
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Published snapshot version these rules come from, or 0 for the live
+     * rules of a rule set that has never been published
+     */
+    public int getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public List<CompiledRule> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+
+    /**
+     * Rule at a position in priority order
+     */
+    public CompiledRule getRule(int position) {
+        return rules[position];
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Input fields read by any rule's conditions; evaluation never looks at other fields
+     */
+    public Set<String> getReferencedFields() {
+        return referencedFields;
+    }
+
+    /**
+     * Lookup tables referenced by inTable/lookup conditions
+     */
+    public List<LookupTableRef> getLookupTables() {
+        return Collections.unmodifiableList(Arrays.asList(tables));
+    }
+
+    public boolean usesLookupTables() {
+        return tables.length > 0;
+    }
+
+    /**
+     * Changes whenever one of the referenced lookup tables is replaced; results
+     * cached against this plan are only valid for the same lookup version
+     */
+    public long getLookupVersion() {
+        long lookupVersion = 0;
+        for (LookupTableRef table : tables) {
+            lookupVersion = 31 * lookupVersion + table.getGeneration();
+        }
+        return lookupVersion;
+    }
+
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    /**
+     * Count an evaluation. Returns true once, for the evaluation that takes
+     * the count to {@code threshold}; the caller is then responsible for
+     * generating a matcher.
+     */
+    public boolean countEvaluation(int threshold) {
+        if (tier.claimed.get()) {
+            return false;
+        }
+        tier.evaluations.increment();
+        return tier.evaluations.sum() >= threshold && tier.claimed.compareAndSet(false, true);
+    }
+
+    /**
+     * Switch condition testing to a generated matcher
+     */
+    public void promote(RuleSetMatcher matcher, long generationNanos) {
+        if (index != null) {
+            throw new IllegalStateException("Indexed rule sets are not promoted");
+        }
+        tier.generationNanos = generationNanos;
+        tier.matcher = matcher;
+    }
+
+    /**
+     * Whether conditions are tested by a generated matcher
+     */
+    public boolean isPromoted() {
+        return tier.matcher != null;
+    }
+
+    /**
+     * Time it took to generate and load the matcher, or 0 if not promoted
+     */
+    public long getGenerationNanos() {
+        return tier.generationNanos;
+    }
+
+    /**
+     * Find the first rule, in priority order, whose conditions match the input.
+     * Returns null when no rule matches.
+     */
+    public CompiledRule firstMatch(Map<String, Object> inputData) {
+        return firstMatch(inputData, null);
+    }
+
+    /**
+     * Same as {@link #firstMatch(Map)}, recording how many rules were visited
+     * into {@code stats} when it is not null
+     */
+    public CompiledRule firstMatch(Map<String, Object> inputData, EvaluationStats stats) {
+        if (stats != null) {
+            stats.reset(rules.length, index != null);
+        }
+        RuleSetMatcher matcher = tier.matcher;
+        // Asked once per evaluation: the listener samples which ones report every rule
+        boolean tracksRules = listener.tracksRules();
+        if (index == null) {
+            if (matcher != null && stats == null && !tracksRules) {
+                try {
+                    int position = matcher.firstMatch(inputData);
+                    return position >= 0 ? rules[position] : null;
+                } catch (RuntimeException e) {
+                    // Rerun interpreted, which logs the failing condition and treats it as false
+                }
+            }
+            for (CompiledRule rule : rules) {
+                if (test(rule, matcher, inputData, stats, tracksRules)) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+
+        RuleIndex.Candidates candidates = index.candidates(inputData, CANDIDATES.get());
+        try {
+            for (int position = candidates.next(); position >= 0; position = candidates.next()) {
+                if (test(rules[position], null, inputData, stats, tracksRules)) {
+                    return rules[position];
+                }
+            }
+            return null;
+        } finally {
+            candidates.release();
+        }
+    }
+
+    /**
+     * Same as {@link #firstMatch(Map)}, but condition failures are neither
+     * reported nor logged. For synthetic inputs, such as warm-up's, on a view
+     * with {@link EvaluationListener#NONE}.
+     */
+    public CompiledRule firstMatchQuietly(Map<String, Object> inputData) {
+        ConditionFailures.QUIET.set(Boolean.TRUE);
+        try {
+            return firstMatch(inputData);
+        } finally {
+            ConditionFailures.QUIET.remove();
+        }
+    }
+
+    /**
+     * Evaluate like {@link #firstMatch(Map)}, visiting the same rules in the
+     * same order, but record what happened instead of only the outcome.
+     * Always interpreted, even for a promoted plan, and not counted in metrics.
+     */
+    public EvaluationTrace explain(Map<String, Object> inputData) {
+        EvaluationTrace trace = new EvaluationTrace(rules.length, index != null);
+        if (index == null) {
+            for (CompiledRule rule : rules) {
+                if (trace.visit(rule, inputData)) {
+                    break;
+                }
+            }
+            return trace;
+        }
+
+        RuleIndex.Candidates candidates = index.candidates(inputData, CANDIDATES.get());
+        try {
+            for (int position = candidates.next(); position >= 0; position = candidates.next()) {
+                if (trace.visit(rules[position], inputData)) {
+                    break;
+                }
+            }
+        } finally {
+            candidates.release();
+        }
+        return trace;
+    }
+
+    private boolean test(CompiledRule rule, RuleSetMatcher matcher, Map<String, Object> inputData,
+            EvaluationStats stats, boolean tracksRules) {
+        if (stats != null) {
+            stats.visited();
+        }
+        if (!tracksRules) {
+            try {
+                return matches(rule, matcher, inputData);
+            } catch (RuntimeException e) {
+                rule.getFailures().failed(null, e);
+                return false;
+            }
+        }
+
+        long startTime = System.nanoTime();
+        boolean matched;
+        try {
+            matched = matches(rule, matcher, inputData);
+        } catch (RuntimeException e) {
+            rule.getFailures().failed(null, e);
+            matched = false;
+        }
+        listener.ruleTested(rule.getPosition(), matched, System.nanoTime() - startTime);
+        return matched;
+    }
+
+    private static boolean matches(CompiledRule rule, RuleSetMatcher matcher, Map<String, Object> inputData) {
+        if (matcher != null) {
+            try {
+                return matcher.matches(rule.getPosition(), inputData);
+            } catch (RuntimeException e) {
+                // Fall through to the interpreted conditions
+            }
+        }
+        return rule.matches(inputData);
+    }
+
+    private static Set<String> collectFields(CompiledRule[] rules) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (CompiledRule rule : rules) {
+            collectFields(rule.getCondition(), fields);
+        }
+        return Collections.unmodifiableSet(fields);
+    }
+
+    private static void collectFields(ConditionNode condition, Set<String> fields) {
+        if (condition instanceof ConditionNodes.FieldCondition) {
+            fields.add(((ConditionNodes.FieldCondition) condition).getField());
+        } else if (condition instanceof ConditionNodes.Group) {
+            for (ConditionNode child : ((ConditionNodes.Group) condition).getChildren()) {
+                collectFields(child, fields);
+            }
+        }
+    }
+
+    private static LookupTableRef[] collectTables(CompiledRule[] rules) {
+        Set<LookupTableRef> tables = new LinkedHashSet<>();
+        for (CompiledRule rule : rules) {
+            collectTables(rule.getCondition(), tables);
+        }
+        return tables.toArray(new LookupTableRef[0]);
+    }
+
+    private static void collectTables(ConditionNode condition, Set<LookupTableRef> tables) {
+        if (condition instanceof ConditionNodes.TableMembership) {
+            tables.add(((ConditionNodes.TableMembership) condition).getTable());
+        } else if (condition instanceof ConditionNodes.TableLookup) {
+            tables.add(((ConditionNodes.TableLookup) condition).getTable());
+        } else if (condition instanceof ConditionNodes.Group) {
+            for (ConditionNode child : ((ConditionNodes.Group) condition).getChildren()) {
+                collectTables(child, tables);
+            }
+        }
+    }
+
+    /**
+     * Promotion state, shared by every listener view of the same plan
+     */
+    private static final class Tier {
+
+        // An adder, as every thread evaluating the plan counts until it is claimed
+        final LongAdder evaluations = new LongAdder();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile RuleSetMatcher matcher;
+        volatile long generationNanos;
+    }
+}
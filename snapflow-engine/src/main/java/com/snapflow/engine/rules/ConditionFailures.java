@@ -0,0 +1,66 @@
+package com.snapflow.engine.rules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the condition failures of one rule go. A condition that throws is
+ * treated as false; each failure is reported to the listener of the plan the
+ * rule belongs to, and logged at most once a minute together with the number
+ * of failures since, so a condition that fails on every evaluation does not
+ * write a stack trace every time.
+ */
+final class ConditionFailures {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionFailures.class);
+
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** Set while the current thread evaluates quietly; only read once a condition has failed */
+    static final ThreadLocal<Boolean> QUIET = new ThreadLocal<>();
+
+    private final int position;
+    private final String ruleName;
+    private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder unlogged = new LongAdder();
+    private volatile EvaluationListener listener = EvaluationListener.NONE;
+
+    ConditionFailures(int position, String ruleName) {
+        this.position = position;
+        this.ruleName = ruleName;
+    }
+
+    /**
+     * Report to this listener from now on
+     */
+    void bind(EvaluationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * A condition on {@code field} (null when unknown) threw
+     */
+    void failed(String field, RuntimeException e) {
+        if (QUIET.get() != null) {
+            return;
+        }
+        listener.ruleFailed(position);
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + LOG_INTERVAL_NANOS)) {
+            unlogged.increment();
+            return;
+        }
+        long more = unlogged.sumThenReset();
+        if (more > 0) {
+            logger.error("Error evaluating condition on field {} in rule {} ({} more failures in this rule since the "
+                    + "last report)", field != null ? field : "?", ruleName, more, e);
+        } else {
+            logger.error("Error evaluating condition on field {} in rule {}", field != null ? field : "?", ruleName, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.snapflow.engine.rules;
+
+import java.util.Map;
+
+/**
+ * A compiled rule condition. Implementations are immutable and hold
+ * pre-parsed constants, so evaluation only reads the input field.
+ */
+public interface ConditionNode {
+
+    boolean test(Map<String, Object> data);
+}
@@ -0,0 +1,548 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Typed condition nodes produced by {@link RuleCompiler}.
+ * Semantics match the original map-walking evaluator: a condition that
+ * cannot be evaluated (null or non-numeric operand, etc.) is false.
+ */
+public final class ConditionNodes {
+
+    public static final ConditionNode ALWAYS_TRUE = new Constant(true);
+    public static final ConditionNode ALWAYS_FALSE = new Constant(false);
+
+    private ConditionNodes() {
+    }
+
+    /**
+     * Convert a field value to a double, or null if it is not numeric
+     */
+    static Double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Condition that returns a fixed result, used for empty condition lists
+     * and for conditions that can never be satisfied (bad regex, unknown operator)
+     */
+    public static final class Constant implements ConditionNode {
+
+        private final boolean result;
+
+        Constant(boolean result) {
+            this.result = result;
+        }
+
+        public boolean getResult() {
+            return result;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> data) {
+            return result;
+        }
+    }
+
+    /**
+     * Base class for conditions that read a single input field
+     */
+    public abstract static class FieldCondition implements ConditionNode {
+
+        protected final String field;
+        protected final ConditionOperator operator;
+
+        FieldCondition(String field, ConditionOperator operator) {
+            this.field = field;
+            this.operator = operator;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public ConditionOperator getOperator() {
+            return operator;
+        }
+
+        @Override
+        public final boolean test(Map<String, Object> data) {
+            return testValue(data.get(field));
+        }
+
+        public abstract boolean testValue(Object fieldValue);
+    }
+
+    /**
+     * equals / notEquals against a constant
+     */
+    public static final class Equality extends FieldCondition {
+
+        private final Object value;
+        private final boolean negate;
+
+        Equality(String field, ConditionOperator operator, Object value) {
+            super(field, operator);
+            this.value = value;
+            this.negate = operator == ConditionOperator.NOT_EQUALS;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            return Objects.equals(fieldValue, value) != negate;
+        }
+    }
+
+    /**
+     * greaterThan / greaterThanOrEqual / lessThan / lessThanOrEqual against a
+     * constant parsed once at compile time
+     */
+    public static final class NumericComparison extends FieldCondition {
+
+        private final double value;
+
+        NumericComparison(String field, ConditionOperator operator, double value) {
+            super(field, operator);
+            this.value = value;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            Double number = toNumber(fieldValue);
+            if (number == null) {
+                return false;
+            }
+            int cmp = Double.compare(number, value);
+            switch (operator) {
+                case GREATER_THAN:
+                    return cmp > 0;
+                case GREATER_THAN_OR_EQUAL:
+                    return cmp >= 0;
+                case LESS_THAN:
+                    return cmp < 0;
+                default:
+                    return cmp <= 0;
+            }
+        }
+    }
+
+    /**
+     * contains / startsWith / endsWith against a constant string
+     */
+    public static final class StringMatch extends FieldCondition {
+
+        private final String value;
+
+        StringMatch(String field, ConditionOperator operator, String value) {
+            super(field, operator);
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            if (fieldValue == null) {
+                return false;
+            }
+            String text = fieldValue.toString();
+            switch (operator) {
+                case CONTAINS:
+                    return text.contains(value);
+                case STARTS_WITH:
+                    return text.startsWith(value);
+                default:
+                    return text.endsWith(value);
+            }
+        }
+    }
+
+    /**
+     * matchesRegex with the pattern compiled once
+     */
+    public static final class RegexMatch extends FieldCondition {
+
+        private final Pattern pattern;
+
+        RegexMatch(String field, Pattern pattern) {
+            super(field, ConditionOperator.MATCHES_REGEX);
+            this.pattern = pattern;
+        }
+
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            return fieldValue != null && pattern.matcher(fieldValue.toString()).matches();
+        }
+    }
+
+    /**
+     * in / notIn against a hashed set of constants
+     */
+    public static final class SetMembership extends FieldCondition {
+
+        private final Set<Object> values;
+        private final boolean negate;
+
+        SetMembership(String field, ConditionOperator operator, Set<Object> values) {
+            super(field, operator);
+            this.values = values;
+            this.negate = operator == ConditionOperator.NOT_IN;
+        }
+
+        public Set<Object> getValues() {
+            return values;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            return values.contains(fieldValue) != negate;
+        }
+    }
+
+    /**
+     * isTrue / isFalse / isNull / isNotNull
+     */
+    public static final class UnaryCheck extends FieldCondition {
+
+        UnaryCheck(String field, ConditionOperator operator) {
+            super(field, operator);
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            switch (operator) {
+                case IS_TRUE:
+                    return Boolean.TRUE.equals(fieldValue);
+                case IS_FALSE:
+                    return Boolean.FALSE.equals(fieldValue);
+                case IS_NULL:
+                    return fieldValue == null;
+                default:
+                    return fieldValue != null;
+            }
+        }
+    }
+
+    /**
+     * inTable: the field value is a key of (or inside a range of) a lookup table
+     */
+    public static final class TableMembership extends FieldCondition {
+
+        private final LookupTableRef table;
+
+        TableMembership(String field, LookupTableRef table) {
+            super(field, ConditionOperator.IN_TABLE);
+            this.table = table;
+        }
+
+        public LookupTableRef getTable() {
+            return table;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            LookupTable current = table.get();
+            return current != null && current.contains(fieldValue);
+        }
+    }
+
+    /**
+     * lookup: the value a lookup table holds for the field value is one of the expected values
+     */
+    public static final class TableLookup extends FieldCondition {
+
+        private final LookupTableRef table;
+        private final Set<String> expected;
+
+        TableLookup(String field, LookupTableRef table, Set<String> expected) {
+            super(field, ConditionOperator.LOOKUP);
+            this.table = table;
+            this.expected = expected;
+        }
+
+        public LookupTableRef getTable() {
+            return table;
+        }
+
+        public Set<String> getExpected() {
+            return expected;
+        }
+
+        @Override
+        public boolean testValue(Object fieldValue) {
+            LookupTable current = table.get();
+            if (current == null) {
+                return false;
+            }
+            String found = current.get(fieldValue);
+            return found != null && expected.contains(found);
+        }
+    }
+
+    /**
+     * AND / OR over child conditions. A child that throws counts as false,
+     * as it did in the interpreted evaluator.
+     *
+     * Children are pure, so their order cannot change the result, only how
+     * soon a group short-circuits. A sample of evaluations (1 in
+     * {@link #SAMPLE_PERIOD}) tests every child and records its cost and pass
+     * rate; {@link #reorder(long)} then moves children that are cheap and
+     * decisive (likely to fail in an AND, likely to pass in an OR) to the front.
+     */
+    public static final class Group implements ConditionNode {
+
+        static final int SAMPLE_PERIOD = 128;
+
+        private final boolean and;
+        private final ConditionNode[] children;
+        private final ConditionFailures failures;
+        private final Profile profile;
+        private volatile Ordering ordering;
+
+        Group(boolean and, ConditionNode[] children, ConditionFailures failures) {
+            this.and = and;
+            this.children = children;
+            this.failures = failures;
+            this.profile = children.length > 1 ? new Profile(children.length) : null;
+            this.ordering = Ordering.authoring(children);
+        }
+
+        public boolean isAnd() {
+            return and;
+        }
+
+        /**
+         * Children in authoring order
+         */
+        public ConditionNode[] getChildren() {
+            return children.clone();
+        }
+
+        /**
+         * Children in the order they are currently evaluated
+         */
+        public ConditionNode[] getOrderedChildren() {
+            return ordering.nodes.clone();
+        }
+
+        @Override
+        public boolean test(Map<String, Object> data) {
+            ConditionNode[] nodes = ordering.nodes;
+            // Decided per thread: nothing shared is written unless the evaluation is sampled
+            if (profile != null && ThreadLocalRandom.current().nextInt(SAMPLE_PERIOD) == 0) {
+                return testSampled(data);
+            }
+            for (ConditionNode child : nodes) {
+                if (safeTest(child, data) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+
+        /**
+         * Test every child, without short-circuiting, and record cost and outcome
+         */
+        private boolean testSampled(Map<String, Object> data) {
+            boolean result = and;
+            for (int i = 0; i < children.length; i++) {
+                long startTime = System.nanoTime();
+                boolean passed = safeTest(children[i], data);
+                profile.nanos[i].add(System.nanoTime() - startTime);
+                if (passed) {
+                    profile.passes[i].increment();
+                }
+                if (passed != and) {
+                    result = !and;
+                }
+            }
+            profile.samples.increment();
+            return result;
+        }
+
+        /**
+         * Re-rank the children from the sampled statistics once at least
+         * {@code minSamples} have been collected, then decay the statistics so
+         * later changes in the input mix are picked up. Returns true if the
+         * evaluation order changed.
+         */
+        public boolean reorder(long minSamples) {
+            if (profile == null || profile.samples.sum() < minSamples) {
+                return false;
+            }
+            double[] rank = profile.rank(and);
+            Integer[] order = new Integer[children.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            // Stable: ties keep authoring order
+            Arrays.sort(order, (a, b) -> Double.compare(rank[a], rank[b]));
+            profile.decay();
+
+            int[] indexes = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                indexes[i] = order[i];
+            }
+            if (Arrays.equals(indexes, ordering.indexes)) {
+                return false;
+            }
+            ordering = new Ordering(children, indexes);
+            return true;
+        }
+
+        /**
+         * Current evaluation order with the statistics it was derived from
+         */
+        public Map<String, Object> describe() {
+            Ordering current = ordering;
+            long samples = profile != null ? profile.samples.sum() : 0;
+            List<Map<String, Object>> conditions = new ArrayList<>();
+            for (int index : current.indexes) {
+                ConditionNode child = children[index];
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("authoringIndex", index);
+                if (child instanceof FieldCondition) {
+                    entry.put("field", ((FieldCondition) child).getField());
+                    entry.put("operator", ((FieldCondition) child).getOperator().getJsonName());
+                } else {
+                    entry.put("type", child instanceof Group ? (((Group) child).isAnd() ? "AND" : "OR") : "constant");
+                }
+                if (samples > 0) {
+                    entry.put("passRate", (double) profile.passes[index].sum() / samples);
+                    entry.put("avgNanos", profile.nanos[index].sum() / samples);
+                }
+                conditions.add(entry);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("logic", and ? "AND" : "OR");
+            result.put("samples", samples);
+            result.put("conditions", conditions);
+            return result;
+        }
+
+        private boolean safeTest(ConditionNode child, Map<String, Object> data) {
+            try {
+                return child.test(data);
+            } catch (RuntimeException e) {
+                failures.failed(child instanceof FieldCondition ? ((FieldCondition) child).getField() : null, e);
+                return false;
+            }
+        }
+
+        /**
+         * Evaluation order, swapped as a whole so readers see one consistent array
+         */
+        private static final class Ordering {
+
+            final ConditionNode[] nodes;
+            final int[] indexes;
+
+            Ordering(ConditionNode[] children, int[] indexes) {
+                this.indexes = indexes;
+                this.nodes = new ConditionNode[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    nodes[i] = children[indexes[i]];
+                }
+            }
+
+            static Ordering authoring(ConditionNode[] children) {
+                int[] indexes = new int[children.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = i;
+                }
+                return new Ordering(children, indexes);
+            }
+        }
+
+        /**
+         * Sampled statistics per child, by authoring index. Adders rather
+         * than plain fields, so concurrent samples of a hot group neither lose
+         * updates nor contend on one cache line.
+         */
+        private static final class Profile {
+
+            final LongAdder[] nanos;
+            final LongAdder[] passes;
+            final LongAdder samples = new LongAdder();
+
+            Profile(int size) {
+                this.nanos = adders(size);
+                this.passes = adders(size);
+            }
+
+            private static LongAdder[] adders(int size) {
+                LongAdder[] adders = new LongAdder[size];
+                for (int i = 0; i < size; i++) {
+                    adders[i] = new LongAdder();
+                }
+                return adders;
+            }
+
+            /**
+             * Expected cost of each child per evaluation it decides: cost
+             * divided by the probability it short-circuits the group. Lower
+             * goes first.
+             */
+            double[] rank(boolean and) {
+                long count = Math.max(1, samples.sum());
+                double[] rank = new double[nanos.length];
+                for (int i = 0; i < rank.length; i++) {
+                    double cost = Math.max(1.0, (double) nanos[i].sum() / count);
+                    double pass = (double) passes[i].sum() / count;
+                    double decisive = and ? 1.0 - pass : pass;
+                    rank[i] = decisive <= 0.0 ? Double.MAX_VALUE : cost / decisive;
+                }
+                return rank;
+            }
+
+            /**
+             * Halve every statistic. Samples recorded while halving are kept
+             * in full, which only skews the estimate slightly.
+             */
+            void decay() {
+                for (int i = 0; i < nanos.length; i++) {
+                    halve(nanos[i]);
+                    halve(passes[i]);
+                }
+                halve(samples);
+            }
+
+            private static void halve(LongAdder adder) {
+                adder.add(-(adder.sum() / 2));
+            }
+        }
+    }
+}
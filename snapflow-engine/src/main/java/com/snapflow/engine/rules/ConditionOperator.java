@@ -0,0 +1,54 @@
+package com.snapflow.engine.rules;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Operators supported in rule conditions, keyed by their JSON name
+ */
+public enum ConditionOperator {
+
+    EQUALS("equals"),
+    NOT_EQUALS("notEquals"),
+    GREATER_THAN("greaterThan"),
+    GREATER_THAN_OR_EQUAL("greaterThanOrEqual"),
+    LESS_THAN("lessThan"),
+    LESS_THAN_OR_EQUAL("lessThanOrEqual"),
+    CONTAINS("contains"),
+    STARTS_WITH("startsWith"),
+    ENDS_WITH("endsWith"),
+    MATCHES_REGEX("matchesRegex"),
+    IN("in"),
+    NOT_IN("notIn"),
+    IS_TRUE("isTrue"),
+    IS_FALSE("isFalse"),
+    IS_NULL("isNull"),
+    IS_NOT_NULL("isNotNull"),
+    IN_TABLE("inTable"),
+    LOOKUP("lookup");
+
+    private static final Map<String, ConditionOperator> BY_NAME = new HashMap<>();
+
+    static {
+        for (ConditionOperator operator : values()) {
+            BY_NAME.put(operator.jsonName, operator);
+        }
+    }
+
+    private final String jsonName;
+
+    ConditionOperator(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Resolve an operator from its JSON name, or null if it is not supported
+     */
+    public static ConditionOperator fromJsonName(String name) {
+        return name == null ? null : BY_NAME.get(name);
+    }
+}
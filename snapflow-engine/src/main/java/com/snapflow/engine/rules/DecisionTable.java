@@ -0,0 +1,337 @@
+package com.snapflow.engine.rules;
+
+import com.snapflow.engine.model.Rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A decision table: one rule per row, one condition or action per column.
+ *
+ * Column headers:
+ * <pre>
+ *   name, description, priority, enabled, logic   rule attributes (logic is AND or OR)
+ *   field:operator                               a condition, e.g. creditScore:greaterThanOrEqual
+ *   field:lookup:table                           a lookup condition; the cell lists the expected values
+ *   set:variable                                 a setVariable action
+ *   routeTo, log                                 routeTo / logMessage actions
+ * </pre>
+ * An empty cell leaves the condition or action out of that row. Rows
+ * without a priority get a descending one from their position, so the
+ * first row is tested first. Cells from CSV are text and are typed here:
+ * {@code true}/{@code false} become booleans and numerals without leading
+ * zeros become numbers,
+ * and {@code in}/{@code notIn}/{@code lookup} cells are {@code |}-separated
+ * lists. JSON cells keep their own types.
+ */
+public final class DecisionTable {
+
+    // No leading zeros: codes such as "00123" stay strings
+    private static final Pattern INTEGER = Pattern.compile("-?(0|[1-9]\\d{0,17})");
+    private static final Pattern DECIMAL = Pattern.compile("-?(0|[1-9]\\d*)?\\.\\d+([eE][-+]?\\d+)?");
+    private static final Set<String> FALSE_FLAGS = Set.of("false", "no", "0");
+
+    private enum Kind {
+        NAME, DESCRIPTION, PRIORITY, ENABLED, LOGIC, CONDITION, SET, ROUTE, LOG
+    }
+
+    private static final class Column {
+        final Kind kind;
+        final String field;
+        final ConditionOperator operator;
+        final String table;
+
+        Column(Kind kind, String field, ConditionOperator operator, String table) {
+            this.kind = kind;
+            this.field = field;
+            this.operator = operator;
+            this.table = table;
+        }
+    }
+
+    private final List<String> headers;
+    private final Column[] columns;
+
+    private DecisionTable(List<String> headers, Column[] columns) {
+        this.headers = headers;
+        this.columns = columns;
+    }
+
+    /**
+     * Parse the header row
+     *
+     * @throws IllegalArgumentException for an unknown column, operator or a duplicate attribute column
+     */
+    public static DecisionTable parse(List<String> headers) {
+        Column[] columns = new Column[headers.size()];
+        Set<Kind> attributes = new HashSet<>();
+        boolean hasAction = false;
+        for (int i = 0; i < columns.length; i++) {
+            String header = headers.get(i) != null ? headers.get(i).trim() : "";
+            Column column = parseColumn(header);
+            if (column.kind != Kind.CONDITION && column.kind != Kind.SET && !attributes.add(column.kind)) {
+                throw new IllegalArgumentException("Duplicate column: " + header);
+            }
+            hasAction |= column.kind == Kind.SET || column.kind == Kind.ROUTE || column.kind == Kind.LOG;
+            columns[i] = column;
+        }
+        if (!hasAction) {
+            throw new IllegalArgumentException("A decision table needs at least one action column "
+                    + "(set:variable, routeTo or log)");
+        }
+        return new DecisionTable(List.copyOf(headers), columns);
+    }
+
+    private static Column parseColumn(String header) {
+        switch (header) {
+            case "name":
+                return new Column(Kind.NAME, null, null, null);
+            case "description":
+                return new Column(Kind.DESCRIPTION, null, null, null);
+            case "priority":
+                return new Column(Kind.PRIORITY, null, null, null);
+            case "enabled":
+                return new Column(Kind.ENABLED, null, null, null);
+            case "logic":
+                return new Column(Kind.LOGIC, null, null, null);
+            case "routeTo":
+                return new Column(Kind.ROUTE, null, null, null);
+            case "log":
+                return new Column(Kind.LOG, null, null, null);
+            default:
+                break;
+        }
+        String[] parts = header.split(":", -1);
+        if (parts.length == 2 && "set".equals(parts[0]) && !parts[1].isEmpty()) {
+            return new Column(Kind.SET, parts[1], null, null);
+        }
+        if (parts.length < 2 || parts[0].isEmpty()) {
+            throw new IllegalArgumentException("Unknown column '" + header
+                    + "': expected an attribute, field:operator, set:variable, routeTo or log");
+        }
+        ConditionOperator operator = ConditionOperator.fromJsonName(parts[1]);
+        if (operator == null) {
+            throw new IllegalArgumentException("Unknown operator in column '" + header + "': " + parts[1]);
+        }
+        if (operator == ConditionOperator.LOOKUP) {
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Lookup column '" + header + "' must be field:lookup:table");
+            }
+            return new Column(Kind.CONDITION, parts[0], operator, parts[2]);
+        }
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Unknown column '" + header + "'");
+        }
+        return new Column(Kind.CONDITION, parts[0], operator, null);
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Build the rule for one row
+     *
+     * @param row        1-based row number, for the default name and priority
+     * @param cells      the row's cells, in header order
+     * @param textCells  whether cells are untyped text (CSV) and need typing
+     * @throws IllegalArgumentException describing the first invalid cell
+     */
+    public Rule toRule(UUID ruleSetId, long row, List<?> cells, boolean textCells) {
+        if (cells.size() > columns.length) {
+            throw new IllegalArgumentException("Row has " + cells.size() + " cells, the table has "
+                    + columns.length + " columns");
+        }
+        Rule rule = new Rule();
+        rule.setRuleSetId(ruleSetId);
+        rule.setName("row " + row);
+        rule.setPriority((int) Math.max(Integer.MIN_VALUE, -row));
+        String logic = "AND";
+        List<Map<String, Object>> conditions = new ArrayList<>();
+        List<Map<String, Object>> actions = new ArrayList<>();
+
+        for (int i = 0; i < cells.size(); i++) {
+            Object cell = cells.get(i);
+            if (cell == null || (cell instanceof String && ((String) cell).isBlank())) {
+                continue;
+            }
+            Column column = columns[i];
+            try {
+                switch (column.kind) {
+                    case NAME:
+                        rule.setName(cell.toString().trim());
+                        break;
+                    case DESCRIPTION:
+                        rule.setDescription(cell.toString());
+                        break;
+                    case PRIORITY:
+                        rule.setPriority(toInteger(cell));
+                        break;
+                    case ENABLED:
+                        rule.setEnabled(toFlag(cell));
+                        break;
+                    case LOGIC:
+                        logic = cell.toString().trim().toUpperCase();
+                        if (!"AND".equals(logic) && !"OR".equals(logic)) {
+                            throw new IllegalArgumentException("must be AND or OR");
+                        }
+                        break;
+                    case CONDITION:
+                        Map<String, Object> condition = condition(column, cell, textCells);
+                        if (condition != null) {
+                            conditions.add(condition);
+                        }
+                        break;
+                    case SET:
+                        actions.add(action("setVariable", "variable", column.field, "value",
+                                textCells ? typed(cell.toString()) : cell));
+                        break;
+                    case ROUTE:
+                        actions.add(action("routeTo", "targetNode", cell.toString().trim(), null, null));
+                        break;
+                    default:
+                        actions.add(action("logMessage", "message", cell.toString(), null, null));
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Column '" + headers.get(i) + "': " + e.getMessage(), e);
+            }
+        }
+        if (rule.getName().isEmpty()) {
+            throw new IllegalArgumentException("Rule name is empty");
+        }
+
+        Map<String, Object> conditionMap = new LinkedHashMap<>();
+        conditionMap.put("conditionLogic", logic);
+        conditionMap.put("conditions", conditions);
+        rule.setConditions(conditionMap);
+        Map<String, Object> actionMap = new HashMap<>();
+        actionMap.put("actions", actions);
+        rule.setActions(actionMap);
+        return rule;
+    }
+
+    private static Map<String, Object> condition(Column column, Object cell, boolean textCells) {
+        Object value;
+        switch (column.operator) {
+            case IS_TRUE:
+            case IS_FALSE:
+            case IS_NULL:
+            case IS_NOT_NULL:
+                // The cell is a flag saying whether the check applies to this row
+                if (!toFlag(cell)) {
+                    return null;
+                }
+                value = null;
+                break;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                if (ConditionNodes.toNumber(cell) == null) {
+                    throw new IllegalArgumentException("not a number: " + cell);
+                }
+                value = textCells ? typed(cell.toString()) : cell;
+                break;
+            case MATCHES_REGEX:
+                try {
+                    Pattern.compile(cell.toString());
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid regex: " + e.getDescription());
+                }
+                value = cell.toString();
+                break;
+            case IN:
+            case NOT_IN:
+                value = toList(cell, textCells);
+                break;
+            case LOOKUP:
+                List<Object> expected = new ArrayList<>();
+                for (Object item : toList(cell, textCells)) {
+                    expected.add(String.valueOf(item));
+                }
+                value = Map.of("table", column.table, "in", expected);
+                break;
+            case IN_TABLE:
+                value = cell.toString().trim();
+                break;
+            default:
+                value = textCells ? typed(cell.toString()) : cell;
+                break;
+        }
+        Map<String, Object> condition = new LinkedHashMap<>();
+        condition.put("field", column.field);
+        condition.put("operator", column.operator.getJsonName());
+        if (value != null) {
+            condition.put("value", value);
+        }
+        return condition;
+    }
+
+    private static Map<String, Object> action(String type, String key, Object value, String valueKey, Object extra) {
+        Map<String, Object> action = new LinkedHashMap<>();
+        action.put("type", type);
+        action.put(key, value);
+        if (valueKey != null) {
+            action.put(valueKey, extra);
+        }
+        return action;
+    }
+
+    private static List<Object> toList(Object cell, boolean textCells) {
+        List<Object> values = new ArrayList<>();
+        if (cell instanceof List) {
+            values.addAll((List<?>) cell);
+        } else if (textCells) {
+            for (String item : cell.toString().split("\\|", -1)) {
+                values.add(typed(item.trim()));
+            }
+        } else {
+            values.add(cell);
+        }
+        return values;
+    }
+
+    private static int toInteger(Object cell) {
+        if (cell instanceof Number) {
+            return ((Number) cell).intValue();
+        }
+        try {
+            return Integer.parseInt(cell.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an integer: " + cell);
+        }
+    }
+
+    private static boolean toFlag(Object cell) {
+        if (cell instanceof Boolean) {
+            return (Boolean) cell;
+        }
+        return !FALSE_FLAGS.contains(cell.toString().trim().toLowerCase());
+    }
+
+    /**
+     * Type a CSV cell the way the JSON body of a rule would have been typed
+     */
+    static Object typed(String text) {
+        if ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text)) {
+            return Boolean.parseBoolean(text);
+        }
+        if (INTEGER.matcher(text).matches()) {
+            long value = Long.parseLong(text);
+            return value == (int) value ? (Object) (int) value : (Object) value;
+        }
+        if (DECIMAL.matcher(text).matches()) {
+            return Double.parseDouble(text);
+        }
+        return text;
+    }
+}
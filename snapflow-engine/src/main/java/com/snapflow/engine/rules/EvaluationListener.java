@@ -0,0 +1,50 @@
+package com.snapflow.engine.rules;
+
+/**
+ * Receives the outcome of each rule tested while evaluating a
+ * {@link CompiledRuleSet}. Called on the evaluating thread, so
+ * implementations must be thread-safe and cheap.
+ */
+public interface EvaluationListener {
+
+    EvaluationListener NONE = new EvaluationListener() {
+        @Override
+        public boolean tracksRules() {
+            return false;
+        }
+
+        @Override
+        public void ruleTested(int position, boolean matched, long elapsedNanos) {
+        }
+
+        @Override
+        public void ruleFailed(int position) {
+        }
+
+        @Override
+        public void ruleSetEvaluated(CompiledRule matched, long elapsedNanos) {
+        }
+    };
+
+    /**
+     * Whether {@link #ruleTested} should be called (and timed) for every rule
+     * this evaluation visits. Asked once per evaluation, so a listener can
+     * sample; evaluations that are not tracked can use a generated matcher.
+     */
+    boolean tracksRules();
+
+    /**
+     * The conditions of the rule at {@code position} were tested
+     */
+    void ruleTested(int position, boolean matched, long elapsedNanos);
+
+    /**
+     * The conditions or an action of the rule at {@code position} threw
+     */
+    void ruleFailed(int position);
+
+    /**
+     * A whole evaluation finished; {@code matched} is null when no rule matched
+     */
+    void ruleSetEvaluated(CompiledRule matched, long elapsedNanos);
+}
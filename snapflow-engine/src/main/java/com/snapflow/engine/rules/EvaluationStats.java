@@ -0,0 +1,44 @@
+package com.snapflow.engine.rules;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optional per-evaluation statistics, filled in when a caller asks for them
+ */
+public final class EvaluationStats {
+
+    private int rulesVisited;
+    private int totalRules;
+    private boolean indexed;
+
+    void reset(int totalRules, boolean indexed) {
+        this.rulesVisited = 0;
+        this.totalRules = totalRules;
+        this.indexed = indexed;
+    }
+
+    void visited() {
+        rulesVisited++;
+    }
+
+    public int getRulesVisited() {
+        return rulesVisited;
+    }
+
+    public int getTotalRules() {
+        return totalRules;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("rulesVisited", rulesVisited);
+        map.put("totalRules", totalRules);
+        map.put("indexed", indexed);
+        return map;
+    }
+}
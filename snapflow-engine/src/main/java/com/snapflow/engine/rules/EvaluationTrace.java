@@ -0,0 +1,212 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Explanation of one evaluation: every rule visited, in the order visited,
+ * with each condition's result, where evaluation short-circuited and how long
+ * each rule's conditions took.
+ *
+ * Traces are built by a separate walk over the compiled plan
+ * ({@link CompiledRuleSet#explain(Map)}, {@link #ofRule(CompiledRule, Map)}),
+ * so ordinary evaluations carry no tracing code at all. The walk uses the
+ * same condition nodes, in the same order, as the interpreted evaluator;
+ * conditions are pure, so the results are the ones a real evaluation gets.
+ * Each rule is walked once and its result derived from the walk, which tests
+ * the leaf conditions itself rather than through their groups, so nothing is
+ * recorded in the rule set's metrics or condition statistics.
+ */
+public final class EvaluationTrace {
+
+    private final int totalRules;
+    private final boolean indexed;
+    private final List<Map<String, Object>> rules = new ArrayList<>();
+    private CompiledRule matched;
+    private long totalNanos;
+    /** Time spent in condition tests of the rule being visited */
+    private long conditionNanos;
+
+    EvaluationTrace(int totalRules, boolean indexed) {
+        this.totalRules = totalRules;
+        this.indexed = indexed;
+    }
+
+    /**
+     * Trace a single rule on its own, e.g. one being tested before it is saved
+     */
+    public static EvaluationTrace ofRule(CompiledRule rule, Map<String, Object> inputData) {
+        EvaluationTrace trace = new EvaluationTrace(1, false);
+        trace.visit(rule, inputData);
+        return trace;
+    }
+
+    /**
+     * Test one rule, timing its conditions and recording their results.
+     * Returns true if it matched, which ends a first-match evaluation.
+     */
+    boolean visit(CompiledRule rule, Map<String, Object> inputData) {
+        conditionNanos = 0;
+        Map<String, Object> condition = traceCondition(rule.getCondition(), inputData);
+        boolean result = (Boolean) condition.get("result");
+        // The condition tests alone, not the building of the trace around them
+        long nanos = conditionNanos;
+        totalNanos += nanos;
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("position", rule.getPosition());
+        entry.put("ruleId", rule.getId());
+        entry.put("name", rule.getName());
+        entry.put("priority", rule.getPriority());
+        entry.put("matched", result);
+        entry.put("nanos", nanos);
+        if (condition.containsKey("error")) {
+            entry.put("error", condition.get("error"));
+        }
+        entry.put("condition", condition);
+        rules.add(entry);
+
+        if (result) {
+            matched = rule;
+        }
+        return result;
+    }
+
+    /**
+     * The rule that matched, or null
+     */
+    public CompiledRule getMatched() {
+        return matched;
+    }
+
+    public int getRulesVisited() {
+        return rules.size();
+    }
+
+    public List<Map<String, Object>> getRules() {
+        return rules;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("matched", matched != null);
+        map.put("matchedRule", matched != null ? matched.getName() : null);
+        // First match wins: the matched rule is where evaluation stopped
+        map.put("stoppedAtPosition", matched != null ? matched.getPosition() : null);
+        map.put("rulesVisited", rules.size());
+        map.put("totalRules", totalRules);
+        map.put("indexed", indexed);
+        map.put("totalNanos", totalNanos);
+        map.put("rules", rules);
+        return map;
+    }
+
+    /**
+     * Result of a condition tree. Groups list their children in evaluation
+     * order; children after the one that decided the group are marked
+     * {@code evaluated: false}, as the real evaluation never tests them.
+     */
+    private Map<String, Object> traceCondition(ConditionNode node, Map<String, Object> data) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        if (node instanceof ConditionNodes.Group) {
+            traceGroup((ConditionNodes.Group) node, data, entry);
+            return entry;
+        }
+        describe(node, data, entry);
+        long startTime = System.nanoTime();
+        try {
+            entry.put("result", node.test(data));
+        } catch (RuntimeException e) {
+            entry.put("result", false);
+            entry.put("error", e.toString());
+        } finally {
+            conditionNanos += System.nanoTime() - startTime;
+        }
+        return entry;
+    }
+
+    private void traceGroup(ConditionNodes.Group group, Map<String, Object> data, Map<String, Object> entry) {
+        boolean and = group.isAnd();
+        ConditionNode[] authoring = group.getChildren();
+        ConditionNode[] ordered = group.getOrderedChildren();
+        List<Map<String, Object>> conditions = new ArrayList<>(ordered.length);
+        boolean result = and;
+        Integer decidedAt = null;
+        for (int i = 0; i < ordered.length; i++) {
+            Map<String, Object> child;
+            if (decidedAt == null) {
+                child = traceCondition(ordered[i], data);
+                if ((Boolean) child.get("result") != and) {
+                    result = !and;
+                    decidedAt = i;
+                }
+            } else {
+                child = new LinkedHashMap<>();
+                if (ordered[i] instanceof ConditionNodes.Group) {
+                    child.put("logic", ((ConditionNodes.Group) ordered[i]).isAnd() ? "AND" : "OR");
+                } else {
+                    describe(ordered[i], data, child);
+                }
+                child.put("evaluated", false);
+            }
+            child.put("authoringIndex", indexOf(authoring, ordered[i]));
+            conditions.add(child);
+        }
+        entry.put("logic", and ? "AND" : "OR");
+        entry.put("result", result);
+        // Index, in evaluation order, of the child that decided the group; null if all were tested
+        entry.put("shortCircuitAt", decidedAt);
+        entry.put("conditions", conditions);
+    }
+
+    private static void describe(ConditionNode node, Map<String, Object> data, Map<String, Object> entry) {
+        if (node instanceof ConditionNodes.FieldCondition) {
+            ConditionNodes.FieldCondition condition = (ConditionNodes.FieldCondition) node;
+            entry.put("field", condition.getField());
+            entry.put("operator", condition.getOperator().getJsonName());
+            Object operand = operandOf(condition);
+            if (operand != null) {
+                entry.put("value", operand);
+            }
+            entry.put("actual", data.get(condition.getField()));
+        } else if (node instanceof ConditionNodes.Constant) {
+            entry.put("constant", ((ConditionNodes.Constant) node).getResult());
+        } else {
+            entry.put("type", node.getClass().getSimpleName());
+        }
+    }
+
+    private static Object operandOf(ConditionNodes.FieldCondition condition) {
+        if (condition instanceof ConditionNodes.Equality) {
+            return ((ConditionNodes.Equality) condition).getValue();
+        } else if (condition instanceof ConditionNodes.NumericComparison) {
+            return ((ConditionNodes.NumericComparison) condition).getValue();
+        } else if (condition instanceof ConditionNodes.StringMatch) {
+            return ((ConditionNodes.StringMatch) condition).getValue();
+        } else if (condition instanceof ConditionNodes.RegexMatch) {
+            return ((ConditionNodes.RegexMatch) condition).getPattern().pattern();
+        } else if (condition instanceof ConditionNodes.SetMembership) {
+            return ((ConditionNodes.SetMembership) condition).getValues();
+        } else if (condition instanceof ConditionNodes.TableMembership) {
+            return ((ConditionNodes.TableMembership) condition).getTable().getName();
+        } else if (condition instanceof ConditionNodes.TableLookup) {
+            ConditionNodes.TableLookup lookup = (ConditionNodes.TableLookup) condition;
+            Map<String, Object> operand = new LinkedHashMap<>();
+            operand.put("table", lookup.getTable().getName());
+            operand.put("in", lookup.getExpected());
+            return operand;
+        }
+        return null;
+    }
+
+    private static int indexOf(ConditionNode[] nodes, ConditionNode node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
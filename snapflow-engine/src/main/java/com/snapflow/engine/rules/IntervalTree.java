@@ -0,0 +1,208 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static centered interval tree over numeric intervals, answering "which
+ * intervals contain this value" in O(log n + k).
+ * Ordering follows {@link Double#compare}, the same ordering used by
+ * {@link ConditionNodes.NumericComparison}, so NaN sorts above +Infinity.
+ */
+final class IntervalTree {
+
+    /**
+     * Numeric interval with inclusive/exclusive bounds, tagged with a rule position
+     */
+    static final class Interval {
+
+        /** Lower bound that every value satisfies (inclusive) */
+        static final double UNBOUNDED_LOW = Double.NEGATIVE_INFINITY;
+        /** Upper bound that every value satisfies under Double.compare (inclusive) */
+        static final double UNBOUNDED_HIGH = Double.NaN;
+
+        final int position;
+        double low = UNBOUNDED_LOW;
+        boolean lowInclusive = true;
+        double high = UNBOUNDED_HIGH;
+        boolean highInclusive = true;
+
+        Interval(int position) {
+            this.position = position;
+        }
+
+        void restrictLow(double value, boolean inclusive) {
+            int cmp = Double.compare(value, low);
+            if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                low = value;
+                lowInclusive = inclusive;
+            }
+        }
+
+        void restrictHigh(double value, boolean inclusive) {
+            int cmp = Double.compare(value, high);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                high = value;
+                highInclusive = inclusive;
+            }
+        }
+
+        boolean aboveLow(double value) {
+            int cmp = Double.compare(value, low);
+            return cmp > 0 || (cmp == 0 && lowInclusive);
+        }
+
+        boolean belowHigh(double value) {
+            int cmp = Double.compare(value, high);
+            return cmp < 0 || (cmp == 0 && highInclusive);
+        }
+
+        boolean contains(double value) {
+            return aboveLow(value) && belowHigh(value);
+        }
+    }
+
+    private static final Comparator<Interval> BY_LOW = (a, b) -> {
+        int cmp = Double.compare(a.low, b.low);
+        return cmp != 0 ? cmp : Boolean.compare(b.lowInclusive, a.lowInclusive);
+    };
+
+    private static final Comparator<Interval> BY_HIGH_DESC = (a, b) -> {
+        int cmp = Double.compare(b.high, a.high);
+        return cmp != 0 ? cmp : Boolean.compare(b.highInclusive, a.highInclusive);
+    };
+
+    private final Node root;
+    private final int size;
+
+    IntervalTree(List<Interval> intervals) {
+        this.size = intervals.size();
+        this.root = build(intervals);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Write the positions of all intervals containing the value into the
+     * buffer, growing it if needed. Returns the (possibly new) buffer; the
+     * number of results is stored in {@code count[0]}. Results are unsorted.
+     */
+    int[] stab(double value, int[] buffer, int[] count) {
+        count[0] = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.leaf != null) {
+                for (Interval interval : node.leaf) {
+                    if (interval.contains(value)) {
+                        buffer = append(buffer, count, interval.position);
+                    }
+                }
+                return buffer;
+            }
+            int cmp = Double.compare(value, node.center);
+            if (cmp < 0) {
+                // Every interval here reaches the center, so only the low bound matters
+                for (Interval interval : node.byLow) {
+                    if (!interval.aboveLow(value)) {
+                        break;
+                    }
+                    buffer = append(buffer, count, interval.position);
+                }
+                node = node.left;
+            } else if (cmp > 0) {
+                for (Interval interval : node.byHighDesc) {
+                    if (!interval.belowHigh(value)) {
+                        break;
+                    }
+                    buffer = append(buffer, count, interval.position);
+                }
+                node = node.right;
+            } else {
+                for (Interval interval : node.byLow) {
+                    buffer = append(buffer, count, interval.position);
+                }
+                return buffer;
+            }
+        }
+        return buffer;
+    }
+
+    private static int[] append(int[] buffer, int[] count, int position) {
+        if (count[0] == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(16, buffer.length * 2));
+        }
+        buffer[count[0]++] = position;
+        return buffer;
+    }
+
+    private static Node build(List<Interval> intervals) {
+        if (intervals.isEmpty()) {
+            return null;
+        }
+
+        double[] endpoints = new double[intervals.size() * 2];
+        int i = 0;
+        for (Interval interval : intervals) {
+            endpoints[i++] = interval.low;
+            endpoints[i++] = interval.high;
+        }
+        Arrays.sort(endpoints);
+        double center = endpoints[endpoints.length / 2];
+
+        List<Interval> left = new ArrayList<>();
+        List<Interval> right = new ArrayList<>();
+        List<Interval> here = new ArrayList<>();
+        for (Interval interval : intervals) {
+            if (!interval.belowHigh(center)) {
+                left.add(interval);
+            } else if (!interval.aboveLow(center)) {
+                right.add(interval);
+            } else {
+                here.add(interval);
+            }
+        }
+
+        if (here.isEmpty() && (left.isEmpty() || right.isEmpty())) {
+            // No progress (degenerate bounds); check these intervals one by one
+            return new Node(intervals.toArray(new Interval[0]));
+        }
+
+        Interval[] byLow = here.toArray(new Interval[0]);
+        Interval[] byHighDesc = byLow.clone();
+        Arrays.sort(byLow, BY_LOW);
+        Arrays.sort(byHighDesc, BY_HIGH_DESC);
+        return new Node(center, byLow, byHighDesc, build(left), build(right));
+    }
+
+    private static final class Node {
+
+        final double center;
+        final Interval[] byLow;
+        final Interval[] byHighDesc;
+        final Node left;
+        final Node right;
+        final Interval[] leaf;
+
+        Node(double center, Interval[] byLow, Interval[] byHighDesc, Node left, Node right) {
+            this.center = center;
+            this.byLow = byLow;
+            this.byHighDesc = byHighDesc;
+            this.left = left;
+            this.right = right;
+            this.leaf = null;
+        }
+
+        Node(Interval[] leaf) {
+            this.center = 0;
+            this.byLow = null;
+            this.byHighDesc = null;
+            this.left = null;
+            this.right = null;
+            this.leaf = leaf;
+        }
+    }
+}
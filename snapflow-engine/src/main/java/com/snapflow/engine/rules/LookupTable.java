@@ -0,0 +1,228 @@
+package com.snapflow.engine.rules;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only reference table backed by a memory-mapped file written by
+ * {@link LookupTableWriter}. Keys are stored sorted, so a lookup is a binary
+ * search over the mapped pages: opening a table only maps the file, and the
+ * rows live in the page cache rather than on the heap.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header   64 bytes: magic, format, kind, key type, row count, data length
+ *   offsets  row count x 8 bytes: start of each row in the data region
+ *   data     per row: [int len][key] ([int len][high key] for ranges) [int len][value]
+ * </pre>
+ * Offsets and data are mapped in segments of {@link #SEGMENT_SIZE}; the writer
+ * pads the data region so that no row crosses a segment boundary, which lets
+ * tables grow past the 2GB limit of a single mapping.
+ *
+ * Keys are compared as unsigned bytes. String keys are UTF-8, which sorts in
+ * code point order; numeric keys are doubles encoded so that byte order
+ * matches numeric order.
+ */
+public final class LookupTable {
+
+    static final int MAGIC = 0x53464C54; // "SFLT"
+    static final int FORMAT = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /** Exact keys, or non-overlapping inclusive [low, high] key ranges */
+    public enum Kind {
+        KEYS, RANGES
+    }
+
+    public enum KeyType {
+        STRING, NUMBER
+    }
+
+    private final Path file;
+    private final Kind kind;
+    private final KeyType keyType;
+    private final long rowCount;
+    private final long fileSize;
+    private final MappedByteBuffer[] offsets;
+    private final MappedByteBuffer[] data;
+
+    private LookupTable(Path file, Kind kind, KeyType keyType, long rowCount, long fileSize,
+            MappedByteBuffer[] offsets, MappedByteBuffer[] data) {
+        this.file = file;
+        this.kind = kind;
+        this.keyType = keyType;
+        this.rowCount = rowCount;
+        this.fileSize = fileSize;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    /**
+     * Map a table file. Only the header is read; rows are paged in on demand.
+     */
+    public static LookupTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a lookup table (too short): " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                throw new IOException("Not a lookup table or unsupported format: " + file);
+            }
+            Kind kind = Kind.values()[header.get(8)];
+            KeyType keyType = KeyType.values()[header.get(9)];
+            long rowCount = header.getLong(16);
+            long dataLength = header.getLong(24);
+            long dataStart = HEADER_SIZE + rowCount * Long.BYTES;
+            if (dataStart + dataLength != fileSize) {
+                throw new IOException("Lookup table is truncated: " + file);
+            }
+            return new LookupTable(file, kind, keyType, rowCount, fileSize,
+                    map(channel, HEADER_SIZE, rowCount * Long.BYTES),
+                    map(channel, dataStart, dataLength));
+        }
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, long start, long length) throws IOException {
+        int segments = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] buffers = new MappedByteBuffer[segments];
+        for (int i = 0; i < segments; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + offset,
+                    Math.min(SEGMENT_SIZE, length - offset));
+        }
+        return buffers;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public KeyType getKeyType() {
+        return keyType;
+    }
+
+    public long size() {
+        return rowCount;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Whether the key is in the table (for ranges: inside one of the ranges)
+     */
+    public boolean contains(Object key) {
+        byte[] encoded = encodeKey(keyType, key);
+        return encoded != null && find(encoded) >= 0;
+    }
+
+    /**
+     * Value stored for the key (for ranges: for the range containing it), or null
+     */
+    public String get(Object key) {
+        byte[] encoded = encodeKey(keyType, key);
+        if (encoded == null) {
+            return null;
+        }
+        long row = find(encoded);
+        if (row < 0) {
+            return null;
+        }
+        long offset = rowOffset(row);
+        ByteBuffer segment = data[(int) (offset >>> SEGMENT_SHIFT)];
+        int position = (int) (offset & SEGMENT_MASK);
+        position += Integer.BYTES + segment.getInt(position);
+        if (kind == Kind.RANGES) {
+            position += Integer.BYTES + segment.getInt(position);
+        }
+        byte[] value = new byte[segment.getInt(position)];
+        segment.get(position + Integer.BYTES, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Row holding the key, or -1
+     */
+    private long find(byte[] key) {
+        long low = 0;
+        long high = rowCount - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key, 0);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        if (kind == Kind.KEYS || high < 0) {
+            return -1;
+        }
+        // high is now the last range starting below the key; check its upper bound
+        return compareKey(high, key, 1) >= 0 ? high : -1;
+    }
+
+    /**
+     * Compare the row's key ({@code field} 0) or high key (1) with {@code key}
+     */
+    private int compareKey(long row, byte[] key, int field) {
+        long offset = rowOffset(row);
+        ByteBuffer segment = data[(int) (offset >>> SEGMENT_SHIFT)];
+        int position = (int) (offset & SEGMENT_MASK);
+        if (field == 1) {
+            position += Integer.BYTES + segment.getInt(position);
+        }
+        int length = segment.getInt(position);
+        position += Integer.BYTES;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(segment.get(position + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private long rowOffset(long row) {
+        long position = row * Long.BYTES;
+        return offsets[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * Encode a key for comparison, or null if it cannot be a key of this type
+     */
+    static byte[] encodeKey(KeyType keyType, Object key) {
+        if (key == null) {
+            return null;
+        }
+        if (keyType == KeyType.STRING) {
+            return key.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        Double number = ConditionNodes.toNumber(key);
+        if (number == null || number.isNaN()) {
+            return null;
+        }
+        // Flip so that unsigned byte order matches numeric order (-0.0 folds into 0.0)
+        long bits = Double.doubleToLongBits(number + 0.0);
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        return ByteBuffer.allocate(Long.BYTES).putLong(bits).array();
+    }
+}
@@ -0,0 +1,40 @@
+package com.snapflow.engine.rules;
+
+/**
+ * Named handle to a lookup table, held by compiled conditions. Uploading a
+ * new version of the table swaps it in place, so rules pick it up without
+ * being recompiled; until a table with the name exists, lookups find nothing.
+ */
+public final class LookupTableRef {
+
+    private final String name;
+    private volatile LookupTable table;
+    private volatile long generation;
+
+    public LookupTableRef(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Current table, or null if there is none with this name
+     */
+    public LookupTable get() {
+        return table;
+    }
+
+    /**
+     * Bumped on every swap, so callers caching results derived from the table can tell them apart
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public synchronized void set(LookupTable table) {
+        this.table = table;
+        this.generation++;
+    }
+}
@@ -0,0 +1,12 @@
+package com.snapflow.engine.rules;
+
+/**
+ * Resolves lookup table names used in rule conditions to their handles
+ */
+public interface LookupTableResolver {
+
+    /** Resolver without tables; every lookup finds nothing */
+    LookupTableResolver NONE = LookupTableRef::new;
+
+    LookupTableRef resolve(String name);
+}
@@ -0,0 +1,221 @@
+package com.snapflow.engine.rules;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes a {@link LookupTable} file. Rows added in key order are streamed to
+ * disk, holding only one offset per row in memory; unsorted rows are
+ * buffered and sorted when the table is finished. The file is written next
+ * to the target and moved into place atomically, so readers never see a
+ * partial table.
+ */
+public final class LookupTableWriter implements Closeable {
+
+    private static final Comparator<byte[]> UNSIGNED = Arrays::compareUnsigned;
+
+    private final Path target;
+    private final LookupTable.Kind kind;
+    private final LookupTable.KeyType keyType;
+    private final boolean presorted;
+    private final Path dataFile;
+    private final DataOutputStream out;
+    private final List<byte[][]> buffered;
+
+    private long[] offsets = new long[1024];
+    private long rowCount;
+    private long dataLength;
+    private byte[] lastKey;
+    private boolean finished;
+
+    /**
+     * @param presorted rows will be added in ascending key order and can be
+     *                  streamed; otherwise they are buffered and sorted
+     */
+    public LookupTableWriter(Path target, LookupTable.Kind kind, LookupTable.KeyType keyType, boolean presorted)
+            throws IOException {
+        this.target = target;
+        this.kind = kind;
+        this.keyType = keyType;
+        this.presorted = presorted;
+        this.dataFile = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName() + ".", ".data");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16));
+        this.buffered = presorted ? null : new ArrayList<>();
+    }
+
+    public long getRowCount() {
+        return presorted ? rowCount : buffered.size();
+    }
+
+    /**
+     * Add a key of a {@link LookupTable.Kind#KEYS} table
+     */
+    public void add(Object key, String value) throws IOException {
+        if (kind != LookupTable.Kind.KEYS) {
+            throw new IllegalStateException("Range table rows need a low and a high key");
+        }
+        addRow(encode(key), null, value);
+    }
+
+    /**
+     * Add an inclusive range of a {@link LookupTable.Kind#RANGES} table
+     */
+    public void addRange(Object low, Object high, String value) throws IOException {
+        if (kind != LookupTable.Kind.RANGES) {
+            throw new IllegalStateException("Key table rows have a single key");
+        }
+        byte[] lowKey = encode(low);
+        byte[] highKey = encode(high);
+        if (Arrays.compareUnsigned(lowKey, highKey) > 0) {
+            throw new IllegalArgumentException("Range low " + low + " is above high " + high);
+        }
+        addRow(lowKey, highKey, value);
+    }
+
+    private void addRow(byte[] key, byte[] high, String value) throws IOException {
+        byte[] valueBytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        if (presorted) {
+            checkOrder(key, high);
+            write(key, high, valueBytes);
+        } else {
+            buffered.add(new byte[][] { key, high, valueBytes });
+        }
+    }
+
+    /**
+     * Write the table and move it over the target; returns the number of rows
+     */
+    public long finish() throws IOException {
+        if (!presorted) {
+            buffered.sort((a, b) -> UNSIGNED.compare(a[0], b[0]));
+            for (byte[][] row : buffered) {
+                checkOrder(row[0], row[1]);
+                write(row[0], row[1], row[2]);
+            }
+            buffered.clear();
+        }
+        out.close();
+
+        Path tableFile = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName() + ".", ".tmp");
+        try (FileChannel channel = FileChannel.open(tableFile, StandardOpenOption.WRITE);
+                FileChannel dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(LookupTable.HEADER_SIZE);
+            header.putInt(LookupTable.MAGIC)
+                    .putInt(LookupTable.FORMAT)
+                    .put((byte) kind.ordinal())
+                    .put((byte) keyType.ordinal())
+                    .position(16);
+            header.putLong(rowCount).putLong(dataLength).rewind();
+            channel.write(header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (long row = 0; row < rowCount; row++) {
+                if (buffer.remaining() < Long.BYTES) {
+                    buffer.flip();
+                    channel.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(offsets[(int) row]);
+            }
+            buffer.flip();
+            channel.write(buffer);
+
+            long position = channel.position();
+            long transferred = 0;
+            while (transferred < dataLength) {
+                transferred += dataChannel.transferTo(transferred, dataLength - transferred, channel);
+            }
+            channel.force(false);
+            if (channel.size() != position + dataLength) {
+                throw new IOException("Lookup table was not fully written: " + tableFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tableFile);
+            throw e;
+        } finally {
+            Files.deleteIfExists(dataFile);
+        }
+        Files.move(tableFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        return rowCount;
+    }
+
+    /**
+     * Discard an unfinished table
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    private byte[] encode(Object key) {
+        byte[] encoded = LookupTable.encodeKey(keyType, key);
+        if (encoded == null) {
+            throw new IllegalArgumentException("Invalid " + keyType.name().toLowerCase() + " key: " + key);
+        }
+        return encoded;
+    }
+
+    private void checkOrder(byte[] key, byte[] high) {
+        if (lastKey != null && Arrays.compareUnsigned(key, lastKey) <= 0) {
+            throw new IllegalArgumentException(kind == LookupTable.Kind.KEYS
+                    ? "Duplicate or out-of-order key: " + describe(key)
+                    : "Overlapping or out-of-order range starting at: " + describe(key));
+        }
+        lastKey = high != null ? high : key;
+    }
+
+    private String describe(byte[] key) {
+        if (keyType == LookupTable.KeyType.STRING) {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+        long bits = ByteBuffer.wrap(key).getLong();
+        return String.valueOf(Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits));
+    }
+
+    private void write(byte[] key, byte[] high, byte[] value) throws IOException {
+        int length = 2 * Integer.BYTES + key.length + value.length
+                + (high != null ? Integer.BYTES + high.length : 0);
+        if (length > LookupTable.SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Lookup table row is too large: " + length + " bytes");
+        }
+        // Keep every row inside one mapped segment
+        long segmentEnd = (dataLength | LookupTable.SEGMENT_MASK) + 1;
+        if (dataLength + length > segmentEnd) {
+            for (long pad = dataLength; pad < segmentEnd; pad++) {
+                out.write(0);
+            }
+            dataLength = segmentEnd;
+        }
+
+        if (rowCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[(int) rowCount++] = dataLength;
+        out.writeInt(key.length);
+        out.write(key);
+        if (high != null) {
+            out.writeInt(high.length);
+            out.write(high);
+        }
+        out.writeInt(value.length);
+        out.write(value);
+        dataLength += length;
+    }
+}
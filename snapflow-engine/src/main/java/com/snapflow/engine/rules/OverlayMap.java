@@ -0,0 +1,271 @@
+package com.snapflow.engine.rules;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Evaluation output as a copy-on-write overlay over the input: reads fall
+ * through to the input unless the key was written, and writes only ever go
+ * to the overlay, so the input is never copied or modified. Rule actions set
+ * a handful of variables, so the overlay is a pair of small arrays searched
+ * linearly and allocated on the first write.
+ *
+ * The input is held by reference, so later changes to it show through for
+ * keys the overlay has not written. Not thread-safe.
+ */
+public final class OverlayMap extends AbstractMap<String, Object> {
+
+    /** Overlay value of a key removed from the view */
+    private static final Object REMOVED = new Object();
+
+    private final Map<String, Object> base;
+    private String[] keys;
+    private Object[] values;
+    private int count;
+
+    public OverlayMap(Map<String, Object> base) {
+        this.base = base;
+    }
+
+    /**
+     * The map this overlay reads through to
+     */
+    public Map<String, Object> getBase() {
+        return base;
+    }
+
+    /**
+     * Variables written to the overlay whose value differs from the input,
+     * as a new map (empty and immutable when nothing changed)
+     */
+    public Map<String, Object> changes() {
+        Map<String, Object> changes = null;
+        for (int i = 0; i < count; i++) {
+            Object value = values[i];
+            if (value != REMOVED && !(base.containsKey(keys[i]) && Objects.equals(base.get(keys[i]), value))) {
+                if (changes == null) {
+                    changes = new HashMap<>();
+                }
+                changes.put(keys[i], value);
+            }
+        }
+        return changes != null ? changes : Map.of();
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = slot(key);
+        if (slot < 0) {
+            return base.get(key);
+        }
+        return values[slot] == REMOVED ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = slot(key);
+        return slot < 0 ? base.containsKey(key) : values[slot] != REMOVED;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Objects.requireNonNull(key, "key");
+        int slot = slot(key);
+        if (slot >= 0) {
+            Object previous = values[slot];
+            values[slot] = value;
+            return previous == REMOVED ? null : previous;
+        }
+        if (keys == null) {
+            keys = new String[4];
+            values = new Object[4];
+        } else if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        keys[count] = key;
+        values[count++] = value;
+        return base.get(key);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = slot(key);
+        if (slot >= 0) {
+            Object previous = values[slot];
+            values[slot] = REMOVED;
+            return previous == REMOVED ? null : previous;
+        }
+        if (key instanceof String && base.containsKey(key)) {
+            Object previous = base.get(key);
+            put((String) key, REMOVED);
+            return previous;
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            values[i] = REMOVED;
+        }
+        for (String key : base.keySet()) {
+            if (slot(key) < 0) {
+                put(key, REMOVED);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = base.size();
+        for (int i = 0; i < count; i++) {
+            boolean inBase = base.containsKey(keys[i]);
+            if (values[i] == REMOVED) {
+                size -= inBase ? 1 : 0;
+            } else if (!inBase) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return OverlayMap.this.size();
+            }
+        };
+    }
+
+    private int slot(Object key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Overlay entries in write order, then input entries the overlay does not shadow
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private final Iterator<Entry<String, Object>> baseEntries = base.entrySet().iterator();
+        // Writes through the iterator add overlay slots; they shadow input keys already handled
+        private final int overlayEnd = count;
+        private int position;
+        private Entry<String, Object> next;
+        private String lastKey;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (position < overlayEnd) {
+                    int slot = position++;
+                    if (values[slot] != REMOVED) {
+                        next = new OverlayEntry(slot);
+                    }
+                } else if (baseEntries.hasNext()) {
+                    Entry<String, Object> entry = baseEntries.next();
+                    if (slot(entry.getKey()) < 0) {
+                        next = new BaseEntry(entry.getKey(), entry.getValue());
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = next;
+            next = null;
+            lastKey = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            OverlayMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    /**
+     * Input entry; setting its value writes to the overlay
+     */
+    private final class BaseEntry extends SimpleEntry<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        BaseEntry(String key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private final class OverlayEntry implements Entry<String, Object> {
+
+        private final int slot;
+
+        OverlayEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return values[slot];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && getKey().equals(((Entry<?, ?>) other).getKey())
+                    && Objects.equals(getValue(), ((Entry<?, ?>) other).getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+    }
+}
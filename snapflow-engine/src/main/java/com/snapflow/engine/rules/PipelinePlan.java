@@ -0,0 +1,126 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Execution plan for a chain of rule sets evaluated one after another, each
+ * stage reading the variables the earlier stages wrote.
+ *
+ * Stages are grouped into levels. A stage depends on an earlier one if it
+ * reads a variable the earlier one can write, or writes a variable the
+ * earlier one also writes (the later value must win). Each stage goes in the
+ * level after the last stage it depends on, so the stages of one level are
+ * independent of each other: evaluating them concurrently and applying their
+ * changes in stage order gives the same result as evaluating them in order.
+ */
+public final class PipelinePlan {
+
+    private final CompiledRuleSet[] stages;
+    private final int[] levelOf;
+    private final int[][] levels;
+
+    private PipelinePlan(CompiledRuleSet[] stages, int[] levelOf, int[][] levels) {
+        this.stages = stages;
+        this.levelOf = levelOf;
+        this.levels = levels;
+    }
+
+    public static PipelinePlan of(List<CompiledRuleSet> stageList) {
+        CompiledRuleSet[] stages = stageList.toArray(new CompiledRuleSet[0]);
+        List<Set<String>> writes = new ArrayList<>(stages.length);
+        int[] levelOf = new int[stages.length];
+        int levelCount = 0;
+        for (int i = 0; i < stages.length; i++) {
+            Set<String> reads = stages[i].getReferencedFields();
+            Set<String> written = writtenVariables(stages[i]);
+            int level = 0;
+            for (int j = 0; j < i; j++) {
+                if (levelOf[j] >= level && (intersects(writes.get(j), reads) || intersects(writes.get(j), written))) {
+                    level = levelOf[j] + 1;
+                }
+            }
+            levelOf[i] = level;
+            levelCount = Math.max(levelCount, level + 1);
+            writes.add(written);
+        }
+
+        List<List<Integer>> grouped = new ArrayList<>();
+        for (int level = 0; level < levelCount; level++) {
+            grouped.add(new ArrayList<>());
+        }
+        for (int i = 0; i < stages.length; i++) {
+            grouped.get(levelOf[i]).add(i);
+        }
+        int[][] levels = new int[levelCount][];
+        for (int level = 0; level < levelCount; level++) {
+            levels[level] = grouped.get(level).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new PipelinePlan(stages, levelOf, levels);
+    }
+
+    /**
+     * Whether this plan was built from exactly these compiled stages; a new
+     * plan is needed once any stage's rule set has changed
+     */
+    public boolean isFor(List<CompiledRuleSet> stageList) {
+        if (stageList.size() != stages.length) {
+            return false;
+        }
+        for (int i = 0; i < stages.length; i++) {
+            if (stageList.get(i) != stages[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return stages.length;
+    }
+
+    public CompiledRuleSet getStage(int stage) {
+        return stages[stage];
+    }
+
+    public int getLevel(int stage) {
+        return levelOf[stage];
+    }
+
+    /**
+     * Stage indexes per level, in stage order within a level
+     */
+    public int[][] getLevels() {
+        return levels;
+    }
+
+    /**
+     * Variables any rule's actions can set
+     */
+    static Set<String> writtenVariables(CompiledRuleSet ruleSet) {
+        Set<String> written = new HashSet<>();
+        for (CompiledRule rule : ruleSet.getRules()) {
+            for (ActionNode action : rule.getActions()) {
+                if (action instanceof ActionNodes.SetVariable) {
+                    written.add(((ActionNodes.SetVariable) action).getVariable());
+                } else if (action instanceof ActionNodes.RouteTo) {
+                    written.add(ActionNodes.ROUTE_TO_NODE_VARIABLE);
+                }
+            }
+        }
+        return written;
+    }
+
+    private static boolean intersects(Set<String> a, Set<String> b) {
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        for (String value : smaller) {
+            if (larger.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
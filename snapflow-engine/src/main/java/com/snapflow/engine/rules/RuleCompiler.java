@@ -0,0 +1,252 @@
+package com.snapflow.engine.rules;
+
+import com.snapflow.engine.model.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles the JSON conditions/actions of {@link Rule} entities into an
+ * immutable {@link CompiledRuleSet}. All casting, operator lookup, number
+ * parsing and regex compilation happens here, once per load, instead of on
+ * every evaluation.
+ */
+public final class RuleCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleCompiler.class);
+
+    private RuleCompiler() {
+    }
+
+    /**
+     * Compile rules that are already filtered to enabled and sorted by priority
+     */
+    public static CompiledRuleSet compile(UUID ruleSetId, long version, List<Rule> rules) {
+        return compile(ruleSetId, version, 0, rules);
+    }
+
+    /**
+     * Compile the rules of a published snapshot
+     */
+    public static CompiledRuleSet compile(UUID ruleSetId, long version, int snapshotVersion, List<Rule> rules) {
+        return compile(ruleSetId, version, snapshotVersion, rules, LookupTableResolver.NONE);
+    }
+
+    /**
+     * Compile rules, resolving the lookup tables named by inTable/lookup conditions
+     */
+    public static CompiledRuleSet compile(UUID ruleSetId, long version, int snapshotVersion, List<Rule> rules,
+            LookupTableResolver tables) {
+        CompiledRule[] compiled = new CompiledRule[rules.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compileRule(i, rules.get(i), tables);
+        }
+        return new CompiledRuleSet(ruleSetId, version, snapshotVersion, compiled);
+    }
+
+    public static CompiledRule compileRule(Rule rule) {
+        return compileRule(rule, LookupTableResolver.NONE);
+    }
+
+    public static CompiledRule compileRule(Rule rule, LookupTableResolver tables) {
+        return compileRule(-1, rule, tables);
+    }
+
+    private static CompiledRule compileRule(int position, Rule rule, LookupTableResolver tables) {
+        int priority = rule.getPriority() != null ? rule.getPriority() : 0;
+        ConditionFailures failures = new ConditionFailures(position, rule.getName());
+        return new CompiledRule(
+                position,
+                rule.getId(),
+                rule.getName(),
+                priority,
+                compileConditions(rule.getName(), rule.getConditions(), tables, failures),
+                compileActions(rule.getName(), rule.getActions()),
+                failures);
+    }
+
+    private static ConditionNode compileConditions(String ruleName, Map<String, Object> conditionsMap,
+            LookupTableResolver tables, ConditionFailures failures) {
+        if (conditionsMap == null || conditionsMap.isEmpty()) {
+            return ConditionNodes.ALWAYS_TRUE; // No conditions = always match
+        }
+
+        Object conditions = conditionsMap.get("conditions");
+        if (conditions == null) {
+            return ConditionNodes.ALWAYS_TRUE;
+        }
+        if (!(conditions instanceof List)) {
+            logger.warn("Rule '{}' has malformed conditions and will never match", ruleName);
+            return ConditionNodes.ALWAYS_FALSE;
+        }
+        List<?> conditionList = (List<?>) conditions;
+        if (conditionList.isEmpty()) {
+            return ConditionNodes.ALWAYS_TRUE;
+        }
+
+        Object logic = conditionsMap.getOrDefault("conditionLogic", "AND");
+        if (!(logic instanceof String)) {
+            logger.warn("Rule '{}' has malformed conditionLogic and will never match", ruleName);
+            return ConditionNodes.ALWAYS_FALSE;
+        }
+
+        ConditionNode[] children = new ConditionNode[conditionList.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = compileCondition(ruleName, conditionList.get(i), tables);
+        }
+        return new ConditionNodes.Group("AND".equals(logic), children, failures);
+    }
+
+    private static ConditionNode compileCondition(String ruleName, Object conditionObject, LookupTableResolver tables) {
+        if (!(conditionObject instanceof Map)) {
+            logger.warn("Rule '{}' has a malformed condition: {}", ruleName, conditionObject);
+            return ConditionNodes.ALWAYS_FALSE;
+        }
+        Map<?, ?> condition = (Map<?, ?>) conditionObject;
+        Object fieldObject = condition.get("field");
+        Object operatorObject = condition.get("operator");
+        Object value = condition.get("value");
+
+        if (!(fieldObject instanceof String) || !(operatorObject instanceof String)) {
+            logger.warn("Rule '{}' has a condition without field/operator: {}", ruleName, condition);
+            return ConditionNodes.ALWAYS_FALSE;
+        }
+        String field = (String) fieldObject;
+        ConditionOperator operator = ConditionOperator.fromJsonName((String) operatorObject);
+        if (operator == null) {
+            logger.warn("Unknown operator in rule '{}': {}", ruleName, operatorObject);
+            return ConditionNodes.ALWAYS_FALSE;
+        }
+
+        switch (operator) {
+            case EQUALS:
+            case NOT_EQUALS:
+                return new ConditionNodes.Equality(field, operator, value);
+
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                Double number = ConditionNodes.toNumber(value);
+                if (number == null) {
+                    logger.warn("Rule '{}' compares {} against non-numeric value: {}", ruleName, field, value);
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+                return new ConditionNodes.NumericComparison(field, operator, number);
+
+            case CONTAINS:
+            case STARTS_WITH:
+            case ENDS_WITH:
+                if (value == null) {
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+                return new ConditionNodes.StringMatch(field, operator, value.toString());
+
+            case MATCHES_REGEX:
+                if (value == null) {
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+                try {
+                    return new ConditionNodes.RegexMatch(field, Pattern.compile(value.toString()));
+                } catch (PatternSyntaxException e) {
+                    logger.warn("Rule '{}' has an invalid regex for {}: {}", ruleName, field, e.getMessage());
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+
+            case IN:
+            case NOT_IN:
+                if (!(value instanceof List)) {
+                    // Matches the interpreted evaluator: "in" a non-list is false, "notIn" is true
+                    return operator == ConditionOperator.IN ? ConditionNodes.ALWAYS_FALSE : ConditionNodes.ALWAYS_TRUE;
+                }
+                return new ConditionNodes.SetMembership(field, operator, new HashSet<>((List<?>) value));
+
+            case IN_TABLE: {
+                // "value": "tableName" or {"table": "tableName"}
+                Object table = value instanceof Map ? ((Map<?, ?>) value).get("table") : value;
+                if (!(table instanceof String)) {
+                    logger.warn("Rule '{}' has an inTable condition on {} without a table name", ruleName, field);
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+                return new ConditionNodes.TableMembership(field, tables.resolve((String) table));
+            }
+
+            case LOOKUP: {
+                // "value": {"table": "tableName", "equals": x} or {"table": "tableName", "in": [x, y]}
+                Map<?, ?> lookup = value instanceof Map ? (Map<?, ?>) value : Map.of();
+                Object table = lookup.get("table");
+                Set<String> expected = new HashSet<>();
+                if (lookup.get("in") instanceof List) {
+                    for (Object item : (List<?>) lookup.get("in")) {
+                        expected.add(String.valueOf(item));
+                    }
+                } else if (lookup.get("equals") != null) {
+                    expected.add(lookup.get("equals").toString());
+                }
+                if (!(table instanceof String) || expected.isEmpty()) {
+                    logger.warn("Rule '{}' has a lookup condition on {} without a table and expected values: {}",
+                            ruleName, field, value);
+                    return ConditionNodes.ALWAYS_FALSE;
+                }
+                return new ConditionNodes.TableLookup(field, tables.resolve((String) table), expected);
+            }
+
+            default:
+                return new ConditionNodes.UnaryCheck(field, operator);
+        }
+    }
+
+    private static ActionNode[] compileActions(String ruleName, Map<String, Object> actionsMap) {
+        if (actionsMap == null || actionsMap.isEmpty()) {
+            return new ActionNode[0];
+        }
+
+        Object actions = actionsMap.get("actions");
+        if (!(actions instanceof List)) {
+            return new ActionNode[0];
+        }
+
+        List<ActionNode> compiled = new ArrayList<>();
+        for (Object actionObject : (List<?>) actions) {
+            ActionNode action = compileAction(ruleName, actionObject);
+            if (action != null) {
+                compiled.add(action);
+            }
+        }
+        return compiled.toArray(new ActionNode[0]);
+    }
+
+    private static ActionNode compileAction(String ruleName, Object actionObject) {
+        if (!(actionObject instanceof Map)) {
+            logger.warn("Rule '{}' has a malformed action: {}", ruleName, actionObject);
+            return null;
+        }
+        Map<?, ?> action = (Map<?, ?>) actionObject;
+        Object type = action.get("type");
+
+        if ("setVariable".equals(type) && action.get("variable") instanceof String) {
+            return new ActionNodes.SetVariable((String) action.get("variable"), action.get("value"));
+        }
+        if ("routeTo".equals(type) && isStringOrNull(action.get("targetNode"))) {
+            return new ActionNodes.RouteTo((String) action.get("targetNode"));
+        }
+        if ("logMessage".equals(type) && isStringOrNull(action.get("message"))) {
+            return new ActionNodes.LogMessage((String) action.get("message"));
+        }
+
+        logger.warn("Unknown or malformed action in rule '{}': {}", ruleName, action);
+        return null;
+    }
+
+    private static boolean isStringOrNull(Object value) {
+        return value == null || value instanceof String;
+    }
+}
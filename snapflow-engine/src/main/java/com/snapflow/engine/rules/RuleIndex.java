@@ -0,0 +1,471 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Discrimination index over the rules of a compiled rule set.
+ *
+ * Each rule is filed under at most one of its AND-ed conditions: an
+ * equals/in condition goes into a hash bucket per constant; failing that, a
+ * contains/startsWith/endsWith condition goes under its pattern; failing
+ * that, a set of range conditions on one field becomes an interval in an
+ * interval tree. Rules with no indexable condition are always candidates.
+ *
+ * The patterns of each field are compiled into one {@link AhoCorasick}
+ * automaton, so a single pass over the field value finds every pattern it
+ * contains, starts or ends with, however many rules there are. A lookup yields the
+ * candidate rule positions in ascending (priority) order; candidates still
+ * get their full condition evaluated, so the index is only a filter and
+ * first-match-by-priority semantics are unchanged.
+ */
+final class RuleIndex {
+
+    /** Below this many rules a linear scan is cheaper than an index lookup */
+    static final int MIN_RULES = 16;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final String[] hashFields;
+    private final Map<Object, int[]>[] hashBuckets;
+    private final PatternField[] patternFields;
+    private final String[] rangeFields;
+    private final IntervalTree[] rangeTrees;
+    private final int[] unindexed;
+
+    private RuleIndex(String[] hashFields, Map<Object, int[]>[] hashBuckets, PatternField[] patternFields,
+            String[] rangeFields, IntervalTree[] rangeTrees, int[] unindexed) {
+        this.hashFields = hashFields;
+        this.hashBuckets = hashBuckets;
+        this.patternFields = patternFields;
+        this.rangeFields = rangeFields;
+        this.rangeTrees = rangeTrees;
+        this.unindexed = unindexed;
+    }
+
+    /**
+     * Build an index, or return null if the rule set is too small or has
+     * nothing worth indexing
+     */
+    @SuppressWarnings("unchecked")
+    static RuleIndex build(CompiledRule[] rules) {
+        if (rules.length < MIN_RULES) {
+            return null;
+        }
+
+        // How many rules could be filed under each field, to prefer shared fields
+        Map<String, Integer> hashUsage = new HashMap<>();
+        Map<String, Integer> patternUsage = new HashMap<>();
+        Map<String, Integer> rangeUsage = new HashMap<>();
+        for (CompiledRule rule : rules) {
+            for (ConditionNode condition : conjuncts(rule)) {
+                if (isHashable(condition)) {
+                    hashUsage.merge(((ConditionNodes.FieldCondition) condition).getField(), 1, Integer::sum);
+                } else if (isPattern(condition)) {
+                    patternUsage.merge(((ConditionNodes.StringMatch) condition).getField(), 1, Integer::sum);
+                } else if (condition instanceof ConditionNodes.NumericComparison) {
+                    rangeUsage.merge(((ConditionNodes.NumericComparison) condition).getField(), 1, Integer::sum);
+                }
+            }
+        }
+
+        Map<String, Map<Object, List<Integer>>> buckets = new LinkedHashMap<>();
+        Map<String, List<PatternEntry>> patterns = new LinkedHashMap<>();
+        Map<String, List<IntervalTree.Interval>> intervals = new LinkedHashMap<>();
+        List<Integer> unindexed = new ArrayList<>();
+
+        for (int position = 0; position < rules.length; position++) {
+            CompiledRule rule = rules[position];
+            if (rule.getCondition() == ConditionNodes.ALWAYS_FALSE) {
+                continue; // can never match, never a candidate
+            }
+            List<ConditionNode> conjuncts = conjuncts(rule);
+
+            ConditionNodes.FieldCondition hashCondition = null;
+            ConditionNodes.StringMatch patternCondition = null;
+            String rangeField = null;
+            for (ConditionNode condition : conjuncts) {
+                if (isHashable(condition)) {
+                    ConditionNodes.FieldCondition fieldCondition = (ConditionNodes.FieldCondition) condition;
+                    if (hashCondition == null || hashUsage.get(fieldCondition.getField()) > hashUsage.get(hashCondition.getField())) {
+                        hashCondition = fieldCondition;
+                    }
+                } else if (isPattern(condition)) {
+                    ConditionNodes.StringMatch match = (ConditionNodes.StringMatch) condition;
+                    if (patternCondition == null
+                            || patternUsage.get(match.getField()) > patternUsage.get(patternCondition.getField())) {
+                        patternCondition = match;
+                    }
+                } else if (condition instanceof ConditionNodes.NumericComparison) {
+                    String field = ((ConditionNodes.NumericComparison) condition).getField();
+                    if (rangeField == null || rangeUsage.get(field) > rangeUsage.get(rangeField)) {
+                        rangeField = field;
+                    }
+                }
+            }
+
+            if (hashCondition != null) {
+                Map<Object, List<Integer>> fieldBuckets = buckets.computeIfAbsent(hashCondition.getField(), f -> new HashMap<>());
+                for (Object key : keysOf(hashCondition)) {
+                    fieldBuckets.computeIfAbsent(key, k -> new ArrayList<>()).add(position);
+                }
+            } else if (patternCondition != null) {
+                patterns.computeIfAbsent(patternCondition.getField(), f -> new ArrayList<>())
+                        .add(new PatternEntry(position, patternCondition));
+            } else if (rangeField != null) {
+                IntervalTree.Interval interval = new IntervalTree.Interval(position);
+                for (ConditionNode condition : conjuncts) {
+                    if (condition instanceof ConditionNodes.NumericComparison
+                            && rangeField.equals(((ConditionNodes.NumericComparison) condition).getField())) {
+                        restrict(interval, (ConditionNodes.NumericComparison) condition);
+                    }
+                }
+                intervals.computeIfAbsent(rangeField, f -> new ArrayList<>()).add(interval);
+            } else {
+                unindexed.add(position);
+            }
+        }
+
+        List<PatternField> patternFields = new ArrayList<>();
+        patterns.forEach((field, entries) -> {
+            PatternField patternField = PatternField.build(field, entries);
+            if (patternField != null) {
+                patternFields.add(patternField);
+            } else {
+                // Too many distinct pattern chars for one automaton
+                entries.forEach(entry -> unindexed.add(entry.position));
+            }
+        });
+        Collections.sort(unindexed);
+
+        if (unindexed.size() == rules.length) {
+            return null;
+        }
+
+        String[] hashFields = buckets.keySet().toArray(new String[0]);
+        @SuppressWarnings("unchecked")
+        Map<Object, int[]>[] hashBuckets = (Map<Object, int[]>[]) new Map<?, ?>[hashFields.length];
+        for (int i = 0; i < hashFields.length; i++) {
+            Map<Object, int[]> fieldBuckets = new HashMap<>();
+            buckets.get(hashFields[i]).forEach((key, positions) -> fieldBuckets.put(key, toArray(positions)));
+            hashBuckets[i] = fieldBuckets;
+        }
+
+        String[] rangeFields = intervals.keySet().toArray(new String[0]);
+        IntervalTree[] rangeTrees = new IntervalTree[rangeFields.length];
+        for (int i = 0; i < rangeFields.length; i++) {
+            rangeTrees[i] = new IntervalTree(intervals.get(rangeFields[i]));
+        }
+
+        return new RuleIndex(hashFields, hashBuckets, patternFields.toArray(new PatternField[0]),
+                rangeFields, rangeTrees, toArray(unindexed));
+    }
+
+    /**
+     * Candidate positions for an input, as sorted lists to be merged by the caller.
+     * The returned cursor is reused across calls on the same thread.
+     */
+    Candidates candidates(Map<String, Object> data, Candidates candidates) {
+        candidates.reset();
+        for (int i = 0; i < hashFields.length; i++) {
+            int[] bucket = hashBuckets[i].get(data.get(hashFields[i]));
+            if (bucket != null) {
+                candidates.add(bucket, bucket.length);
+            }
+        }
+        for (PatternField patternField : patternFields) {
+            Object value = data.get(patternField.field);
+            if (value != null) {
+                candidates.addPatterns(patternField, value.toString());
+            }
+        }
+        for (int i = 0; i < rangeFields.length; i++) {
+            Double value = ConditionNodes.toNumber(data.get(rangeFields[i]));
+            if (value != null) {
+                candidates.addRange(rangeTrees[i], value);
+            }
+        }
+        candidates.add(unindexed, unindexed.length);
+        return candidates;
+    }
+
+    private static List<ConditionNode> conjuncts(CompiledRule rule) {
+        ConditionNode condition = rule.getCondition();
+        if (condition instanceof ConditionNodes.Group) {
+            ConditionNodes.Group group = (ConditionNodes.Group) condition;
+            ConditionNode[] children = group.getChildren();
+            if (group.isAnd() || children.length == 1) {
+                return Arrays.asList(children);
+            }
+            return List.of();
+        }
+        return List.of(condition);
+    }
+
+    private static boolean isHashable(ConditionNode condition) {
+        return (condition instanceof ConditionNodes.Equality
+                && ((ConditionNodes.Equality) condition).getOperator() == ConditionOperator.EQUALS)
+                || (condition instanceof ConditionNodes.SetMembership
+                && ((ConditionNodes.SetMembership) condition).getOperator() == ConditionOperator.IN);
+    }
+
+    private static boolean isPattern(ConditionNode condition) {
+        // An empty pattern matches every string, so it would not filter anything
+        return condition instanceof ConditionNodes.StringMatch
+                && !((ConditionNodes.StringMatch) condition).getValue().isEmpty();
+    }
+
+    private static Iterable<?> keysOf(ConditionNodes.FieldCondition condition) {
+        if (condition instanceof ConditionNodes.Equality) {
+            return Collections.singletonList(((ConditionNodes.Equality) condition).getValue());
+        }
+        return ((ConditionNodes.SetMembership) condition).getValues();
+    }
+
+    private static void restrict(IntervalTree.Interval interval, ConditionNodes.NumericComparison condition) {
+        switch (condition.getOperator()) {
+            case GREATER_THAN:
+                interval.restrictLow(condition.getValue(), false);
+                break;
+            case GREATER_THAN_OR_EQUAL:
+                interval.restrictLow(condition.getValue(), true);
+                break;
+            case LESS_THAN:
+                interval.restrictHigh(condition.getValue(), false);
+                break;
+            default:
+                interval.restrictHigh(condition.getValue(), true);
+        }
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+        if (positions.isEmpty()) {
+            return EMPTY;
+        }
+        int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The patterns of one field's contains/startsWith/endsWith conditions, with
+     * the positions of the rules filed under each, by operator
+     */
+    static final class PatternField {
+
+        final String field;
+        final AhoCorasick automaton;
+        final int[][] containing;
+        final int[][] starting;
+        final int[][] ending;
+
+        private PatternField(String field, AhoCorasick automaton, int[][] containing, int[][] starting,
+                int[][] ending) {
+            this.field = field;
+            this.automaton = automaton;
+            this.containing = containing;
+            this.starting = starting;
+            this.ending = ending;
+        }
+
+        static PatternField build(String field, List<PatternEntry> entries) {
+            Map<String, Integer> ids = new LinkedHashMap<>();
+            for (PatternEntry entry : entries) {
+                ids.putIfAbsent(entry.condition.getValue(), ids.size());
+            }
+            AhoCorasick automaton = AhoCorasick.build(new ArrayList<>(ids.keySet()));
+            if (automaton == null) {
+                return null;
+            }
+
+            List<List<Integer>> containing = new ArrayList<>();
+            List<List<Integer>> starting = new ArrayList<>();
+            List<List<Integer>> ending = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                containing.add(new ArrayList<>());
+                starting.add(new ArrayList<>());
+                ending.add(new ArrayList<>());
+            }
+            // Entries are in position order, so every list comes out sorted
+            for (PatternEntry entry : entries) {
+                int id = ids.get(entry.condition.getValue());
+                switch (entry.condition.getOperator()) {
+                    case CONTAINS:
+                        containing.get(id).add(entry.position);
+                        break;
+                    case STARTS_WITH:
+                        starting.get(id).add(entry.position);
+                        break;
+                    default:
+                        ending.get(id).add(entry.position);
+                }
+            }
+            return new PatternField(field, automaton, toArrays(containing), toArrays(starting), toArrays(ending));
+        }
+
+        private static int[][] toArrays(List<List<Integer>> lists) {
+            int[][] arrays = new int[lists.size()][];
+            for (int i = 0; i < arrays.length; i++) {
+                arrays[i] = toArray(lists.get(i));
+            }
+            return arrays;
+        }
+    }
+
+    private static final class PatternEntry {
+
+        final int position;
+        final ConditionNodes.StringMatch condition;
+
+        PatternEntry(int position, ConditionNodes.StringMatch condition) {
+            this.position = position;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * K-way merge over sorted candidate lists, yielding each position once in
+     * ascending order. Holds reusable buffers, so one instance per thread.
+     */
+    static final class Candidates {
+
+        private int[][] lists = new int[4][];
+        private int[] lengths = new int[4];
+        private int[] cursors = new int[4];
+        private int count;
+
+        private int[][] buffers = new int[2][];
+        private int bufferCount;
+        private final int[] stabCount = new int[1];
+
+        // Patterns already seen in the current scan: seen[pattern] == scan
+        private int[] seen = new int[0];
+        private int scan;
+
+        void reset() {
+            count = 0;
+            bufferCount = 0;
+        }
+
+        void add(int[] list, int length) {
+            if (length == 0) {
+                return;
+            }
+            if (count == lists.length) {
+                lists = Arrays.copyOf(lists, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                cursors = Arrays.copyOf(cursors, count * 2);
+            }
+            lists[count] = list;
+            lengths[count] = length;
+            cursors[count] = 0;
+            count++;
+        }
+
+        void addRange(IntervalTree tree, double value) {
+            int[] buffer = tree.stab(value, buffer(), stabCount);
+            buffers[bufferCount++] = buffer;
+            Arrays.sort(buffer, 0, stabCount[0]);
+            add(buffer, stabCount[0]);
+        }
+
+        /**
+         * One pass of the field's automaton over {@code text}, collecting the
+         * rules filed under every pattern found into a single sorted list
+         */
+        void addPatterns(PatternField field, String text) {
+            AhoCorasick automaton = field.automaton;
+            if (seen.length < automaton.patternCount()) {
+                seen = new int[automaton.patternCount()];
+                scan = 0;
+            }
+            if (++scan == 0) {
+                Arrays.fill(seen, 0);
+                scan = 1;
+            }
+
+            int[] buffer = buffer();
+            int size = 0;
+            int last = text.length() - 1;
+            int state = 0;
+            for (int i = 0; i <= last; i++) {
+                state = automaton.next(state, text.charAt(i));
+                for (int pattern : automaton.matches(state)) {
+                    // Each list is added at most once: a pattern can start the
+                    // text or end it only once, and contains is deduplicated
+                    if (seen[pattern] != scan) {
+                        seen[pattern] = scan;
+                        buffer = append(buffer, size, field.containing[pattern]);
+                        size += field.containing[pattern].length;
+                    }
+                    if (i == automaton.length(pattern) - 1) {
+                        buffer = append(buffer, size, field.starting[pattern]);
+                        size += field.starting[pattern].length;
+                    }
+                    if (i == last) {
+                        buffer = append(buffer, size, field.ending[pattern]);
+                        size += field.ending[pattern].length;
+                    }
+                }
+            }
+            buffers[bufferCount++] = buffer;
+            Arrays.sort(buffer, 0, size);
+            add(buffer, size);
+        }
+
+        private int[] buffer() {
+            if (bufferCount == buffers.length) {
+                buffers = Arrays.copyOf(buffers, bufferCount * 2);
+            }
+            int[] buffer = buffers[bufferCount];
+            return buffer != null ? buffer : new int[16];
+        }
+
+        private static int[] append(int[] buffer, int size, int[] positions) {
+            if (positions.length == 0) {
+                return buffer;
+            }
+            if (size + positions.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + positions.length));
+            }
+            System.arraycopy(positions, 0, buffer, size, positions.length);
+            return buffer;
+        }
+
+        /**
+         * Next candidate position in ascending order, or -1 when exhausted
+         */
+        int next() {
+            int best = -1;
+            int bestList = -1;
+            for (int i = 0; i < count; i++) {
+                if (cursors[i] < lengths[i]) {
+                    int position = lists[i][cursors[i]];
+                    if (best < 0 || position < best) {
+                        best = position;
+                        bestList = i;
+                    }
+                }
+            }
+            if (bestList >= 0) {
+                cursors[bestList]++;
+            }
+            return best;
+        }
+
+        /**
+         * Drop references to index arrays so a retired rule set can be collected
+         */
+        void release() {
+            Arrays.fill(lists, 0, count, null);
+            count = 0;
+        }
+    }
+}
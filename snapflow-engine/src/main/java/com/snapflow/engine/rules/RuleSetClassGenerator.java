@@ -0,0 +1,455 @@
+package com.snapflow.engine.rules;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a {@link RuleSetMatcher} class for one compiled rule set.
+ *
+ * Each rule becomes a method with its field reads, comparisons and AND/OR
+ * short-circuits written out as straight-line bytecode, so there is no
+ * virtual dispatch per condition and numeric comparisons run on primitive
+ * doubles. Constants the bytecode cannot hold inline (regex patterns, value
+ * sets, non-string equality values) are final fields of the generated class.
+ * Rules are grouped into methods of {@link #CHUNK} rules so every method stays
+ * well under the JIT's huge-method limit.
+ *
+ * The class is defined as a hidden class in this package: it is not
+ * discoverable by name and is unloaded once the plan referencing it is gone.
+ */
+public final class RuleSetClassGenerator {
+
+    static final int CHUNK_SHIFT = 7;
+    static final int CHUNK = 1 << CHUNK_SHIFT;
+
+    private static final String CLASS_NAME = Type.getInternalName(RuleSetClassGenerator.class)
+            .replace("RuleSetClassGenerator", "GeneratedRuleSetMatcher");
+    private static final String MAP = Type.getInternalName(Map.class);
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String RULE_DESC = "(L" + MAP + ";)Z";
+    private static final String CHUNK_FIRST_DESC = "(L" + MAP + ";)I";
+    private static final String CHUNK_MATCHES_DESC = "(IL" + MAP + ";)Z";
+
+    private RuleSetClassGenerator() {
+    }
+
+    /**
+     * Generate and load a matcher for the rule set. Throws if a condition
+     * type is not supported or the class cannot be defined; the caller keeps
+     * the interpreted plan in that case.
+     */
+    public static RuleSetMatcher generate(CompiledRuleSet ruleSet) {
+        List<CompiledRule> rules = ruleSet.getRules();
+        List<Object> constants = new ArrayList<>();
+        byte[] bytes = new Generator(rules, constants).generate();
+        try {
+            Class<?> matcherClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (RuleSetMatcher) matcherClass.getDeclaredConstructor(Object[].class)
+                    .newInstance((Object) constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load generated matcher for rule set " + ruleSet.getRuleSetId(), e);
+        }
+    }
+
+    private static final class Generator {
+
+        private final List<CompiledRule> rules;
+        private final List<Object> constants;
+        private final List<String> constantTypes = new ArrayList<>();
+        private final ClassWriter cw;
+        private int nextLocal;
+
+        Generator(List<CompiledRule> rules, List<Object> constants) {
+            this.rules = rules;
+            this.constants = constants;
+            this.cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+                @Override
+                protected String getCommonSuperClass(String type1, String type2) {
+                    // Merged locals are only ever used as Object; avoids loading classes
+                    return OBJECT;
+                }
+            };
+        }
+
+        byte[] generate() {
+            cw.visit(V17, ACC_FINAL | ACC_SUPER, CLASS_NAME, null, OBJECT,
+                    new String[] { Type.getInternalName(RuleSetMatcher.class) });
+
+            int chunks = (rules.size() + CHUNK - 1) / CHUNK;
+            for (int i = 0; i < rules.size(); i++) {
+                generateRule(i, rules.get(i).getCondition());
+            }
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                generateChunkFirstMatch(chunk);
+                generateChunkMatches(chunk);
+            }
+            generateFirstMatch(chunks);
+            generateMatches(chunks);
+            // Last: the rule methods above register the constant fields
+            generateFieldsAndConstructor();
+
+            cw.visitEnd();
+            return cw.toByteArray();
+        }
+
+        private void generateFieldsAndConstructor() {
+            for (int i = 0; i < constantTypes.size(); i++) {
+                cw.visitField(ACC_PRIVATE | ACC_FINAL, "c" + i, "L" + constantTypes.get(i) + ";", null, null).visitEnd();
+            }
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([L" + OBJECT + ";)V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+            for (int i = 0; i < constantTypes.size(); i++) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitLdcInsn(i);
+                mv.visitInsn(AALOAD);
+                mv.visitTypeInsn(CHECKCAST, constantTypes.get(i));
+                mv.visitFieldInsn(PUTFIELD, CLASS_NAME, "c" + i, "L" + constantTypes.get(i) + ";");
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /** int firstMatch(Map data): try each chunk in order */
+        private void generateFirstMatch(int chunks) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "firstMatch", CHUNK_FIRST_DESC, null, null);
+            mv.visitCode();
+            Label found = new Label();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKESPECIAL, CLASS_NAME, "first" + chunk, CHUNK_FIRST_DESC, false);
+                mv.visitVarInsn(ISTORE, 2);
+                mv.visitVarInsn(ILOAD, 2);
+                mv.visitJumpInsn(IFGE, found);
+            }
+            mv.visitInsn(ICONST_M1);
+            mv.visitInsn(IRETURN);
+            if (chunks > 0) {
+                mv.visitLabel(found);
+                mv.visitVarInsn(ILOAD, 2);
+                mv.visitInsn(IRETURN);
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /** boolean matches(int position, Map data): dispatch to the position's chunk */
+        private void generateMatches(int chunks) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "matches", CHUNK_MATCHES_DESC, null, null);
+            mv.visitCode();
+            Label outOfRange = new Label();
+            if (chunks > 0) {
+                Label[] targets = new Label[chunks];
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    targets[chunk] = new Label();
+                }
+                mv.visitVarInsn(ILOAD, 1);
+                mv.visitLdcInsn(CHUNK_SHIFT);
+                mv.visitInsn(IUSHR);
+                mv.visitTableSwitchInsn(0, chunks - 1, outOfRange, targets);
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    mv.visitLabel(targets[chunk]);
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ILOAD, 1);
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitMethodInsn(INVOKESPECIAL, CLASS_NAME, "matches" + chunk, CHUNK_MATCHES_DESC, false);
+                    mv.visitInsn(IRETURN);
+                }
+            }
+            mv.visitLabel(outOfRange);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /** int first<chunk>(Map data): position of the first matching rule in the chunk, or -1 */
+        private void generateChunkFirstMatch(int chunk) {
+            MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "first" + chunk, CHUNK_FIRST_DESC, null, null);
+            mv.visitCode();
+            int end = Math.min(rules.size(), (chunk + 1) * CHUNK);
+            for (int position = chunk * CHUNK; position < end; position++) {
+                if (rules.get(position).getCondition() == ConditionNodes.ALWAYS_FALSE) {
+                    continue;
+                }
+                Label next = new Label();
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKESPECIAL, CLASS_NAME, "rule" + position, RULE_DESC, false);
+                mv.visitJumpInsn(IFEQ, next);
+                mv.visitLdcInsn(position);
+                mv.visitInsn(IRETURN);
+                mv.visitLabel(next);
+            }
+            mv.visitInsn(ICONST_M1);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /** boolean matches<chunk>(int position, Map data) */
+        private void generateChunkMatches(int chunk) {
+            MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "matches" + chunk, CHUNK_MATCHES_DESC, null, null);
+            mv.visitCode();
+            int start = chunk * CHUNK;
+            int end = Math.min(rules.size(), start + CHUNK);
+            Label outOfRange = new Label();
+            Label[] targets = new Label[end - start];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new Label();
+            }
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitTableSwitchInsn(start, end - 1, outOfRange, targets);
+            for (int i = 0; i < targets.length; i++) {
+                mv.visitLabel(targets[i]);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitMethodInsn(INVOKESPECIAL, CLASS_NAME, "rule" + (start + i), RULE_DESC, false);
+                mv.visitInsn(IRETURN);
+            }
+            mv.visitLabel(outOfRange);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /** boolean rule<position>(Map data) */
+        private void generateRule(int position, ConditionNode condition) {
+            MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "rule" + position, RULE_DESC, null, null);
+            mv.visitCode();
+            nextLocal = 2;
+            Label fail = new Label();
+            condition(mv, condition, fail);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IRETURN);
+            mv.visitLabel(fail);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        /**
+         * Emit a test that falls through when the condition holds and jumps
+         * to {@code fail} when it does not
+         */
+        private void condition(MethodVisitor mv, ConditionNode node, Label fail) {
+            if (node instanceof ConditionNodes.Constant) {
+                if (!((ConditionNodes.Constant) node).getResult()) {
+                    mv.visitJumpInsn(GOTO, fail);
+                }
+            } else if (node instanceof ConditionNodes.Group) {
+                group(mv, (ConditionNodes.Group) node, fail);
+            } else if (node instanceof ConditionNodes.FieldCondition) {
+                fieldCondition(mv, (ConditionNodes.FieldCondition) node, fail);
+            } else {
+                throw new UnsupportedOperationException("No bytecode for condition " + node.getClass().getName());
+            }
+        }
+
+        private void group(MethodVisitor mv, ConditionNodes.Group group, Label fail) {
+            // Bake in the order adaptive reordering has settled on so far
+            ConditionNode[] children = group.getOrderedChildren();
+            if (group.isAnd()) {
+                for (ConditionNode child : children) {
+                    condition(mv, child, fail);
+                }
+                return;
+            }
+            if (children.length == 0) {
+                mv.visitJumpInsn(GOTO, fail);
+                return;
+            }
+            Label pass = new Label();
+            for (int i = 0; i < children.length - 1; i++) {
+                Label next = new Label();
+                condition(mv, children[i], next);
+                mv.visitJumpInsn(GOTO, pass);
+                mv.visitLabel(next);
+            }
+            condition(mv, children[children.length - 1], fail);
+            mv.visitLabel(pass);
+        }
+
+        private void fieldCondition(MethodVisitor mv, ConditionNodes.FieldCondition condition, Label fail) {
+            // Object value = data.get(field)
+            int value = nextLocal++;
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitLdcInsn(condition.getField());
+            mv.visitMethodInsn(INVOKEINTERFACE, MAP, "get", "(L" + OBJECT + ";)L" + OBJECT + ";", true);
+            mv.visitVarInsn(ASTORE, value);
+
+            if (condition instanceof ConditionNodes.Equality) {
+                equality(mv, (ConditionNodes.Equality) condition, value, fail);
+            } else if (condition instanceof ConditionNodes.NumericComparison) {
+                numericComparison(mv, (ConditionNodes.NumericComparison) condition, value, fail);
+            } else if (condition instanceof ConditionNodes.StringMatch) {
+                stringMatch(mv, (ConditionNodes.StringMatch) condition, value, fail);
+            } else if (condition instanceof ConditionNodes.RegexMatch) {
+                mv.visitVarInsn(ALOAD, value);
+                mv.visitJumpInsn(IFNULL, fail);
+                loadConstant(mv, ((ConditionNodes.RegexMatch) condition).getPattern(), Pattern.class);
+                loadString(mv, value);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Pattern.class), "matcher",
+                        "(Ljava/lang/CharSequence;)L" + Type.getInternalName(Matcher.class) + ";", false);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Matcher.class), "matches", "()Z", false);
+                mv.visitJumpInsn(IFEQ, fail);
+            } else if (condition instanceof ConditionNodes.SetMembership) {
+                loadConstant(mv, ((ConditionNodes.SetMembership) condition).getValues(), Set.class);
+                mv.visitVarInsn(ALOAD, value);
+                mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Set.class), "contains",
+                        "(L" + OBJECT + ";)Z", true);
+                mv.visitJumpInsn(condition.getOperator() == ConditionOperator.NOT_IN ? IFNE : IFEQ, fail);
+            } else if (condition instanceof ConditionNodes.UnaryCheck) {
+                unaryCheck(mv, condition.getOperator(), value, fail);
+            } else if (condition instanceof ConditionNodes.TableMembership
+                    || condition instanceof ConditionNodes.TableLookup) {
+                // The table search dominates, so call the node rather than inlining it
+                loadConstant(mv, condition, ConditionNodes.FieldCondition.class);
+                mv.visitVarInsn(ALOAD, value);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ConditionNodes.FieldCondition.class),
+                        "testValue", "(L" + OBJECT + ";)Z", false);
+                mv.visitJumpInsn(IFEQ, fail);
+            } else {
+                throw new UnsupportedOperationException("No bytecode for condition " + condition.getClass().getName());
+            }
+        }
+
+        private void equality(MethodVisitor mv, ConditionNodes.Equality condition, int value, Label fail) {
+            boolean negate = condition.getOperator() == ConditionOperator.NOT_EQUALS;
+            Object expected = condition.getValue();
+            mv.visitVarInsn(ALOAD, value);
+            if (expected == null) {
+                mv.visitJumpInsn(negate ? IFNULL : IFNONNULL, fail);
+                return;
+            }
+            if (expected instanceof String) {
+                mv.visitLdcInsn(expected);
+            } else {
+                loadConstant(mv, expected, Object.class);
+            }
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Objects.class), "equals",
+                    "(L" + OBJECT + ";L" + OBJECT + ";)Z", false);
+            mv.visitJumpInsn(negate ? IFNE : IFEQ, fail);
+        }
+
+        private void numericComparison(MethodVisitor mv, ConditionNodes.NumericComparison condition,
+                int value, Label fail) {
+            String number = Type.getInternalName(Number.class);
+            String boxed = Type.getInternalName(Double.class);
+            Label slow = new Label();
+            Label compare = new Label();
+
+            // Numbers unbox directly; anything else goes through the interpreter's parsing
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitTypeInsn(INSTANCEOF, number);
+            mv.visitJumpInsn(IFEQ, slow);
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitTypeInsn(CHECKCAST, number);
+            mv.visitMethodInsn(INVOKEVIRTUAL, number, "doubleValue", "()D", false);
+            mv.visitJumpInsn(GOTO, compare);
+
+            mv.visitLabel(slow);
+            int parsed = nextLocal++;
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(ConditionNodes.class), "toNumber",
+                    "(L" + OBJECT + ";)L" + boxed + ";", false);
+            mv.visitVarInsn(ASTORE, parsed);
+            mv.visitVarInsn(ALOAD, parsed);
+            mv.visitJumpInsn(IFNULL, fail);
+            mv.visitVarInsn(ALOAD, parsed);
+            mv.visitMethodInsn(INVOKEVIRTUAL, boxed, "doubleValue", "()D", false);
+
+            // Double.compare keeps the interpreter's NaN and -0.0 ordering
+            mv.visitLabel(compare);
+            mv.visitLdcInsn(condition.getValue());
+            mv.visitMethodInsn(INVOKESTATIC, boxed, "compare", "(DD)I", false);
+            switch (condition.getOperator()) {
+                case GREATER_THAN:
+                    mv.visitJumpInsn(IFLE, fail);
+                    break;
+                case GREATER_THAN_OR_EQUAL:
+                    mv.visitJumpInsn(IFLT, fail);
+                    break;
+                case LESS_THAN:
+                    mv.visitJumpInsn(IFGE, fail);
+                    break;
+                default:
+                    mv.visitJumpInsn(IFGT, fail);
+                    break;
+            }
+        }
+
+        private void stringMatch(MethodVisitor mv, ConditionNodes.StringMatch condition, int value, Label fail) {
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitJumpInsn(IFNULL, fail);
+            loadString(mv, value);
+            mv.visitLdcInsn(condition.getValue());
+            String string = Type.getInternalName(String.class);
+            switch (condition.getOperator()) {
+                case CONTAINS:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, string, "contains", "(Ljava/lang/CharSequence;)Z", false);
+                    break;
+                case STARTS_WITH:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, string, "startsWith", "(L" + string + ";)Z", false);
+                    break;
+                default:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, string, "endsWith", "(L" + string + ";)Z", false);
+                    break;
+            }
+            mv.visitJumpInsn(IFEQ, fail);
+        }
+
+        private void unaryCheck(MethodVisitor mv, ConditionOperator operator, int value, Label fail) {
+            mv.visitVarInsn(ALOAD, value);
+            switch (operator) {
+                case IS_NULL:
+                    mv.visitJumpInsn(IFNONNULL, fail);
+                    return;
+                case IS_NOT_NULL:
+                    mv.visitJumpInsn(IFNULL, fail);
+                    return;
+                default:
+                    // Boolean.TRUE.equals(value) / Boolean.FALSE.equals(value)
+                    String bool = Type.getInternalName(Boolean.class);
+                    mv.visitTypeInsn(INSTANCEOF, bool);
+                    mv.visitJumpInsn(IFEQ, fail);
+                    mv.visitVarInsn(ALOAD, value);
+                    mv.visitTypeInsn(CHECKCAST, bool);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, bool, "booleanValue", "()Z", false);
+                    mv.visitJumpInsn(operator == ConditionOperator.IS_TRUE ? IFEQ : IFNE, fail);
+            }
+        }
+
+        private void loadString(MethodVisitor mv, int value) {
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "toString", "()Ljava/lang/String;", false);
+        }
+
+        private void loadConstant(MethodVisitor mv, Object constant, Class<?> type) {
+            int index = constants.size();
+            constants.add(constant);
+            constantTypes.add(Type.getInternalName(type));
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, CLASS_NAME, "c" + index, Type.getDescriptor(type));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.snapflow.engine.rules;
+
+import java.util.Map;
+
+/**
+ * The conditions of one rule set compiled to a dedicated JVM class by
+ * {@link RuleSetClassGenerator}. Positions are the rules' positions in the
+ * rule set's priority order. Implementations may throw where the interpreted
+ * conditions would have caught and logged; callers then fall back to
+ * the interpreted plan.
+ */
+public interface RuleSetMatcher {
+
+    /**
+     * Position of the first rule whose conditions match, or -1
+     */
+    int firstMatch(Map<String, Object> data);
+
+    /**
+     * Whether the conditions of the rule at {@code position} match
+     */
+    boolean matches(int position, Map<String, Object> data);
+}
@@ -0,0 +1,81 @@
+package com.snapflow.engine.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic inputs for warming up a compiled rule set: one input per rule
+ * that tries to satisfy its conditions, derived from the rule's constants,
+ * plus an empty input that exercises the no-match path.
+ * Regex conditions are left unsatisfied.
+ */
+public final class WarmupInputs {
+
+    private static final String UNMATCHED = "__warmup__";
+
+    private WarmupInputs() {
+    }
+
+    public static List<Map<String, Object>> forRuleSet(CompiledRuleSet ruleSet, int maxInputs) {
+        List<Map<String, Object>> inputs = new ArrayList<>();
+        inputs.add(new HashMap<>());
+        for (CompiledRule rule : ruleSet.getRules()) {
+            if (inputs.size() >= maxInputs) {
+                break;
+            }
+            Map<String, Object> input = new HashMap<>();
+            fill(rule.getCondition(), input);
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    private static void fill(ConditionNode condition, Map<String, Object> input) {
+        if (condition instanceof ConditionNodes.Group) {
+            for (ConditionNode child : ((ConditionNodes.Group) condition).getChildren()) {
+                fill(child, input);
+            }
+        } else if (condition instanceof ConditionNodes.FieldCondition) {
+            ConditionNodes.FieldCondition fieldCondition = (ConditionNodes.FieldCondition) condition;
+            if (!input.containsKey(fieldCondition.getField())) {
+                Object value = sampleValue(fieldCondition);
+                if (value != null) {
+                    input.put(fieldCondition.getField(), value);
+                }
+            }
+        }
+    }
+
+    private static Object sampleValue(ConditionNodes.FieldCondition condition) {
+        switch (condition.getOperator()) {
+            case EQUALS:
+                return ((ConditionNodes.Equality) condition).getValue();
+            case NOT_EQUALS:
+            case NOT_IN:
+                return UNMATCHED;
+            case GREATER_THAN:
+                return ((ConditionNodes.NumericComparison) condition).getValue() + 1;
+            case LESS_THAN:
+                return ((ConditionNodes.NumericComparison) condition).getValue() - 1;
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN_OR_EQUAL:
+                return ((ConditionNodes.NumericComparison) condition).getValue();
+            case CONTAINS:
+            case STARTS_WITH:
+            case ENDS_WITH:
+                return ((ConditionNodes.StringMatch) condition).getValue();
+            case IN:
+                return ((ConditionNodes.SetMembership) condition).getValues().stream().findFirst().orElse(null);
+            case IS_TRUE:
+                return Boolean.TRUE;
+            case IS_FALSE:
+                return Boolean.FALSE;
+            case IS_NOT_NULL:
+                return UNMATCHED;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.snapflow.engine.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates a stream of input records against one resolved rule-set snapshot.
+ *
+ * Records are read in chunks and each chunk is evaluated on a shared worker
+ * pool. At most {@code parallelism} chunks are in flight per request, and
+ * results are written back strictly in input order as soon as the oldest
+ * chunk completes, so memory stays bounded by parallelism x chunk size.
+ * A record that fails to parse or evaluate yields an error entry and does
+ * not affect its neighbours.
+ */
+@Service
+public class BatchEvaluationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchEvaluationService.class);
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final RulesEngineService rulesEngine;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final int maxParallelism;
+    private final int chunkSize;
+
+    public BatchEvaluationService(RulesEngineService rulesEngine, ObjectMapper objectMapper,
+            @Value("${snapflow.rules.batch.max-parallelism:0}") int maxParallelism,
+            @Value("${snapflow.rules.batch.chunk-size:256}") int chunkSize) {
+        this.rulesEngine = rulesEngine;
+        this.objectMapper = objectMapper;
+        this.maxParallelism = maxParallelism > 0 ? maxParallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = Math.max(1, chunkSize);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "rules-batch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Effective degree of parallelism for a request, capped by configuration
+     */
+    public int resolveParallelism(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return maxParallelism;
+        }
+        return Math.min(requested, maxParallelism);
+    }
+
+    /**
+     * Evaluate newline-delimited JSON records. Each line is parsed on its own,
+     * so a malformed line only produces an error for that record.
+     * Writes one NDJSON result line per input line.
+     */
+    public void evaluateNdjson(UUID ruleSetId, InputStream input, OutputStream output, int parallelism)
+            throws IOException {
+        CompiledRuleSet ruleSet = rulesEngine.loadRuleSet(ruleSetId);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        try (JsonGenerator generator = objectMapper.createGenerator(output)) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            ResultWriter writer = new ResultWriter(generator, parallelism);
+            try {
+                readNdjson(ruleSet, reader, writer);
+            } finally {
+                writer.cancelAll();
+            }
+            generator.writeRaw('\n');
+        }
+    }
+
+    private void readNdjson(CompiledRuleSet ruleSet, BufferedReader reader, ResultWriter writer) throws IOException {
+        List<Object> chunk = new ArrayList<>(chunkSize);
+        long index = 0;
+        long chunkStart = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            chunk.add(line);
+            index++;
+            if (chunk.size() == chunkSize) {
+                writer.submit(ruleSet, chunkStart, chunk);
+                chunk = new ArrayList<>(chunkSize);
+                chunkStart = index;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writer.submit(ruleSet, chunkStart, chunk);
+        }
+        writer.drain();
+    }
+
+    /**
+     * Evaluate a JSON array of records, streaming the array instead of
+     * binding it whole. Writes a JSON array of results.
+     */
+    public void evaluateJsonArray(UUID ruleSetId, InputStream input, OutputStream output, int parallelism)
+            throws IOException {
+        CompiledRuleSet ruleSet = rulesEngine.loadRuleSet(ruleSetId);
+
+        try (JsonParser parser = objectMapper.createParser(input);
+                JsonGenerator generator = objectMapper.createGenerator(output)) {
+            generator.writeStartArray();
+            ResultWriter writer = new ResultWriter(generator, parallelism);
+
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected a JSON array of input records");
+                }
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                long index = 0;
+                long chunkStart = 0;
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        chunk.add(parser.readValueAs(MAP_TYPE));
+                    } else {
+                        parser.skipChildren();
+                        chunk.add(new IllegalArgumentException("Input record is not a JSON object"));
+                    }
+                    index++;
+                    if (chunk.size() == chunkSize) {
+                        writer.submit(ruleSet, chunkStart, chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                        chunkStart = index;
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    writer.submit(ruleSet, chunkStart, chunk);
+                }
+                writer.drain();
+            } catch (JsonProcessingException e) {
+                // Malformed JSON: flush what we have and report where the stream broke
+                writer.drain();
+                logger.warn("Batch input for rule set {} is malformed: {}", ruleSetId, e.getOriginalMessage());
+                writeEntry(generator, new BatchResult(-1, null, "Malformed input: " + e.getOriginalMessage()));
+            } finally {
+                writer.cancelAll();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Evaluate one chunk. Entries are raw NDJSON lines, parsed maps, or an
+     * exception describing why the record could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    private List<BatchResult> evaluateChunk(CompiledRuleSet ruleSet, long firstIndex, List<Object> records) {
+        List<BatchResult> results = new ArrayList<>(records.size());
+        long index = firstIndex;
+        for (Object record : records) {
+            try {
+                if (record instanceof Exception) {
+                    throw (Exception) record;
+                }
+                Map<String, Object> inputData = record instanceof String
+                        ? objectMapper.readValue((String) record, MAP_TYPE)
+                        : (Map<String, Object>) record;
+                if (inputData == null) {
+                    throw new IllegalArgumentException("Input record is null");
+                }
+                results.add(new BatchResult(index, rulesEngine.evaluate(ruleSet, inputData, EvaluationContext.NONE), null));
+            } catch (Exception e) {
+                results.add(new BatchResult(index, null, e.getMessage()));
+            }
+            index++;
+        }
+        return results;
+    }
+
+    private static void writeEntry(JsonGenerator generator, BatchResult result) throws IOException {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("index", result.index);
+        if (result.error != null) {
+            entry.put("error", result.error);
+        } else {
+            entry.put("output", result.output);
+        }
+        generator.writeObject(entry);
+    }
+
+    private static final class BatchResult {
+
+        final long index;
+        final Map<String, Object> output;
+        final String error;
+
+        BatchResult(long index, Map<String, Object> output, String error) {
+            this.index = index;
+            this.output = output;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Keeps a bounded window of in-flight chunks and writes completed chunks in order
+     */
+    private final class ResultWriter {
+
+        private final JsonGenerator generator;
+        private final int window;
+        private final ArrayDeque<Future<List<BatchResult>>> inFlight = new ArrayDeque<>();
+
+        ResultWriter(JsonGenerator generator, int window) {
+            this.generator = generator;
+            this.window = window;
+        }
+
+        void submit(CompiledRuleSet ruleSet, long firstIndex, List<Object> records) throws IOException {
+            if (inFlight.size() >= window) {
+                writeOldest();
+            }
+            inFlight.addLast(executor.submit(() -> evaluateChunk(ruleSet, firstIndex, records)));
+        }
+
+        void drain() throws IOException {
+            while (!inFlight.isEmpty()) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException {
+            Future<List<BatchResult>> oldest = inFlight.removeFirst();
+            List<BatchResult> results;
+            try {
+                results = oldest.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new IOException("Batch evaluation interrupted", e);
+            } catch (ExecutionException e) {
+                cancelAll();
+                throw new IOException("Batch evaluation failed", e.getCause());
+            }
+            for (BatchResult result : results) {
+                writeEntry(generator, result);
+            }
+            generator.flush();
+        }
+
+        void cancelAll() {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+        }
+    }
+}
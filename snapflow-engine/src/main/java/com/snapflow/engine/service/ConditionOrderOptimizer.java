@@ -0,0 +1,152 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.ConditionNode;
+import com.snapflow.engine.rules.ConditionNodes;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically reorders the conditions inside AND/OR groups of every plan in
+ * memory, from the cost and pass-rate statistics the groups sample while
+ * evaluating (see {@link ConditionNodes.Group}). Only the order within a group
+ * changes; rules keep their priority order, and since conditions have no side
+ * effects the results stay the same.
+ */
+@Component
+public class ConditionOrderOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionOrderOptimizer.class);
+
+    private final RuleSetCache ruleSetCache;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final long minSamples;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong reorders = new AtomicLong();
+    private volatile long lastRunAt;
+
+    private ScheduledExecutorService scheduler;
+
+    public ConditionOrderOptimizer(RuleSetCache ruleSetCache,
+            @Value("${snapflow.rules.condition-order.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.condition-order.interval-ms:60000}") long intervalMs,
+            @Value("${snapflow.rules.condition-order.min-samples:256}") long minSamples) {
+        this.ruleSetCache = ruleSetCache;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.minSamples = minSamples;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Adaptive condition ordering is disabled");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rules-condition-order");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::safeOptimize, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Reorder every group with enough samples; returns the number of groups whose order changed
+     */
+    public int optimize() {
+        int changed = 0;
+        for (CompiledRuleSet ruleSet : ruleSetCache.plans()) {
+            for (CompiledRule rule : ruleSet.getRules()) {
+                changed += reorder(rule.getCondition());
+            }
+        }
+        runs.incrementAndGet();
+        reorders.addAndGet(changed);
+        lastRunAt = System.currentTimeMillis();
+        if (changed > 0) {
+            logger.debug("Reordered conditions in {} groups", changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Current condition order of each rule in the cached rule set, with the statistics behind it
+     */
+    public Map<String, Object> describe(UUID ruleSetId) {
+        CompiledRuleSet ruleSet = ruleSetCache.get(ruleSetId);
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (CompiledRule rule : ruleSet.getRules()) {
+            if (!(rule.getCondition() instanceof ConditionNodes.Group)) {
+                continue;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("position", rule.getPosition());
+            entry.put("ruleId", rule.getId());
+            entry.put("name", rule.getName());
+            entry.put("conditions", ((ConditionNodes.Group) rule.getCondition()).describe());
+            rules.add(entry);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ruleSetId", ruleSetId);
+        result.put("snapshotVersion", ruleSet.getSnapshotVersion());
+        result.put("rules", rules);
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("intervalMs", intervalMs);
+        stats.put("minSamples", minSamples);
+        stats.put("runs", runs.get());
+        stats.put("groupsReordered", reorders.get());
+        stats.put("lastRunAt", lastRunAt);
+        return stats;
+    }
+
+    private void safeOptimize() {
+        try {
+            optimize();
+        } catch (RuntimeException e) {
+            logger.warn("Condition reordering failed", e);
+        }
+    }
+
+    private int reorder(ConditionNode condition) {
+        if (!(condition instanceof ConditionNodes.Group)) {
+            return 0;
+        }
+        ConditionNodes.Group group = (ConditionNodes.Group) condition;
+        int changed = group.reorder(minSamples) ? 1 : 0;
+        for (ConditionNode child : group.getChildren()) {
+            changed += reorder(child);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,44 @@
+package com.snapflow.engine.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal CSV parsing for the upload endpoints, one record per line
+ */
+final class CsvLines {
+
+    private CsvLines() {
+    }
+
+    /**
+     * Split a CSV line; double-quoted fields may contain commas and "" escapes
+     */
+    static List<String> split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        columns.add(current.toString().trim());
+        return columns;
+    }
+}
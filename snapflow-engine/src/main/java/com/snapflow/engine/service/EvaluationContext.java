@@ -0,0 +1,42 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.EvaluationStats;
+
+/**
+ * Where an evaluation comes from (process instance and node), plus optional
+ * statistics the caller wants filled in
+ */
+public final class EvaluationContext {
+
+    public static final EvaluationContext NONE = new EvaluationContext(null, null, null);
+
+    private final String processInstanceId;
+    private final String nodeId;
+    private final EvaluationStats stats;
+
+    public EvaluationContext(String processInstanceId, String nodeId, EvaluationStats stats) {
+        this.processInstanceId = processInstanceId;
+        this.nodeId = nodeId;
+        this.stats = stats;
+    }
+
+    public static EvaluationContext forProcess(String processInstanceId, String nodeId) {
+        return new EvaluationContext(processInstanceId, nodeId, null);
+    }
+
+    public static EvaluationContext withStats(EvaluationStats stats) {
+        return new EvaluationContext(null, null, stats);
+    }
+
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public EvaluationStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,143 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.RuleSetClassGenerator;
+import com.snapflow.engine.rules.RuleSetMatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second execution tier for hot rule sets.
+ *
+ * Every evaluation of a plan without an index bumps a counter on the plan
+ * (indexed plans test too few rules per evaluation to keep generated code
+ * hot, see {@link CompiledRuleSet}). When a plan reaches
+ * {@code threshold} evaluations, a background thread generates a dedicated
+ * class for it ({@link RuleSetClassGenerator}) and swaps it into the plan;
+ * evaluations keep running interpreted until then. If generation fails the
+ * plan simply stays interpreted. Reloading a rule set after a change builds a
+ * new plan, which starts counting again from zero.
+ */
+@Component
+public class HotRuleSetCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotRuleSetCompiler.class);
+
+    static final String GENERATION_TIMER = "snapflow.rules.codegen";
+    static final String SKIPPED_COUNTER = "snapflow.rules.codegen.skipped";
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int maxRules;
+    private final Timer generated;
+    private final Timer failed;
+    private final Counter skipped;
+    private final ExecutorService executor;
+
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile String lastFailure;
+
+    public HotRuleSetCompiler(MeterRegistry registry,
+            @Value("${snapflow.rules.codegen.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.codegen.threshold:10000}") int threshold,
+            @Value("${snapflow.rules.codegen.max-rules:4096}") int maxRules) {
+        this.enabled = enabled;
+        this.threshold = Math.max(1, threshold);
+        this.maxRules = maxRules;
+        this.generated = Timer.builder(GENERATION_TIMER)
+                .description("Time to generate and load a rule set class")
+                .tag("outcome", "success")
+                .register(registry);
+        this.failed = Timer.builder(GENERATION_TIMER)
+                .description("Time to generate and load a rule set class")
+                .tag("outcome", "failure")
+                .register(registry);
+        this.skipped = Counter.builder(SKIPPED_COUNTER)
+                .description("Hot rule sets left interpreted because they exceed max-rules")
+                .register(registry);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rules-codegen");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Count an evaluation of the plan and queue it for generation once it is hot
+     */
+    public void recordEvaluation(CompiledRuleSet ruleSet) {
+        if (!enabled || ruleSet.isIndexed() || !ruleSet.countEvaluation(threshold)) {
+            return;
+        }
+        if (ruleSet.size() > maxRules) {
+            skipped.increment();
+            logger.info("Rule set {} is hot but has {} rules (max {}), staying interpreted",
+                    ruleSet.getRuleSetId(), ruleSet.size(), maxRules);
+            return;
+        }
+        try {
+            executor.execute(() -> promote(ruleSet));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Shutting down, not generating rule set {}", ruleSet.getRuleSetId());
+        }
+    }
+
+    /**
+     * Generate and swap in a matcher for the plan right away.
+     * Returns false for indexed plans, which stay interpreted.
+     */
+    public boolean promote(CompiledRuleSet ruleSet) {
+        if (ruleSet.isIndexed()) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        try {
+            RuleSetMatcher matcher = RuleSetClassGenerator.generate(ruleSet);
+            long elapsedNanos = System.nanoTime() - startTime;
+            ruleSet.promote(matcher, elapsedNanos);
+            generated.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            promotions.incrementAndGet();
+            logger.info("Generated class for rule set {} (version {}, {} rules) in {}us",
+                    ruleSet.getRuleSetId(), ruleSet.getSnapshotVersion(), ruleSet.size(), elapsedNanos / 1000);
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            failed.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            failures.incrementAndGet();
+            lastFailure = ruleSet.getRuleSetId() + ": " + e;
+            logger.warn("Could not generate class for rule set {}, staying interpreted", ruleSet.getRuleSetId(), e);
+            return false;
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threshold", threshold);
+        stats.put("maxRules", maxRules);
+        stats.put("promotions", promotions.get());
+        stats.put("failures", failures.get());
+        stats.put("skipped", (long) skipped.count());
+        stats.put("lastFailure", lastFailure);
+        return stats;
+    }
+}
@@ -0,0 +1,203 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.LookupTable;
+import com.snapflow.engine.rules.LookupTableRef;
+import com.snapflow.engine.rules.LookupTableResolver;
+import com.snapflow.engine.rules.LookupTableWriter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Reference tables for the inTable/lookup rule operators.
+ *
+ * Each table is uploaded once as CSV and stored as a sorted
+ * {@link LookupTable} file in the lookup directory. At startup every file is
+ * memory-mapped, which takes milliseconds regardless of size and costs no
+ * heap for the rows; searches then read the mapped pages directly.
+ * Re-uploading a table swaps it under the same {@link LookupTableRef}, so
+ * compiled rules see the new rows on their next evaluation.
+ */
+@Service
+public class LookupTableService implements LookupTableResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LookupTableService.class);
+
+    static final String EXTENSION = ".sflt";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    private final Path directory;
+    private final Map<String, LookupTableRef> tables = new ConcurrentHashMap<>();
+
+    public LookupTableService(@Value("${snapflow.rules.lookup.directory:data/lookup-tables}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Map every table file in the lookup directory
+     */
+    @PostConstruct
+    public void loadAll() throws IOException {
+        Files.createDirectories(directory);
+        long startTime = System.nanoTime();
+        int loaded = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - EXTENSION.length());
+                try {
+                    resolve(name).set(LookupTable.open(file));
+                    loaded++;
+                } catch (IOException e) {
+                    logger.error("Could not open lookup table {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        logger.info("Mapped {} lookup table(s) from {} in {}ms", loaded, directory.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    @Override
+    public LookupTableRef resolve(String name) {
+        return tables.computeIfAbsent(name, LookupTableRef::new);
+    }
+
+    /**
+     * Create or replace a table from CSV rows: {@code key[,value]} for a key
+     * table, {@code low,high[,value]} for a range table. Rows that are
+     * already sorted by key are streamed straight to disk; otherwise they are
+     * sorted in memory first.
+     *
+     * @throws IllegalArgumentException for a bad name, malformed rows, duplicate keys or overlapping ranges
+     */
+    public synchronized Map<String, Object> upload(String name, InputStream csv, LookupTable.Kind kind,
+            LookupTable.KeyType keyType, boolean header, boolean sorted) throws IOException {
+        checkName(name);
+        long startTime = System.nanoTime();
+        Path target = directory.resolve(name + EXTENSION);
+
+        int keyColumns = kind == LookupTable.Kind.RANGES ? 2 : 1;
+        try (LookupTableWriter writer = new LookupTableWriter(target, kind, keyType, sorted);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if ((header && lineNumber == 1) || line.isBlank()) {
+                    continue;
+                }
+                List<String> columns = CsvLines.split(line);
+                if (columns.size() < keyColumns) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected " + keyColumns
+                            + " key column(s), got " + columns.size());
+                }
+                String value = columns.size() > keyColumns ? columns.get(keyColumns) : "";
+                try {
+                    if (kind == LookupTable.Kind.RANGES) {
+                        writer.addRange(columns.get(0), columns.get(1), value);
+                    } else {
+                        writer.add(columns.get(0), value);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+            writer.finish();
+        }
+
+        LookupTable table = LookupTable.open(target);
+        resolve(name).set(table);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.info("Loaded lookup table '{}': {} rows in {}ms", name, table.size(), elapsedMs);
+
+        Map<String, Object> result = describe(name, table);
+        result.put("loadMs", elapsedMs);
+        return result;
+    }
+
+    /**
+     * Remove a table; rules that reference it stop matching until it is uploaded again
+     */
+    public synchronized boolean delete(String name) throws IOException {
+        checkName(name);
+        LookupTableRef ref = tables.get(name);
+        boolean existed = ref != null && ref.get() != null;
+        if (ref != null) {
+            ref.set(null);
+        }
+        // The mapping stays valid for in-flight lookups after the file is unlinked
+        return Files.deleteIfExists(directory.resolve(name + EXTENSION)) || existed;
+    }
+
+    public Map<String, Object> describe(String name) {
+        LookupTableRef ref = tables.get(name);
+        LookupTable table = ref != null ? ref.get() : null;
+        return table != null ? describe(name, table) : null;
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        new TreeMap<>(tables).forEach((name, ref) -> {
+            LookupTable table = ref.get();
+            if (table != null) {
+                result.add(describe(name, table));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Look a single key up, for checking a table from the API
+     */
+    public Map<String, Object> lookup(String name, String key) {
+        LookupTableRef ref = tables.get(name);
+        LookupTable table = ref != null ? ref.get() : null;
+        if (table == null) {
+            return null;
+        }
+        String value = table.get(key);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("table", name);
+        result.put("key", key);
+        result.put("found", value != null);
+        result.put("value", value);
+        return result;
+    }
+
+    private static Map<String, Object> describe(String name, LookupTable table) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("kind", table.getKind().name().toLowerCase());
+        result.put("keyType", table.getKeyType().name().toLowerCase());
+        result.put("rows", table.size());
+        result.put("fileBytes", table.getFileSize());
+        return result;
+    }
+
+    private static void checkName(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Lookup table names may only contain letters, digits, '_' and '-'");
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.snapflow.engine.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records rule evaluations into the rule_executions audit table.
+ *
+ * Evaluating threads only push a record onto a bounded queue; a single
+ * background writer drains it and does JDBC batch inserts, serializing the
+ * input/output maps to JSON off the evaluation path. When the queue is full
+ * the record is dropped (policy "drop") or the caller waits up to
+ * {@code block-timeout-ms} before dropping it (policy "block").
+ *
+ * A record holds the input fields the rule set's conditions read and the
+ * variables the matched rule changed, not the whole process state.
+ */
+@Component
+public class RuleExecutionAuditor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleExecutionAuditor.class);
+
+    private static final String INSERT_SQL = "INSERT INTO rule_executions "
+            + "(rule_set_id, rule_id, workflow_instance_id, node_id, input_data, output_data, matched, execution_time_ms) "
+            + "VALUES (?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), ?, ?)";
+
+    private static final int[] INSERT_TYPES = {
+            Types.OTHER, Types.OTHER, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN, Types.NUMERIC };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final boolean blockWhenFull;
+    private final long blockTimeoutMs;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Record> queue;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public RuleExecutionAuditor(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            @Value("${snapflow.rules.audit.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.audit.sample-rate:1.0}") double sampleRate,
+            @Value("${snapflow.rules.audit.buffer-size:8192}") int bufferSize,
+            @Value("${snapflow.rules.audit.overflow-policy:drop}") String overflowPolicy,
+            @Value("${snapflow.rules.audit.block-timeout-ms:100}") long blockTimeoutMs,
+            @Value("${snapflow.rules.audit.batch-size:500}") int batchSize,
+            @Value("${snapflow.rules.audit.flush-interval-ms:1000}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.blockWhenFull = "block".equalsIgnoreCase(overflowPolicy);
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Rule execution auditing is disabled");
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "rules-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Whether this evaluation should be audited, according to the sample rate.
+     * Lets callers skip building a record at all.
+     */
+    public boolean shouldSample() {
+        return enabled && (sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Queue an evaluation for writing. The maps must not be modified afterwards.
+     */
+    public void record(UUID ruleSetId, UUID ruleId, EvaluationContext context,
+            Map<String, Object> inputData, Map<String, Object> outputData, long elapsedNanos) {
+        Record record = new Record(ruleSetId, ruleId, context.getProcessInstanceId(), context.getNodeId(),
+                inputData, outputData, elapsedNanos);
+
+        boolean accepted = queue.offer(record);
+        if (!accepted && blockWhenFull) {
+            try {
+                accepted = queue.offer(record, blockTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (accepted) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sampleRate", sampleRate);
+        stats.put("overflowPolicy", blockWhenFull ? "block" : "drop");
+        stats.put("queued", queued.get());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        stats.put("pending", queue.size());
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        return stats;
+    }
+
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Record first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                // Shutdown requested: write out whatever is left
+                queue.drainTo(batch);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Record> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Record record : batch) {
+            rows.add(new Object[] {
+                    record.ruleSetId,
+                    record.ruleId,
+                    record.processInstanceId,
+                    record.nodeId,
+                    toJson(record.inputData),
+                    toJson(record.outputData),
+                    record.ruleId != null,
+                    // Milliseconds to the microsecond; most evaluations take well under one
+                    BigDecimal.valueOf(TimeUnit.NANOSECONDS.toMicros(record.elapsedNanos), 3) });
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, INSERT_TYPES);
+            written.addAndGet(rows.size());
+        } catch (RuntimeException e) {
+            logger.warn("Batch write of {} rule execution records failed, retrying one by one: {}",
+                    rows.size(), e.getMessage());
+            writeIndividually(rows);
+        }
+    }
+
+    /**
+     * Isolate bad rows (e.g. a rule set deleted since it was evaluated) so they
+     * do not take the rest of the batch down with them
+     */
+    private void writeIndividually(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, row, INSERT_TYPES);
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.debug("Failed to write rule execution record: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String toJson(Map<String, Object> data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            return "{\"_serializationError\": " + quote(e.getOriginalMessage()) + "}";
+        }
+    }
+
+    private String quote(String text) {
+        try {
+            return objectMapper.writeValueAsString(text);
+        } catch (JsonProcessingException e) {
+            return "null";
+        }
+    }
+
+    private static final class Record {
+
+        final UUID ruleSetId;
+        final UUID ruleId;
+        final String processInstanceId;
+        final String nodeId;
+        final Map<String, Object> inputData;
+        final Map<String, Object> outputData;
+        final long elapsedNanos;
+
+        Record(UUID ruleSetId, UUID ruleId, String processInstanceId, String nodeId,
+                Map<String, Object> inputData, Map<String, Object> outputData, long elapsedNanos) {
+            this.ruleSetId = ruleSetId;
+            this.ruleId = ruleId;
+            this.processInstanceId = processInstanceId;
+            this.nodeId = nodeId;
+            this.inputData = inputData;
+            this.outputData = outputData;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+}
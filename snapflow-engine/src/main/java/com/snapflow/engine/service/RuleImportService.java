@@ -0,0 +1,255 @@
+package com.snapflow.engine.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.snapflow.engine.model.Rule;
+import com.snapflow.engine.rules.DecisionTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk import of a decision table (see {@link DecisionTable}) into a rule set.
+ *
+ * The upload is read row by row and never buffered whole: each row is turned
+ * into a rule and validated, and valid rules are written with JDBC batch
+ * inserts. The whole import is one transaction, so it either lands
+ * completely or not at all, and the rule set's cached plan is rebuilt once
+ * after the commit instead of once per rule.
+ *
+ * Invalid rows are reported with their row number. By default any invalid
+ * row rolls the import back (validation continues, so every error is
+ * reported in one go); with {@code skipInvalid} the valid rows are kept.
+ */
+@Service
+public class RuleImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleImportService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO rules "
+            + "(id, rule_set_id, name, description, priority, conditions, actions, enabled, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), ?, ?, ?)";
+
+    private static final int[] INSERT_TYPES = {
+            Types.OTHER, Types.OTHER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER,
+            Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN, Types.TIMESTAMP, Types.TIMESTAMP };
+
+    private static final String DELETE_SQL = "DELETE FROM rules WHERE rule_set_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final RuleSetCache ruleSetCache;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public RuleImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper, RuleSetCache ruleSetCache,
+            @Value("${snapflow.rules.import.batch-size:500}") int batchSize,
+            @Value("${snapflow.rules.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.ruleSetCache = ruleSetCache;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxReportedErrors = Math.max(0, maxReportedErrors);
+    }
+
+    /**
+     * Import a CSV decision table: a header row, then one rule per line
+     *
+     * @param replace delete the rule set's existing rules in the same transaction
+     * @throws IllegalArgumentException if the header is invalid
+     */
+    public Map<String, Object> importCsv(UUID ruleSetId, InputStream csv, boolean replace, boolean skipInvalid)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("Empty upload: expected a header row");
+        }
+        DecisionTable table = DecisionTable.parse(CsvLines.split(header.startsWith("\uFEFF")
+                ? header.substring(1) : header));
+        return importRows(ruleSetId, table, "csv", replace, skipInvalid, () -> {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            return line != null ? CsvLines.split(line) : null;
+        });
+    }
+
+    /**
+     * Import a JSON decision table: {@code {"columns": [...], "rows": [[...], ...]}},
+     * with "columns" before "rows"
+     *
+     * @throws IllegalArgumentException if the document or the columns are invalid
+     */
+    public Map<String, Object> importJson(UUID ruleSetId, InputStream json, boolean replace, boolean skipInvalid)
+            throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(json);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected a JSON object with \"columns\" and \"rows\"");
+        }
+        DecisionTable table = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("columns".equals(field)) {
+                table = DecisionTable.parse(objectMapper.readValue(parser,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, String.class)));
+            } else if ("rows".equals(field)) {
+                if (table == null) {
+                    throw new IllegalArgumentException("\"columns\" must come before \"rows\"");
+                }
+                if (value != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("\"rows\" must be an array");
+                }
+                return importRows(ruleSetId, table, "json", replace, skipInvalid, () -> {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        return null;
+                    }
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new IllegalArgumentException("Each row must be an array of cells");
+                    }
+                    return objectMapper.readValue(parser, List.class);
+                });
+            } else {
+                parser.skipChildren();
+            }
+        }
+        throw new IllegalArgumentException("Missing \"rows\"");
+    }
+
+    /**
+     * Next row of cells, or null at the end of the upload
+     */
+    private interface RowSource {
+        List<?> next() throws IOException;
+    }
+
+    private Map<String, Object> importRows(UUID ruleSetId, DecisionTable table, String format, boolean replace,
+            boolean skipInvalid, RowSource source) {
+        long startTime = System.nanoTime();
+        boolean textCells = "csv".equals(format);
+        Progress progress = new Progress();
+
+        boolean committed = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (replace) {
+                progress.deleted = jdbcTemplate.update(DELETE_SQL, new Object[] { ruleSetId },
+                        new int[] { Types.OTHER });
+            }
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            try {
+                for (List<?> cells = source.next(); cells != null; cells = source.next()) {
+                    long row = ++progress.rows;
+                    Rule rule;
+                    try {
+                        rule = table.toRule(ruleSetId, row, cells, textCells);
+                    } catch (IllegalArgumentException e) {
+                        if (++progress.invalid <= maxReportedErrors) {
+                            progress.errors.add(Map.of("row", row, "error", e.getMessage()));
+                        }
+                        continue;
+                    }
+                    if (progress.invalid > 0 && !skipInvalid) {
+                        continue; // Rolling back anyway; keep validating for the report
+                    }
+                    batch.add(toRow(rule, now));
+                    if (batch.size() == batchSize) {
+                        progress.imported += write(batch);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (progress.invalid > 0 && !skipInvalid) {
+                status.setRollbackOnly();
+                return false;
+            }
+            progress.imported += write(batch);
+            return true;
+        }));
+
+        if (committed) {
+            // One rebuild for the whole import
+            ruleSetCache.invalidate(ruleSetId);
+            ruleSetCache.get(ruleSetId);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.info("Import into rule set {} ({}): {} rows, {} invalid, committed: {}, in {}ms",
+                ruleSetId, format, progress.rows, progress.invalid, committed, elapsedMs);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ruleSetId", ruleSetId);
+        result.put("format", format);
+        result.put("mode", replace ? "replace" : "append");
+        result.put("committed", committed);
+        result.put("rows", progress.rows);
+        result.put("imported", committed ? progress.imported : 0);
+        result.put("deleted", committed ? progress.deleted : 0);
+        result.put("errorCount", progress.invalid);
+        result.put("errors", progress.errors);
+        result.put("elapsedMs", elapsedMs);
+        return result;
+    }
+
+    private static final class Progress {
+        long rows;
+        long imported;
+        long invalid;
+        long deleted;
+        final List<Map<String, Object>> errors = new ArrayList<>();
+    }
+
+    private Object[] toRow(Rule rule, Timestamp now) {
+        try {
+            return new Object[] {
+                    UUID.randomUUID(),
+                    rule.getRuleSetId(),
+                    rule.getName(),
+                    rule.getDescription(),
+                    rule.getPriority(),
+                    objectMapper.writeValueAsString(rule.getConditions()),
+                    objectMapper.writeValueAsString(rule.getActions()),
+                    rule.getEnabled(),
+                    now,
+                    now };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int write(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, INSERT_TYPES);
+        int written = batch.size();
+        batch.clear();
+        return written;
+    }
+}
@@ -0,0 +1,224 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.EvaluationListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for rule evaluation, per rule set and per rule.
+ *
+ * Meters are registered once when a rule set is loaded and held in arrays
+ * indexed by rule position, so recording a sample is a counter increment or
+ * timer update with no tag or map allocation. Meters of rules that disappear
+ * on reload, and of rule sets that are deleted, are removed from the registry.
+ *
+ * Matches and errors are counted exactly, on every evaluation: the matched
+ * rule is known from the outcome alone, whether it came from the generated
+ * matcher of a promoted rule set, the interpreter or the memo. Everything
+ * that needs each tested rule is sampled: about one evaluation in
+ * {@code per-rule-sample-interval}, chosen per thread, times every rule it
+ * tests, and each of its tests counts for that many in the tested counter,
+ * which is therefore an estimate. The other evaluations keep the generated
+ * matcher.
+ */
+@Component
+public class RuleMetrics {
+
+    static final String EVALUATION_TIMER = "snapflow.rules.evaluation";
+    static final String NO_MATCH_COUNTER = "snapflow.rules.evaluation.nomatch";
+    static final String RULE_TIMER = "snapflow.rules.rule.latency";
+    static final String RULE_EVALUATED_COUNTER = "snapflow.rules.rule.evaluated";
+    static final String RULE_MATCHED_COUNTER = "snapflow.rules.rule.matched";
+    static final String RULE_ERROR_COUNTER = "snapflow.rules.rule.errors";
+
+    private final MeterRegistry registry;
+    private final int perRuleLimit;
+    private final int sampleMask;
+    private final Map<UUID, List<Meter>> ruleMeters = new HashMap<>();
+
+    public RuleMetrics(MeterRegistry registry,
+            @Value("${snapflow.rules.metrics.per-rule-limit:1000}") int perRuleLimit,
+            @Value("${snapflow.rules.metrics.per-rule-sample-interval:64}") int sampleInterval) {
+        this.registry = registry;
+        this.perRuleLimit = perRuleLimit;
+        int interval = Math.max(1, Math.min(sampleInterval, 1 << 30));
+        // Rounded up to a power of two, so sampling is a mask test
+        this.sampleMask = (interval == 1 ? 1 : Integer.highestOneBit(interval - 1) << 1) - 1;
+    }
+
+    /**
+     * Register (or look up) the meters for a freshly compiled rule set and
+     * return the plan wired to them
+     */
+    public CompiledRuleSet instrument(CompiledRuleSet ruleSet) {
+        return ruleSet.withListener(register(ruleSet, false));
+    }
+
+    /**
+     * Instrument an older snapshot version still used by pinned process
+     * instances. Only the rule set meters are recorded, so the per-rule
+     * meters keep tracking the current rules.
+     */
+    public CompiledRuleSet instrumentPinned(CompiledRuleSet ruleSet) {
+        return ruleSet.withListener(register(ruleSet, true));
+    }
+
+    /**
+     * Remove every meter of a deleted rule set from the registry
+     */
+    public synchronized void remove(UUID ruleSetId) {
+        List<Meter> meters = ruleMeters.remove(ruleSetId);
+        if (meters != null) {
+            meters.forEach(registry::remove);
+        }
+        String id = ruleSetId.toString();
+        registry.find(EVALUATION_TIMER).tag("ruleSet", id).meters().forEach(registry::remove);
+        registry.find(NO_MATCH_COUNTER).tag("ruleSet", id).meters().forEach(registry::remove);
+    }
+
+    private synchronized RuleSetMeters register(CompiledRuleSet ruleSet, boolean pinned) {
+        String ruleSetId = ruleSet.getRuleSetId().toString();
+        Tags ruleSetTags = Tags.of("ruleSet", ruleSetId);
+
+        Timer evaluationTimer = Timer.builder(EVALUATION_TIMER)
+                .description("Rule set evaluation latency")
+                .tags(ruleSetTags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+        Counter noMatchCounter = Counter.builder(NO_MATCH_COUNTER)
+                .description("Evaluations in which no rule matched")
+                .tags(ruleSetTags)
+                .register(registry);
+
+        if (pinned) {
+            return new RuleSetMeters(false, 0, evaluationTimer, noMatchCounter,
+                    new Timer[0], new Counter[0], new Counter[0], new Counter[0]);
+        }
+
+        List<CompiledRule> rules = ruleSet.getRules();
+        boolean perRule = perRuleLimit > 0 && rules.size() <= perRuleLimit;
+        int count = perRule ? rules.size() : 0;
+        Timer[] ruleTimers = new Timer[count];
+        Counter[] evaluated = new Counter[count];
+        Counter[] matched = new Counter[count];
+        Counter[] errors = new Counter[count];
+        List<Meter> meters = new ArrayList<>(count * 4);
+
+        for (int i = 0; i < count; i++) {
+            CompiledRule rule = rules.get(i);
+            Tags tags = ruleSetTags
+                    .and("rule", String.valueOf(rule.getId()))
+                    .and("ruleName", rule.getName() != null ? rule.getName() : "");
+            ruleTimers[i] = Timer.builder(RULE_TIMER)
+                    .description("Time spent testing a rule's conditions")
+                    .tags(tags)
+                    .register(registry);
+            evaluated[i] = Counter.builder(RULE_EVALUATED_COUNTER)
+                    .description("Times a rule's conditions were tested, estimated from sampled evaluations")
+                    .tags(tags)
+                    .register(registry);
+            matched[i] = Counter.builder(RULE_MATCHED_COUNTER)
+                    .description("Times a rule's conditions matched")
+                    .tags(tags)
+                    .register(registry);
+            errors[i] = Counter.builder(RULE_ERROR_COUNTER)
+                    .description("Errors raised by a rule's conditions or actions")
+                    .tags(tags)
+                    .register(registry);
+            meters.add(ruleTimers[i]);
+            meters.add(evaluated[i]);
+            meters.add(matched[i]);
+            meters.add(errors[i]);
+        }
+
+        // Rules that were removed, renamed or disabled since the last load
+        List<Meter> previous = ruleMeters.put(ruleSet.getRuleSetId(), meters);
+        if (previous != null) {
+            Set<Meter> current = new HashSet<>(meters);
+            for (Meter meter : previous) {
+                if (!current.contains(meter)) {
+                    registry.remove(meter);
+                }
+            }
+        }
+
+        return new RuleSetMeters(perRule, sampleMask, evaluationTimer, noMatchCounter, ruleTimers, evaluated, matched,
+                errors);
+    }
+
+    private static final class RuleSetMeters implements EvaluationListener {
+
+        private final boolean perRule;
+        private final int sampleMask;
+        private final double weight;
+        private final Timer evaluationTimer;
+        private final Counter noMatchCounter;
+        private final Timer[] ruleTimers;
+        private final Counter[] evaluated;
+        private final Counter[] matched;
+        private final Counter[] errors;
+
+        RuleSetMeters(boolean perRule, int sampleMask, Timer evaluationTimer, Counter noMatchCounter,
+                Timer[] ruleTimers, Counter[] evaluated, Counter[] matched, Counter[] errors) {
+            this.perRule = perRule;
+            this.sampleMask = sampleMask;
+            this.weight = sampleMask + 1;
+            this.evaluationTimer = evaluationTimer;
+            this.noMatchCounter = noMatchCounter;
+            this.ruleTimers = ruleTimers;
+            this.evaluated = evaluated;
+            this.matched = matched;
+            this.errors = errors;
+        }
+
+        @Override
+        public boolean tracksRules() {
+            // Decided per thread, so unsampled evaluations write nothing shared
+            return perRule && (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+        }
+
+        @Override
+        public void ruleTested(int position, boolean ruleMatched, long elapsedNanos) {
+            // Matches are counted in ruleSetEvaluated, for every evaluation
+            evaluated[position].increment(weight);
+            ruleTimers[position].record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void ruleFailed(int position) {
+            if (perRule) {
+                errors[position].increment();
+            }
+        }
+
+        @Override
+        public void ruleSetEvaluated(CompiledRule matchedRule, long elapsedNanos) {
+            evaluationTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (matchedRule == null) {
+                noMatchCounter.increment();
+            } else if (perRule) {
+                matched[matchedRule.getPosition()].increment();
+            }
+        }
+    }
+}
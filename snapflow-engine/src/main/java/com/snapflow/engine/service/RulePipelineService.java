@@ -0,0 +1,234 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.repository.RulePipelineRepository;
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.OverlayMap;
+import com.snapflow.engine.rules.PipelinePlan;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates rule pipelines: named, ordered chains of rule sets run in one
+ * call. Every stage reads an overlay of the input plus everything the earlier
+ * stages changed, and the result is one overlay over the input holding all
+ * the stages' changes, later stages winning.
+ *
+ * Stages that do not depend on each other ({@link PipelinePlan}) may run
+ * concurrently. That only pays off when the stages of a level have enough
+ * rules to outweigh handing work to another thread, so levels below
+ * {@code parallel-min-rules} rules run on the calling thread. Either way the
+ * changes are applied in stage order, so the result is the same.
+ */
+@Service
+public class RulePipelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RulePipelineService.class);
+
+    private final RulePipelineRepository pipelineRepository;
+    private final RulesEngineService rulesEngine;
+    private final int parallelMinRules;
+    private final ExecutorService executor;
+
+    // Pipeline id -> stage rule set ids, and the plan last built for its stages
+    private final Map<UUID, List<UUID>> definitions = new ConcurrentHashMap<>();
+    private final Map<UUID, PipelinePlan> plans = new ConcurrentHashMap<>();
+
+    public RulePipelineService(RulePipelineRepository pipelineRepository, RulesEngineService rulesEngine,
+            @Value("${snapflow.rules.pipeline.parallel-threads:2}") int parallelThreads,
+            @Value("${snapflow.rules.pipeline.parallel-min-rules:1000}") int parallelMinRules) {
+        this.pipelineRepository = pipelineRepository;
+        this.rulesEngine = rulesEngine;
+        this.parallelMinRules = parallelMinRules;
+        if (parallelThreads > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(parallelThreads, runnable -> {
+                Thread thread = new Thread(runnable, "rules-pipeline-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stage rule set ids of a pipeline, in evaluation order; empty if it does not exist
+     */
+    public Optional<List<UUID>> getStages(UUID pipelineId) {
+        return Optional.ofNullable(definitions.computeIfAbsent(pipelineId, id -> pipelineRepository.findById(id)
+                .map(pipeline -> List.copyOf(pipeline.getStages()))
+                .orElse(null)));
+    }
+
+    /**
+     * Forget a pipeline's cached definition after it was changed or deleted
+     */
+    public void invalidate(UUID pipelineId) {
+        definitions.remove(pipelineId);
+        plans.remove(pipelineId);
+    }
+
+    /**
+     * Evaluate a pipeline against the current version of each stage's rule set;
+     * empty if the pipeline does not exist
+     */
+    public Optional<Map<String, Object>> evaluate(UUID pipelineId, Map<String, Object> inputData,
+            EvaluationContext context) {
+        return getStages(pipelineId).map(stageIds -> {
+            List<CompiledRuleSet> stages = new ArrayList<>(stageIds.size());
+            for (UUID ruleSetId : stageIds) {
+                stages.add(rulesEngine.loadRuleSet(ruleSetId));
+            }
+            return evaluate(pipelineId, stages, inputData, context);
+        });
+    }
+
+    /**
+     * Evaluate a pipeline's already resolved stages, e.g. the versions a
+     * process instance is pinned to. The plan is reused for as long as the
+     * same compiled stages are passed in.
+     *
+     * Returns the per-stage results ({@code stages}), the combined
+     * {@code output} overlay over the input and the {@code changes} it holds.
+     */
+    public Map<String, Object> evaluate(UUID pipelineId, List<CompiledRuleSet> stages,
+            Map<String, Object> inputData, EvaluationContext context) {
+        PipelinePlan plan = plans.get(pipelineId);
+        if (plan == null || !plan.isFor(stages)) {
+            plan = PipelinePlan.of(stages);
+            plans.put(pipelineId, plan);
+        }
+        return evaluate(plan, inputData, context);
+    }
+
+    Map<String, Object> evaluate(PipelinePlan plan, Map<String, Object> inputData, EvaluationContext context) {
+        long startTime = System.nanoTime();
+        // Statistics describe a single rule set; the pipeline reports per-stage timings instead
+        EvaluationContext stageContext = context.getStats() != null
+                ? EvaluationContext.forProcess(context.getProcessInstanceId(), context.getNodeId())
+                : context;
+
+        OverlayMap shared = new OverlayMap(inputData);
+        StageResult[] results = new StageResult[plan.size()];
+        boolean parallel = false;
+        for (int[] level : plan.getLevels()) {
+            if (runsInParallel(plan, level)) {
+                parallel = true;
+                evaluateConcurrently(plan, level, shared, stageContext, results);
+            } else {
+                for (int stage : level) {
+                    results[stage] = evaluateStage(plan.getStage(stage), shared, stageContext);
+                }
+            }
+            // Stages of a level don't read each other's changes; apply them in stage order
+            for (int stage : level) {
+                shared.putAll(results[stage].changes);
+            }
+        }
+
+        List<Map<String, Object>> stageResults = new ArrayList<>(plan.size());
+        for (int stage = 0; stage < plan.size(); stage++) {
+            StageResult result = results[stage];
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("ruleSetId", plan.getStage(stage).getRuleSetId());
+            entry.put("level", plan.getLevel(stage));
+            entry.put("matchedRule", result.matched != null ? result.matched.getName() : null);
+            entry.put("nanos", result.nanos);
+            entry.put("changes", result.changes);
+            stageResults.add(entry);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stages", stageResults);
+        result.put("levels", plan.getLevels().length);
+        result.put("parallel", parallel);
+        result.put("totalNanos", System.nanoTime() - startTime);
+        result.put("output", shared);
+        result.put("changes", shared.changes());
+        return result;
+    }
+
+    private boolean runsInParallel(PipelinePlan plan, int[] level) {
+        if (executor == null || level.length < 2) {
+            return false;
+        }
+        long rules = 0;
+        for (int stage : level) {
+            rules += plan.getStage(stage).size();
+        }
+        return rules >= parallelMinRules;
+    }
+
+    /**
+     * Evaluate the stages of one level, all but the first on the pool. The
+     * shared overlay is only read until every stage has finished.
+     */
+    private void evaluateConcurrently(PipelinePlan plan, int[] level, OverlayMap shared, EvaluationContext context,
+            StageResult[] results) {
+        List<Future<StageResult>> futures = new ArrayList<>(level.length - 1);
+        for (int i = 1; i < level.length; i++) {
+            CompiledRuleSet ruleSet = plan.getStage(level[i]);
+            futures.add(executor.submit(() -> evaluateStage(ruleSet, shared, context)));
+        }
+        results[level[0]] = evaluateStage(plan.getStage(level[0]), shared, context);
+        try {
+            for (int i = 1; i < level.length; i++) {
+                results[level[i]] = futures.get(i - 1).get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating pipeline stages", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Pipeline stage failed", e.getCause());
+        }
+    }
+
+    private StageResult evaluateStage(CompiledRuleSet ruleSet, Map<String, Object> input, EvaluationContext context) {
+        long startTime = System.nanoTime();
+        OverlayMap output = new OverlayMap(input);
+        CompiledRule matched = rulesEngine.evaluate(ruleSet, input, context, output);
+        long nanos = System.nanoTime() - startTime;
+        logger.debug("Pipeline stage {} matched {} in {}us", ruleSet.getRuleSetId(),
+                matched != null ? matched.getName() : null, nanos / 1000);
+        return new StageResult(matched, output.changes(), nanos);
+    }
+
+    private static final class StageResult {
+
+        final CompiledRule matched;
+        final Map<String, Object> changes;
+        final long nanos;
+
+        StageResult(CompiledRule matched, Map<String, Object> changes, long nanos) {
+            this.matched = matched;
+            this.changes = changes;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.snapflow.engine.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.snapflow.engine.model.RuleSetSnapshot;
+import com.snapflow.engine.repository.RuleRepository;
+import com.snapflow.engine.repository.RuleSetSnapshotRepository;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.LookupTableResolver;
+import com.snapflow.engine.rules.RuleCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of compiled rule sets.
+ * Bounded by size (Caffeine W-TinyLFU eviction); each rule set carries a
+ * version stamp that is bumped on every invalidation, so a plan that was
+ * loaded before a change can never be served after it.
+ *
+ * A published rule set is served from its latest snapshot, and publishing
+ * replaces the cached plan with a single put, so readers never block.
+ * Older snapshot versions pinned by running processes are kept in a second
+ * cache, bounded by size and by time since last use: a version that running
+ * processes keep evaluating stays compiled, and one nobody has asked for in
+ * a while is dropped (and reloaded from the database if it is ever asked
+ * for again).
+ */
+@Component
+public class RuleSetCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleSetCache.class);
+
+    private final RuleRepository ruleRepository;
+    private final RuleSetSnapshotRepository snapshotRepository;
+    private final LookupTableResolver lookupTables;
+    private final RuleMetrics ruleMetrics;
+    private final LoadingCache<UUID, CompiledRuleSet> cache;
+    private final Cache<String, CompiledRuleSet> pinned;
+    private final Map<UUID, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public RuleSetCache(RuleRepository ruleRepository, RuleSetSnapshotRepository snapshotRepository,
+            LookupTableResolver lookupTables, RuleMetrics ruleMetrics,
+            @Value("${snapflow.rules.cache.max-size:500}") long maxSize,
+            @Value("${snapflow.rules.cache.pinned-max-size:200}") long pinnedMaxSize,
+            @Value("${snapflow.rules.cache.pinned-expire-after-access-ms:3600000}") long pinnedExpireAfterAccessMs) {
+        this.ruleRepository = ruleRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.lookupTables = lookupTables;
+        this.ruleMetrics = ruleMetrics;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build(this::load);
+        this.pinned = Caffeine.newBuilder()
+                .maximumSize(pinnedMaxSize)
+                .expireAfterAccess(pinnedExpireAfterAccessMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Get the compiled plan for a rule set, loading it on a miss
+     */
+    public CompiledRuleSet get(UUID ruleSetId) {
+        CompiledRuleSet ruleSet = cache.get(ruleSetId);
+        if (ruleSet.getVersion() != currentVersion(ruleSetId)) {
+            // Loaded concurrently with an invalidation; discard and reload
+            cache.asMap().remove(ruleSetId, ruleSet);
+            ruleSet = cache.get(ruleSetId);
+        }
+        return ruleSet;
+    }
+
+    /**
+     * Get a specific published version of a rule set, e.g. the one a process
+     * instance is pinned to. Null means the current version. Falls back to the
+     * current version if the requested snapshot no longer exists.
+     */
+    public CompiledRuleSet get(UUID ruleSetId, Integer snapshotVersion) {
+        CompiledRuleSet current = get(ruleSetId);
+        if (snapshotVersion == null || current.getSnapshotVersion() == snapshotVersion) {
+            return current;
+        }
+        CompiledRuleSet ruleSet = pinned.get(ruleSetId + "@" + snapshotVersion,
+                key -> loadSnapshot(ruleSetId, snapshotVersion));
+        if (ruleSet == null) {
+            logger.warn("Snapshot {} of rule set {} not found, using version {}",
+                    snapshotVersion, ruleSetId, current.getSnapshotVersion());
+            return current;
+        }
+        return ruleSet;
+    }
+
+    /**
+     * A handle on the current plan of a rule set, for callers that bind a
+     * rule set once and evaluate it many times
+     */
+    public RuleSetHandle handle(UUID ruleSetId) {
+        return new RuleSetHandle(ruleSetId, this, versionOf(ruleSetId));
+    }
+
+    /**
+     * Make a freshly published snapshot the current plan
+     */
+    public void publish(RuleSetSnapshot snapshot) {
+        UUID ruleSetId = snapshot.getRuleSetId();
+        AtomicLong stamp = versionOf(ruleSetId);
+        long previous = stamp.get();
+        // Compile before bumping the stamp, so readers keep the old plan meanwhile
+        CompiledRuleSet ruleSet = ruleMetrics.instrument(RuleCompiler.compile(ruleSetId, previous + 1,
+                snapshot.getVersion(), RuleSetPublisher.toRules(snapshot), lookupTables));
+        if (stamp.compareAndSet(previous, previous + 1)) {
+            cache.put(ruleSetId, ruleSet);
+        } else {
+            // Raced with another change; let the next reader load the latest
+            invalidate(ruleSetId);
+        }
+    }
+
+    /**
+     * Drop a rule set from the cache and bump its version stamp
+     */
+    public void invalidate(UUID ruleSetId) {
+        long version = versionOf(ruleSetId).incrementAndGet();
+        cache.invalidate(ruleSetId);
+        logger.info("Invalidated cache for rule set: {} (version {})", ruleSetId, version);
+    }
+
+    /**
+     * Drop a deleted rule set: its plan, its pinned versions and its version
+     * stamp. Called once the rows are gone, so anything loaded afterwards
+     * under a fresh stamp is already the empty rule set.
+     */
+    public void remove(UUID ruleSetId) {
+        versionOf(ruleSetId).incrementAndGet();
+        cache.invalidate(ruleSetId);
+        pinned.asMap().keySet().removeIf(key -> key.startsWith(ruleSetId + "@"));
+        versions.remove(ruleSetId);
+        logger.info("Removed rule set from cache: {}", ruleSetId);
+    }
+
+    public void invalidateAll() {
+        versions.values().forEach(AtomicLong::incrementAndGet);
+        cache.invalidateAll();
+        logger.info("Invalidated all cached rule sets");
+    }
+
+    /**
+     * Plans currently in memory: the current version of each cached rule set,
+     * plus any older versions still pinned by running processes
+     */
+    public List<CompiledRuleSet> plans() {
+        List<CompiledRuleSet> plans = new ArrayList<>(cache.asMap().values());
+        plans.addAll(pinned.asMap().values());
+        return plans;
+    }
+
+    /**
+     * Hit/miss/load statistics and the currently cached entries
+     */
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = cache.stats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("loadSuccessCount", stats.loadSuccessCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("totalLoadTimeMs", TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()));
+        result.put("averageLoadTimeMs", stats.averageLoadPenalty() / 1_000_000.0);
+        result.put("evictionCount", stats.evictionCount());
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        cache.asMap().forEach((id, ruleSet) -> {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("ruleSetId", id);
+            entry.put("version", ruleSet.getVersion());
+            entry.put("snapshotVersion", ruleSet.getSnapshotVersion());
+            entry.put("rules", ruleSet.size());
+            entry.put("indexed", ruleSet.isIndexed());
+            entry.put("compiled", ruleSet.isPromoted());
+            entry.put("generationMicros", ruleSet.getGenerationNanos() / 1000);
+            entries.add(entry);
+        });
+        result.put("entries", entries);
+        result.put("pinnedVersions", pinned.asMap().keySet());
+        return result;
+    }
+
+    /**
+     * Compile the current rules of a rule set into a plan of its own, neither
+     * cached nor instrumented, e.g. for warm-up evaluations that must not
+     * touch the condition statistics of the cached plan
+     */
+    public CompiledRuleSet compileDetached(UUID ruleSetId) {
+        return compile(ruleSetId, currentVersion(ruleSetId));
+    }
+
+    private CompiledRuleSet load(UUID ruleSetId) {
+        // Read the stamp before the rows so a racing invalidation makes this plan stale
+        return ruleMetrics.instrument(compile(ruleSetId, currentVersion(ruleSetId)));
+    }
+
+    private CompiledRuleSet compile(UUID ruleSetId, long version) {
+        return snapshotRepository.findTopByRuleSetIdOrderByVersionDesc(ruleSetId)
+                .map(snapshot -> RuleCompiler.compile(ruleSetId, version, snapshot.getVersion(),
+                        RuleSetPublisher.toRules(snapshot), lookupTables))
+                // Never published: evaluate the live rules
+                .orElseGet(() -> RuleCompiler.compile(ruleSetId, version, 0,
+                        ruleRepository.findByRuleSetIdAndEnabledOrderByPriorityDesc(ruleSetId, true), lookupTables));
+    }
+
+    private CompiledRuleSet loadSnapshot(UUID ruleSetId, int snapshotVersion) {
+        return snapshotRepository.findByRuleSetIdAndVersion(ruleSetId, snapshotVersion)
+                .map(snapshot -> ruleMetrics.instrumentPinned(RuleCompiler.compile(ruleSetId, 0,
+                        snapshot.getVersion(), RuleSetPublisher.toRules(snapshot), lookupTables)))
+                .orElse(null);
+    }
+
+    /**
+     * The version stamp of a rule set without creating one, so lookups of
+     * unknown ids leave nothing behind
+     */
+    private long currentVersion(UUID ruleSetId) {
+        AtomicLong version = versions.get(ruleSetId);
+        return version != null ? version.get() : 0;
+    }
+
+    private AtomicLong versionOf(UUID ruleSetId) {
+        return versions.computeIfAbsent(ruleSetId, id -> new AtomicLong());
+    }
+}
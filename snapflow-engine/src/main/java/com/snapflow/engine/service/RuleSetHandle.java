@@ -0,0 +1,46 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.rules.CompiledRuleSet;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A rule set bound once, e.g. when a process definition referencing it is
+ * parsed, and dereferenced on every evaluation without a cache lookup.
+ *
+ * The handle keeps the plan it last got from the {@link RuleSetCache} and
+ * shares the rule set's version stamp with the cache, so it notices an
+ * invalidation or publish with a single read and only then goes back to the
+ * cache.
+ */
+public final class RuleSetHandle {
+
+    private final UUID ruleSetId;
+    private final RuleSetCache cache;
+    private final AtomicLong version;
+    private volatile CompiledRuleSet plan;
+
+    RuleSetHandle(UUID ruleSetId, RuleSetCache cache, AtomicLong version) {
+        this.ruleSetId = ruleSetId;
+        this.cache = cache;
+        this.version = version;
+    }
+
+    public UUID getRuleSetId() {
+        return ruleSetId;
+    }
+
+    /**
+     * The current plan of the rule set
+     */
+    public CompiledRuleSet get() {
+        CompiledRuleSet current = plan;
+        if (current != null && current.getVersion() == version.get()) {
+            return current;
+        }
+        current = cache.get(ruleSetId);
+        plan = current;
+        return current;
+    }
+}
@@ -0,0 +1,216 @@
+package com.snapflow.engine.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.snapflow.engine.model.RuleSet;
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Opt-in memoization of rule set results (the rule set's {@code memoize} flag).
+ *
+ * Conditions only read the fields the rule set references and have no other
+ * inputs, so the matched rule is a function of those field values alone.
+ * The memo maps each distinct combination of referenced values to the
+ * position of the rule that matched. Actions are still applied on every
+ * evaluation; they only write constants, so the output is identical to an
+ * unmemoized evaluation.
+ *
+ * Each compiled plan has its own bounded memo, weakly keyed by the plan, so
+ * changing the rule set (which builds a new plan) drops the old results.
+ * Inputs whose referenced values are not simple immutable values (strings,
+ * numbers, booleans, UUIDs, enums) bypass the memo, since a mutable value
+ * could change after being used as a key.
+ *
+ * Lookup tables are the one input outside the data: for rule sets that use
+ * them, the key also carries the plan's lookup version, so results computed
+ * against a replaced table are never served (they age out of the memo).
+ */
+@Component
+public class RuleSetMemoizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleSetMemoizer.class);
+
+    static final String HIT_COUNTER = "snapflow.rules.memo.hits";
+    static final String MISS_COUNTER = "snapflow.rules.memo.misses";
+    static final String BYPASS_COUNTER = "snapflow.rules.memo.bypassed";
+
+    private static final Memo DISABLED = new Memo(null, null, null, null, null);
+
+    private final RuleSetRepository ruleSetRepository;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final long maxEntries;
+    private final Cache<CompiledRuleSet, Memo> memos = Caffeine.newBuilder().weakKeys().build();
+    // Held once rather than capturing a method reference on every evaluation
+    private final Function<CompiledRuleSet, Memo> memoFactory = this::createMemo;
+
+    public RuleSetMemoizer(RuleSetRepository ruleSetRepository, MeterRegistry registry,
+            @Value("${snapflow.rules.memo.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.memo.max-entries:10000}") long maxEntries) {
+        this.ruleSetRepository = ruleSetRepository;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Find the first matching rule, from the memo when the rule set is memoized
+     */
+    public CompiledRule firstMatch(CompiledRuleSet ruleSet, Map<String, Object> inputData) {
+        Memo memo = enabled ? memos.get(ruleSet, memoFactory) : DISABLED;
+        if (memo.results == null) {
+            return ruleSet.firstMatch(inputData);
+        }
+
+        Key key = memo.key(ruleSet, inputData);
+        if (key == null) {
+            memo.bypassed.increment();
+            return ruleSet.firstMatch(inputData);
+        }
+        Integer position = memo.results.getIfPresent(key);
+        if (position != null) {
+            memo.hits.increment();
+            return position >= 0 ? ruleSet.getRule(position) : null;
+        }
+
+        memo.misses.increment();
+        CompiledRule matched = ruleSet.firstMatch(inputData);
+        memo.results.put(key, matched != null ? matched.getPosition() : -1);
+        return matched;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("maxEntries", maxEntries);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        memos.asMap().forEach((ruleSet, memo) -> {
+            if (memo.results == null) {
+                return;
+            }
+            long hits = (long) memo.hits.count();
+            long misses = (long) memo.misses.count();
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("ruleSetId", ruleSet.getRuleSetId());
+            entry.put("snapshotVersion", ruleSet.getSnapshotVersion());
+            entry.put("fields", memo.fields);
+            entry.put("size", memo.results.estimatedSize());
+            entry.put("hits", hits);
+            entry.put("misses", misses);
+            entry.put("bypassed", (long) memo.bypassed.count());
+            entry.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            entries.add(entry);
+        });
+        result.put("ruleSets", entries);
+        return result;
+    }
+
+    private Memo createMemo(CompiledRuleSet ruleSet) {
+        UUID ruleSetId = ruleSet.getRuleSetId();
+        boolean memoize = ruleSetRepository.findById(ruleSetId)
+                .map(RuleSet::getMemoize)
+                .orElse(false) == Boolean.TRUE;
+        if (!memoize || ruleSet.size() == 0) {
+            return DISABLED;
+        }
+
+        // Counters are shared by all plans of the rule set, so totals survive reloads
+        Tags tags = Tags.of("ruleSet", ruleSetId.toString());
+        logger.info("Memoizing rule set {} on fields {}", ruleSetId, ruleSet.getReferencedFields());
+        return new Memo(
+                ruleSet.getReferencedFields().toArray(new String[0]),
+                Caffeine.newBuilder().maximumSize(maxEntries).build(),
+                Counter.builder(HIT_COUNTER).description("Evaluations answered from the memo")
+                        .tags(tags).register(registry),
+                Counter.builder(MISS_COUNTER).description("Evaluations computed and added to the memo")
+                        .tags(tags).register(registry),
+                Counter.builder(BYPASS_COUNTER).description("Evaluations with inputs that cannot be memoized")
+                        .tags(tags).register(registry));
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Boolean
+                || value instanceof Integer || value instanceof Long || value instanceof Double
+                || value instanceof Short || value instanceof Byte || value instanceof Float
+                || value instanceof BigDecimal || value instanceof BigInteger
+                || value instanceof Character || value instanceof UUID || value instanceof Enum;
+    }
+
+    private static final class Memo {
+
+        final String[] fields;
+        final Cache<Key, Integer> results;
+        final Counter hits;
+        final Counter misses;
+        final Counter bypassed;
+
+        Memo(String[] fields, Cache<Key, Integer> results, Counter hits, Counter misses, Counter bypassed) {
+            this.fields = fields;
+            this.results = results;
+            this.hits = hits;
+            this.misses = misses;
+            this.bypassed = bypassed;
+        }
+
+        /**
+         * The referenced values of the input, or null if one of them cannot be a key
+         */
+        Key key(CompiledRuleSet ruleSet, Map<String, Object> inputData) {
+            boolean lookups = ruleSet.usesLookupTables();
+            Object[] values = new Object[lookups ? fields.length + 1 : fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                Object value = inputData.get(fields[i]);
+                if (!isImmutable(value)) {
+                    return null;
+                }
+                values[i] = value;
+            }
+            if (lookups) {
+                values[fields.length] = ruleSet.getLookupVersion();
+            }
+            return new Key(values);
+        }
+    }
+
+    private static final class Key {
+
+        private final Object[] values;
+        private final int hash;
+
+        Key(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && hash == ((Key) other).hash && Arrays.equals(values, ((Key) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
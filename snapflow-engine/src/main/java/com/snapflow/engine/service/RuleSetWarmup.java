@@ -0,0 +1,164 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.model.RuleSet;
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.WarmupInputs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and warms up every active rule set at startup.
+ *
+ * Runs as an ApplicationRunner, so Spring Boot reports readiness
+ * (ACCEPTING_TRAFFIC) only once it has finished. Each rule set is compiled
+ * into the cache and evaluated against synthetic inputs derived from its
+ * own rules, which pays for the database load, JSONB deserialization and
+ * JIT compilation before real traffic arrives. Warm-up evaluations go
+ * through {@link RulesEngineService} without auditing, memoization or
+ * metrics, on a separately compiled copy of each plan, so the condition
+ * ordering of the cached plan only learns from real traffic, also when
+ * warm-up is run again on a live instance. Rule sets left when the time
+ * budget runs out are loaded lazily on first use instead.
+ */
+@Component
+public class RuleSetWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleSetWarmup.class);
+
+    private final RuleSetRepository ruleSetRepository;
+    private final RuleSetCache ruleSetCache;
+    private final RulesEngineService rulesEngine;
+    private final boolean enabled;
+    private final long timeBudgetMs;
+    private final int rounds;
+    private final int maxInputs;
+
+    private volatile Map<String, Object> lastReport = Map.of("status", "not run");
+
+    public RuleSetWarmup(RuleSetRepository ruleSetRepository, RuleSetCache ruleSetCache,
+            RulesEngineService rulesEngine,
+            @Value("${snapflow.rules.warmup.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.warmup.time-budget-ms:30000}") long timeBudgetMs,
+            @Value("${snapflow.rules.warmup.rounds:20}") int rounds,
+            @Value("${snapflow.rules.warmup.max-inputs:256}") int maxInputs) {
+        this.ruleSetRepository = ruleSetRepository;
+        this.ruleSetCache = ruleSetCache;
+        this.rulesEngine = rulesEngine;
+        this.enabled = enabled;
+        this.timeBudgetMs = timeBudgetMs;
+        this.rounds = Math.max(0, rounds);
+        this.maxInputs = Math.max(1, maxInputs);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            logger.info("Rule set warm-up is disabled");
+            return;
+        }
+        warmUp();
+    }
+
+    /**
+     * Warm up all active rule sets within the time budget and return the report
+     */
+    public synchronized Map<String, Object> warmUp() {
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+
+        List<RuleSet> ruleSets = ruleSetRepository.findByStatus("active");
+        logger.info("Warming up {} active rule set(s), time budget {}ms", ruleSets.size(), timeBudgetMs);
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        int skipped = 0;
+        for (RuleSet ruleSet : ruleSets) {
+            if (System.nanoTime() - deadline >= 0) {
+                skipped++;
+                continue;
+            }
+            entries.add(warmUp(ruleSet, deadline));
+        }
+
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        if (skipped > 0) {
+            logger.warn("Warm-up time budget of {}ms exhausted; {} rule set(s) will load on first use",
+                    timeBudgetMs, skipped);
+        }
+        logger.info("Rule set warm-up finished in {}ms ({} warmed, {} skipped)", totalMs, entries.size(), skipped);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("status", skipped > 0 ? "budget exhausted" : "complete");
+        report.put("activeRuleSets", ruleSets.size());
+        report.put("warmed", entries.size());
+        report.put("skipped", skipped);
+        report.put("totalMs", totalMs);
+        report.put("timeBudgetMs", timeBudgetMs);
+        report.put("ruleSets", entries);
+        lastReport = report;
+        return report;
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    private Map<String, Object> warmUp(RuleSet ruleSet, long deadline) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("ruleSetId", ruleSet.getId());
+        entry.put("name", ruleSet.getName());
+
+        long loadStart = System.nanoTime();
+        try {
+            CompiledRuleSet compiled = ruleSetCache.get(ruleSet.getId());
+            long loadNanos = System.nanoTime() - loadStart;
+
+            // A copy of the cached plan, without metrics: synthetic inputs say nothing
+            // about which conditions fail first in real traffic
+            CompiledRuleSet plan = ruleSetCache.compileDetached(ruleSet.getId());
+            List<Map<String, Object>> inputs = WarmupInputs.forRuleSet(plan, maxInputs);
+
+            long warmupStart = System.nanoTime();
+            int evaluations = 0;
+            int matches = 0;
+            warmup:
+            for (int round = 0; round < rounds; round++) {
+                for (Map<String, Object> input : inputs) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        entry.put("truncated", true);
+                        break warmup;
+                    }
+                    if (rulesEngine.warmUp(plan, input) != null) {
+                        matches++;
+                    }
+                    evaluations++;
+                }
+            }
+            long warmupNanos = System.nanoTime() - warmupStart;
+
+            entry.put("rules", compiled.size());
+            entry.put("indexed", compiled.isIndexed());
+            entry.put("loadMs", TimeUnit.NANOSECONDS.toMillis(loadNanos));
+            entry.put("warmupMs", TimeUnit.NANOSECONDS.toMillis(warmupNanos));
+            entry.put("evaluations", evaluations);
+            entry.put("matches", matches);
+            logger.info("Warmed up rule set '{}' ({} rules): load {}ms, {} evaluations in {}ms",
+                    ruleSet.getName(), compiled.size(), TimeUnit.NANOSECONDS.toMillis(loadNanos),
+                    evaluations, TimeUnit.NANOSECONDS.toMillis(warmupNanos));
+        } catch (RuntimeException e) {
+            logger.error("Failed to warm up rule set: " + ruleSet.getName(), e);
+            entry.put("error", e.toString());
+        }
+        return entry;
+    }
+}
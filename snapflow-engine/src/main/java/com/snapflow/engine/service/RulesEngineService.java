@@ -1,16 +1,15 @@
 package com.snapflow.engine.service;
 
-import com.snapflow.engine.model.Rule;
-import com.snapflow.engine.repository.RuleRepository;
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.EvaluationTrace;
+import com.snapflow.engine.rules.OverlayMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.regex.Pattern;
 
 @Service
 public class RulesEngineService {
@@ -18,7 +17,19 @@ public class RulesEngineService {
     private static final Logger logger = LoggerFactory.getLogger(RulesEngineService.class);
 
     @Autowired
-    private RuleRepository ruleRepository;
+    private RuleSetCache ruleSetCache;
+
+    @Autowired
+    private RuleExecutionAuditor auditor;
+
+    @Autowired
+    private HotRuleSetCompiler hotRuleSetCompiler;
+
+    @Autowired
+    private RuleSetMemoizer memoizer;
+
+    @Autowired
+    private ShadowEvaluator shadowEvaluator;
 
     /**
      * Evaluate all rules in a rule set against input data
@@ -27,236 +38,185 @@ public class RulesEngineService {
     public Map<String, Object> evaluateRuleSet(
             UUID ruleSetId,
             Map<String, Object> inputData) {
-        logger.info("Evaluating rule set: {} with input: {}", ruleSetId, inputData);
-
-        // Get all enabled rules, ordered by priority (cached)
-        List<Rule> rules = getRules(ruleSetId);
-
-        // Start with input data as output
-        Map<String, Object> outputData = new HashMap<>(inputData);
-
-        // Evaluate rules in priority order
-        for (Rule rule : rules) {
-            long startTime = System.currentTimeMillis();
-
-            try {
-                // Evaluate conditions
-                boolean matched = evaluateConditions(rule.getConditions(), inputData);
-
-                if (matched) {
-                    logger.info("Rule matched: {} (priority: {})", rule.getName(), rule.getPriority());
-
-                    // Execute actions
-                    executeActions(rule.getActions(), outputData);
-
-                    long executionTime = System.currentTimeMillis() - startTime;
-                    logger.info("Rule executed in {}ms", executionTime);
-
-                    // Stop after first match (first-match-wins strategy)
-                    // Change this if you want to evaluate all matching rules
-                    break;
-                }
-            } catch (Exception e) {
-                logger.error("Error evaluating rule: " + rule.getName(), e);
-            }
-        }
+        return evaluateRuleSet(ruleSetId, inputData, EvaluationContext.NONE);
+    }
 
-        logger.info("Rule evaluation complete. Output: {}", outputData);
-        return outputData;
+    /**
+     * Evaluate a rule set on behalf of a process node or a caller that wants statistics
+     */
+    public Map<String, Object> evaluateRuleSet(
+            UUID ruleSetId,
+            Map<String, Object> inputData,
+            EvaluationContext context) {
+        return evaluate(loadRuleSet(ruleSetId), inputData, context);
     }
 
     /**
-     * Get rules for a rule set (cached)
+     * Evaluate an already resolved rule set. Batch callers resolve the rule set
+     * once and evaluate every record against the same snapshot.
+     * Per-evaluation logging is at debug level so high-volume callers stay quiet.
+     *
+     * The output is an {@link OverlayMap} over the input rather than a copy:
+     * it holds only the variables the actions set and reads everything else
+     * through, so the cost of an evaluation does not grow with the input.
+     * The input is never modified.
      */
-    @Cacheable(value = "ruleSets", key = "#ruleSetId")
-    public List<Rule> getRules(UUID ruleSetId) {
-        return ruleRepository.findByRuleSetIdAndEnabledOrderByPriorityDesc(ruleSetId, true);
+    public Map<String, Object> evaluate(
+            CompiledRuleSet ruleSet,
+            Map<String, Object> inputData,
+            EvaluationContext context) {
+        OverlayMap outputData = new OverlayMap(inputData);
+        evaluate(ruleSet, inputData, context, outputData);
+        return outputData;
     }
 
     /**
-     * Invalidate cache when rules are updated
+     * Evaluate an already resolved rule set and return only the variables the
+     * matched rule's actions created or changed, for callers that write results
+     * back and want to skip unchanged values
      */
-    @CacheEvict(value = "ruleSets", key = "#ruleSetId")
-    public void invalidateCache(UUID ruleSetId) {
-        logger.info("Invalidated cache for rule set: {}", ruleSetId);
+    public Map<String, Object> evaluateChanges(
+            CompiledRuleSet ruleSet,
+            Map<String, Object> inputData,
+            EvaluationContext context) {
+        OverlayMap outputData = new OverlayMap(inputData);
+        evaluate(ruleSet, inputData, context, outputData);
+        return outputData.changes();
     }
 
     /**
-     * Evaluate all conditions for a rule
+     * Run the first matching rule's actions into {@code target}, an overlay
+     * over the input, and return the matched rule (null if none matched)
      */
-    @SuppressWarnings("unchecked")
-    private boolean evaluateConditions(Map<String, Object> conditionsMap, Map<String, Object> data) {
-        if (conditionsMap == null || conditionsMap.isEmpty()) {
-            return true; // No conditions = always match
+    CompiledRule evaluate(
+            CompiledRuleSet ruleSet,
+            Map<String, Object> inputData,
+            EvaluationContext context,
+            OverlayMap target) {
+        logger.debug("Evaluating rule set: {} with input: {}", ruleSet.getRuleSetId(), inputData);
+
+        long startTime = System.nanoTime();
+
+        // First-match-wins: rules are already in priority order. Callers asking
+        // for statistics want the rules actually visited, so they skip the memo.
+        CompiledRule matched = context.getStats() != null
+                ? ruleSet.firstMatch(inputData, context.getStats())
+                : memoizer.firstMatch(ruleSet, inputData);
+        if (matched != null && matched.apply(target) > 0) {
+            ruleSet.getListener().ruleFailed(matched.getPosition());
         }
 
-        List<Map<String, Object>> conditions = (List<Map<String, Object>>) conditionsMap.get("conditions");
-        if (conditions == null || conditions.isEmpty()) {
-            return true; // No conditions = always match
+        long elapsedNanos = System.nanoTime() - startTime;
+        ruleSet.getListener().ruleSetEvaluated(matched, elapsedNanos);
+        hotRuleSetCompiler.recordEvaluation(ruleSet);
+        if (matched != null && logger.isDebugEnabled()) {
+            // Guarded: three arguments means a varargs array and boxing even when debug is off
+            logger.debug("Rule matched: {} (priority: {}) in {}us", matched.getName(), matched.getPriority(),
+                    elapsedNanos / 1000);
         }
 
-        String logic = (String) conditionsMap.getOrDefault("conditionLogic", "AND");
-
-        if ("AND".equals(logic)) {
-            // All conditions must match
-            return conditions.stream().allMatch(c -> evaluateCondition(c, data));
-        } else {
-            // Any condition must match
-            return conditions.stream().anyMatch(c -> evaluateCondition(c, data));
+        if (ruleSet.size() > 0 && auditor.shouldSample()) {
+            // Snapshots, since the writer serializes them later: only the fields the
+            // conditions read and the variables the actions changed, not the whole input
+            auditor.record(ruleSet.getRuleSetId(), matched != null ? matched.getId() : null, context,
+                    referencedInput(inputData, ruleSet.getReferencedFields()), target.changes(), elapsedNanos);
         }
+
+        // Draft rule sets shadowing this one see a sample of its inputs, off this thread
+        shadowEvaluator.offer(ruleSet, inputData, matched, target);
+
+        logger.debug("Rule evaluation complete. Output: {}", target);
+        return matched;
     }
 
     /**
-     * Evaluate a single condition
+     * Evaluate for warm-up: the same plan walk and actions into an overlay as
+     * {@link #evaluate}, but nothing is memoized, audited, shadowed or counted
+     * toward promotion, and condition failures are not reported. Pass a plan
+     * of its own, such as {@link RuleSetCache#compileDetached}, to keep it out
+     * of the metrics and the condition statistics of the cached plan as well.
      */
-    private boolean evaluateCondition(Map<String, Object> condition, Map<String, Object> data) {
-        String field = (String) condition.get("field");
-        String operator = (String) condition.get("operator");
-        Object conditionValue = condition.get("value");
-
-        Object fieldValue = data.get(field);
-
-        try {
-            switch (operator) {
-                case "equals":
-                    return Objects.equals(fieldValue, conditionValue);
-
-                case "notEquals":
-                    return !Objects.equals(fieldValue, conditionValue);
-
-                case "greaterThan":
-                    return compareNumbers(fieldValue, conditionValue) > 0;
-
-                case "greaterThanOrEqual":
-                    return compareNumbers(fieldValue, conditionValue) >= 0;
-
-                case "lessThan":
-                    return compareNumbers(fieldValue, conditionValue) < 0;
-
-                case "lessThanOrEqual":
-                    return compareNumbers(fieldValue, conditionValue) <= 0;
-
-                case "contains":
-                    return fieldValue != null &&
-                            fieldValue.toString().contains(conditionValue.toString());
-
-                case "startsWith":
-                    return fieldValue != null &&
-                            fieldValue.toString().startsWith(conditionValue.toString());
-
-                case "endsWith":
-                    return fieldValue != null &&
-                            fieldValue.toString().endsWith(conditionValue.toString());
-
-                case "matchesRegex":
-                    return fieldValue != null &&
-                            Pattern.matches(conditionValue.toString(), fieldValue.toString());
-
-                case "in":
-                    if (conditionValue instanceof List) {
-                        return ((List<?>) conditionValue).contains(fieldValue);
-                    }
-                    return false;
-
-                case "notIn":
-                    if (conditionValue instanceof List) {
-                        return !((List<?>) conditionValue).contains(fieldValue);
-                    }
-                    return true;
-
-                case "isTrue":
-                    return Boolean.TRUE.equals(fieldValue);
-
-                case "isFalse":
-                    return Boolean.FALSE.equals(fieldValue);
-
-                case "isNull":
-                    return fieldValue == null;
-
-                case "isNotNull":
-                    return fieldValue != null;
+    CompiledRule warmUp(CompiledRuleSet ruleSet, Map<String, Object> inputData) {
+        OverlayMap target = new OverlayMap(inputData);
+        CompiledRule matched = ruleSet.firstMatchQuietly(inputData);
+        if (matched != null) {
+            matched.apply(target);
+        }
+        return matched;
+    }
 
-                default:
-                    logger.warn("Unknown operator: {}", operator);
-                    return false;
+    private static Map<String, Object> referencedInput(Map<String, Object> inputData, Set<String> fields) {
+        Map<String, Object> input = new HashMap<>(Math.max(4, fields.size() * 2));
+        for (String field : fields) {
+            Object value = inputData.get(field);
+            if (value != null || inputData.containsKey(field)) {
+                input.put(field, value);
             }
-        } catch (Exception e) {
-            logger.error("Error evaluating condition: " + condition, e);
-            return false;
         }
+        return input;
     }
 
     /**
-     * Execute actions when a rule matches
+     * Evaluate a rule set in explain mode: the output plus a trace of every
+     * rule visited, each condition's result and per-rule timings. A separate
+     * walk of the plan, so ordinary evaluations pay nothing for it; nothing
+     * is memoized, audited or counted in metrics.
      */
-    @SuppressWarnings("unchecked")
-    private void executeActions(Map<String, Object> actionsMap, Map<String, Object> outputData) {
-        if (actionsMap == null || actionsMap.isEmpty()) {
-            return;
-        }
-
-        List<Map<String, Object>> actions = (List<Map<String, Object>>) actionsMap.get("actions");
-        if (actions == null || actions.isEmpty()) {
-            return;
-        }
-
-        for (Map<String, Object> action : actions) {
-            String type = (String) action.get("type");
-
-            try {
-                switch (type) {
-                    case "setVariable":
-                        String variable = (String) action.get("variable");
-                        Object value = action.get("value");
-                        outputData.put(variable, value);
-                        logger.debug("Set variable: {} = {}", variable, value);
-                        break;
-
-                    case "routeTo":
-                        String targetNode = (String) action.get("targetNode");
-                        outputData.put("_routeToNode", targetNode);
-                        logger.debug("Route to node: {}", targetNode);
-                        break;
+    public Map<String, Object> explain(CompiledRuleSet ruleSet, Map<String, Object> inputData) {
+        return explained(ruleSet.explain(inputData), inputData);
+    }
 
-                    case "logMessage":
-                        String message = (String) action.get("message");
-                        logger.info("Rule action log: {}", message);
-                        break;
+    /**
+     * Explain a single rule against the input, as if it were the only rule in its set
+     */
+    public Map<String, Object> explain(CompiledRule rule, Map<String, Object> inputData) {
+        return explained(EvaluationTrace.ofRule(rule, inputData), inputData);
+    }
 
-                    default:
-                        logger.warn("Unknown action type: {}", type);
-                }
-            } catch (Exception e) {
-                logger.error("Error executing action: " + action, e);
-            }
+    private Map<String, Object> explained(EvaluationTrace trace, Map<String, Object> inputData) {
+        OverlayMap outputData = new OverlayMap(inputData);
+        CompiledRule matched = trace.getMatched();
+        Map<String, Object> result = trace.toMap();
+        if (matched != null) {
+            result.put("failedActions", matched.apply(outputData));
         }
+        result.put("output", outputData);
+        result.put("changes", outputData.changes());
+        return result;
     }
 
     /**
-     * Compare two numbers
+     * Get the compiled plan for a rule set from the cache
      */
-    private int compareNumbers(Object a, Object b) {
-        if (a == null || b == null) {
-            throw new IllegalArgumentException("Cannot compare null values");
-        }
+    public CompiledRuleSet loadRuleSet(UUID ruleSetId) {
+        return ruleSetCache.get(ruleSetId);
+    }
+
+    /**
+     * Get the compiled plan for a specific published version; null means current
+     */
+    public CompiledRuleSet loadRuleSet(UUID ruleSetId, Integer snapshotVersion) {
+        return ruleSetCache.get(ruleSetId, snapshotVersion);
+    }
 
-        double aNum = convertToDouble(a);
-        double bNum = convertToDouble(b);
+    /**
+     * Bind a rule set once, e.g. at deployment, and get its current plan from the handle afterwards
+     */
+    public RuleSetHandle bindRuleSet(UUID ruleSetId) {
+        return ruleSetCache.handle(ruleSetId);
+    }
 
-        return Double.compare(aNum, bNum);
+    /**
+     * Invalidate cache when rules are updated
+     */
+    public void invalidateCache(UUID ruleSetId) {
+        ruleSetCache.invalidate(ruleSetId);
     }
 
     /**
-     * Convert object to double
+     * Forget a deleted rule set
      */
-    private double convertToDouble(Object obj) {
-        if (obj instanceof Number) {
-            return ((Number) obj).doubleValue();
-        }
-        try {
-            return Double.parseDouble(obj.toString());
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Cannot convert to number: " + obj);
-        }
+    public void removeFromCache(UUID ruleSetId) {
+        ruleSetCache.remove(ruleSetId);
     }
 }
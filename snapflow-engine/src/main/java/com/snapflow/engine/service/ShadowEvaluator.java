@@ -0,0 +1,455 @@
+package com.snapflow.engine.service;
+
+import com.snapflow.engine.model.RuleSet;
+import com.snapflow.engine.repository.RuleSetRepository;
+import com.snapflow.engine.rules.CompiledRule;
+import com.snapflow.engine.rules.CompiledRuleSet;
+import com.snapflow.engine.rules.OverlayMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Shadow evaluation: a draft rule set registered as the shadow of a live one
+ * ({@code shadow_of}) is evaluated against a sample of the live rule set's
+ * real inputs, and its decisions are compared with the live ones.
+ *
+ * The live evaluation only pays for the sampling decision and, for sampled
+ * inputs, a copy of the referenced fields and the live changes. The shadow
+ * evaluation itself runs on a small bounded pool of low-priority threads;
+ * when its queue is full the comparison is dropped rather than waited for.
+ * Shadow results are never applied to anything.
+ *
+ * Two evaluations agree when the matched rules' actions produce the same
+ * changes to the input. Per shadow it keeps the counts, which live rule led
+ * to which shadow rule when they differ, and the most recent mismatches.
+ * Statistics live in memory and restart when a shadow is (re-)registered.
+ */
+@Component
+public class ShadowEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShadowEvaluator.class);
+
+    static final String EVALUATION_COUNTER = "snapflow.rules.shadow.evaluations";
+
+    private static final String NO_MATCH = "(no match)";
+    private static final String OTHER = "(other)";
+    private static final int MAX_TRANSITIONS = 100;
+
+    private final RuleSetRepository ruleSetRepository;
+    private final RuleSetCache ruleSetCache;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final int maxExamples;
+    private final ThreadPoolExecutor executor;
+
+    // Live rule set id -> its shadows; replaced wholesale on every change so
+    // evaluating threads read it without locking
+    private volatile Map<UUID, List<Shadow>> shadowsByLive = Map.of();
+
+    public ShadowEvaluator(RuleSetRepository ruleSetRepository, RuleSetCache ruleSetCache, MeterRegistry registry,
+            @Value("${snapflow.rules.shadow.enabled:true}") boolean enabled,
+            @Value("${snapflow.rules.shadow.threads:1}") int threads,
+            @Value("${snapflow.rules.shadow.queue-capacity:1000}") int queueCapacity,
+            @Value("${snapflow.rules.shadow.max-examples:20}") int maxExamples) {
+        this.ruleSetRepository = ruleSetRepository;
+        this.ruleSetCache = ruleSetCache;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.maxExamples = Math.max(0, maxExamples);
+
+        int poolSize = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "rules-shadow-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PostConstruct
+    public void loadRegistrations() {
+        if (!enabled) {
+            logger.info("Shadow evaluation is disabled");
+            return;
+        }
+        for (RuleSet ruleSet : ruleSetRepository.findByShadowOfIsNotNull()) {
+            install(ruleSet.getId(), ruleSet.getShadowOf(), sampleRateOf(ruleSet));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Register {@code shadowId} as the shadow of {@code liveId}, replacing any
+     * earlier registration of it and resetting its statistics
+     *
+     * @throws IllegalArgumentException if the rule sets are the same or the sample rate is out of range
+     */
+    public Optional<Map<String, Object>> register(UUID shadowId, UUID liveId, double sampleRate) {
+        if (shadowId.equals(liveId)) {
+            throw new IllegalArgumentException("A rule set cannot shadow itself");
+        }
+        if (!(sampleRate > 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalArgumentException("sampleRate must be greater than 0 and at most 1");
+        }
+        Optional<RuleSet> shadow = ruleSetRepository.findById(shadowId);
+        if (shadow.isEmpty() || !ruleSetRepository.existsById(liveId)) {
+            return Optional.empty();
+        }
+
+        RuleSet ruleSet = shadow.get();
+        ruleSet.setShadowOf(liveId);
+        ruleSet.setShadowSampleRate(sampleRate);
+        ruleSetRepository.save(ruleSet);
+        if (enabled) {
+            install(shadowId, liveId, sampleRate);
+        }
+        logger.info("Rule set {} now shadows {} at sample rate {}", shadowId, liveId, sampleRate);
+        return Optional.of(describe(shadowId));
+    }
+
+    /**
+     * Stop shadowing; false if the rule set does not exist
+     */
+    public boolean unregister(UUID shadowId) {
+        Optional<RuleSet> shadow = ruleSetRepository.findById(shadowId);
+        if (shadow.isEmpty()) {
+            return false;
+        }
+        RuleSet ruleSet = shadow.get();
+        if (ruleSet.getShadowOf() != null) {
+            ruleSet.setShadowOf(null);
+            ruleSet.setShadowSampleRate(null);
+            ruleSetRepository.save(ruleSet);
+        }
+        uninstall(id -> id.equals(shadowId));
+        return true;
+    }
+
+    /**
+     * Forget a deleted rule set, whether it was a shadow or had shadows.
+     * The database clears {@code shadow_of} itself.
+     */
+    public synchronized void ruleSetDeleted(UUID ruleSetId) {
+        List<Shadow> removed = new ArrayList<>();
+        Map<UUID, List<Shadow>> updated = without(id -> id.equals(ruleSetId), removed);
+        List<Shadow> orphaned = updated.remove(ruleSetId);
+        if (orphaned != null) {
+            removed.addAll(orphaned);
+        }
+        shadowsByLive = Collections.unmodifiableMap(updated);
+        removeMeters(removed, List.of());
+    }
+
+    /**
+     * Hand a live evaluation to the shadows of its rule set, if any.
+     * Called on the evaluating thread, so everything beyond the sampling
+     * decision happens only for sampled inputs, and the shadow evaluation
+     * itself happens on the shadow pool.
+     */
+    public void offer(CompiledRuleSet live, Map<String, Object> inputData, CompiledRule liveMatched,
+            OverlayMap liveOutput) {
+        List<Shadow> shadows = shadowsByLive.get(live.getRuleSetId());
+        if (shadows == null) {
+            return;
+        }
+        Map<String, Object> liveChanges = null;
+        for (Shadow shadow : shadows) {
+            if (ThreadLocalRandom.current().nextDouble() >= shadow.sampleRate) {
+                continue;
+            }
+            if (liveChanges == null) {
+                liveChanges = liveOutput.changes();
+            }
+            Map<String, Object> input = copyReferenced(inputData, live.getReferencedFields(), shadow.fields);
+            String liveRule = liveMatched != null ? liveMatched.getName() : NO_MATCH;
+            Map<String, Object> expected = liveChanges;
+            shadow.sampled.incrementAndGet();
+            try {
+                executor.execute(() -> compare(shadow, input, liveRule, expected));
+            } catch (RejectedExecutionException e) {
+                shadow.dropped.incrementAndGet();
+                shadow.droppedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Statistics and recent mismatches of one shadow, or null if the rule set is not shadowing
+     */
+    public Map<String, Object> describe(UUID shadowId) {
+        for (List<Shadow> shadows : shadowsByLive.values()) {
+            for (Shadow shadow : shadows) {
+                if (shadow.shadowId.equals(shadowId)) {
+                    return shadow.describe(true);
+                }
+            }
+        }
+        return null;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("pending", executor.getQueue().size());
+        stats.put("capacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        List<Map<String, Object>> shadows = new ArrayList<>();
+        for (List<Shadow> list : shadowsByLive.values()) {
+            for (Shadow shadow : list) {
+                shadows.add(shadow.describe(false));
+            }
+        }
+        stats.put("shadows", shadows);
+        return stats;
+    }
+
+    private void compare(Shadow shadow, Map<String, Object> input, String liveRule,
+            Map<String, Object> liveChanges) {
+        Map<String, Object> shadowChanges;
+        String shadowRule;
+        try {
+            CompiledRuleSet plan = ruleSetCache.get(shadow.shadowId);
+            shadow.fields = plan.getReferencedFields();
+            CompiledRule matched = plan.firstMatch(input);
+            OverlayMap output = new OverlayMap(input);
+            if (matched != null) {
+                matched.apply(output);
+            }
+            shadowChanges = output.changes();
+            shadowRule = matched != null ? matched.getName() : NO_MATCH;
+        } catch (RuntimeException e) {
+            shadow.errors.incrementAndGet();
+            shadow.errorCounter.increment();
+            logger.debug("Shadow evaluation of rule set {} failed: {}", shadow.shadowId, e.getMessage());
+            return;
+        }
+
+        shadow.compared.incrementAndGet();
+        boolean sameRule = liveRule.equals(shadowRule);
+        if (!sameRule) {
+            shadow.differentRule.incrementAndGet();
+            String transition = liveRule + " -> " + shadowRule;
+            AtomicLong count = shadow.transitions.get(transition);
+            if (count == null) {
+                count = shadow.transitions.size() < MAX_TRANSITIONS
+                        ? shadow.transitions.computeIfAbsent(transition, key -> new AtomicLong())
+                        : shadow.transitions.computeIfAbsent(OTHER, key -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+
+        if (Objects.equals(liveChanges, shadowChanges)) {
+            shadow.sameOutput.incrementAndGet();
+            shadow.sameCounter.increment();
+            return;
+        }
+        shadow.diverged.incrementAndGet();
+        shadow.divergedCounter.increment();
+        if (maxExamples > 0) {
+            Map<String, Object> example = new HashMap<>();
+            example.put("time", LocalDateTime.now());
+            example.put("input", input);
+            example.put("liveRule", liveRule);
+            example.put("shadowRule", shadowRule);
+            example.put("liveChanges", liveChanges);
+            example.put("shadowChanges", shadowChanges);
+            synchronized (shadow.examples) {
+                if (shadow.examples.size() >= maxExamples) {
+                    shadow.examples.removeFirst();
+                }
+                shadow.examples.addLast(example);
+            }
+        }
+    }
+
+    /**
+     * The fields either rule set reads. Until the shadow plan has been loaded
+     * once its fields are unknown, so the first sample copies the whole input.
+     */
+    private static Map<String, Object> copyReferenced(Map<String, Object> inputData, Set<String> liveFields,
+            Set<String> shadowFields) {
+        if (shadowFields == null) {
+            return new HashMap<>(inputData);
+        }
+        Map<String, Object> copy = new HashMap<>();
+        copyFields(inputData, liveFields, copy);
+        copyFields(inputData, shadowFields, copy);
+        return copy;
+    }
+
+    private static void copyFields(Map<String, Object> inputData, Set<String> fields, Map<String, Object> copy) {
+        for (String field : fields) {
+            Object value = inputData.get(field);
+            if (value != null || inputData.containsKey(field)) {
+                copy.put(field, value);
+            }
+        }
+    }
+
+    private static double sampleRateOf(RuleSet ruleSet) {
+        Double rate = ruleSet.getShadowSampleRate();
+        return rate != null && rate > 0.0 ? Math.min(rate, 1.0) : 1.0;
+    }
+
+    private synchronized void install(UUID shadowId, UUID liveId, double sampleRate) {
+        List<Shadow> removed = new ArrayList<>();
+        Map<UUID, List<Shadow>> updated = without(id -> id.equals(shadowId), removed);
+        Shadow shadow = new Shadow(shadowId, liveId, sampleRate, registry);
+        List<Shadow> shadows = new ArrayList<>(updated.getOrDefault(liveId, List.of()));
+        shadows.add(shadow);
+        updated.put(liveId, List.copyOf(shadows));
+        shadowsByLive = Collections.unmodifiableMap(updated);
+        removeMeters(removed, shadow.meters());
+    }
+
+    private synchronized void uninstall(Predicate<UUID> shadowIds) {
+        List<Shadow> removed = new ArrayList<>();
+        shadowsByLive = Collections.unmodifiableMap(without(shadowIds, removed));
+        removeMeters(removed, List.of());
+    }
+
+    /**
+     * The installed shadows without the given ones, which are added to {@code removed}
+     */
+    private Map<UUID, List<Shadow>> without(Predicate<UUID> shadowIds, List<Shadow> removed) {
+        Map<UUID, List<Shadow>> updated = new HashMap<>();
+        shadowsByLive.forEach((liveId, shadows) -> {
+            List<Shadow> kept = new ArrayList<>();
+            for (Shadow shadow : shadows) {
+                (shadowIds.test(shadow.shadowId) ? removed : kept).add(shadow);
+            }
+            if (!kept.isEmpty()) {
+                updated.put(liveId, List.copyOf(kept));
+            }
+        });
+        return updated;
+    }
+
+    /**
+     * Drop the meters of shadows that are gone, except those a replacement
+     * registered again under the same tags
+     */
+    private void removeMeters(List<Shadow> removed, List<Meter> kept) {
+        for (Shadow shadow : removed) {
+            for (Meter meter : shadow.meters()) {
+                if (!kept.contains(meter)) {
+                    registry.remove(meter);
+                }
+            }
+        }
+    }
+
+    private static final class Shadow {
+
+        final UUID shadowId;
+        final UUID liveId;
+        final double sampleRate;
+        final LocalDateTime registeredAt = LocalDateTime.now();
+
+        final AtomicLong sampled = new AtomicLong();
+        final AtomicLong compared = new AtomicLong();
+        final AtomicLong sameOutput = new AtomicLong();
+        final AtomicLong diverged = new AtomicLong();
+        final AtomicLong differentRule = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final Map<String, AtomicLong> transitions = new ConcurrentHashMap<>();
+        final ArrayDeque<Map<String, Object>> examples = new ArrayDeque<>();
+
+        final Counter sameCounter;
+        final Counter divergedCounter;
+        final Counter errorCounter;
+        final Counter droppedCounter;
+
+        // Fields the shadow plan reads, learned from its last evaluation
+        volatile Set<String> fields;
+
+        Shadow(UUID shadowId, UUID liveId, double sampleRate, MeterRegistry registry) {
+            this.shadowId = shadowId;
+            this.liveId = liveId;
+            this.sampleRate = sampleRate;
+            Tags tags = Tags.of("ruleSet", shadowId.toString(), "live", liveId.toString());
+            this.sameCounter = counter(registry, tags, "same");
+            this.divergedCounter = counter(registry, tags, "diverged");
+            this.errorCounter = counter(registry, tags, "error");
+            this.droppedCounter = counter(registry, tags, "dropped");
+        }
+
+        List<Meter> meters() {
+            return List.of(sameCounter, divergedCounter, errorCounter, droppedCounter);
+        }
+
+        private static Counter counter(MeterRegistry registry, Tags tags, String outcome) {
+            return Counter.builder(EVALUATION_COUNTER)
+                    .description("Sampled live evaluations replayed against a shadow rule set, by outcome")
+                    .tags(tags).tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        Map<String, Object> describe(boolean withExamples) {
+            long comparedCount = compared.get();
+            Map<String, Object> result = new HashMap<>();
+            result.put("shadowRuleSetId", shadowId);
+            result.put("liveRuleSetId", liveId);
+            result.put("sampleRate", sampleRate);
+            result.put("registeredAt", registeredAt);
+            result.put("sampled", sampled.get());
+            result.put("compared", comparedCount);
+            result.put("sameOutput", sameOutput.get());
+            result.put("diverged", diverged.get());
+            result.put("divergenceRate", comparedCount > 0 ? (double) diverged.get() / comparedCount : 0.0);
+            result.put("differentRule", differentRule.get());
+            result.put("errors", errors.get());
+            result.put("dropped", dropped.get());
+
+            List<Map<String, Object>> transitionList = new ArrayList<>();
+            transitions.forEach((transition, count) -> transitionList.add(
+                    Map.of("transition", transition, "count", count.get())));
+            transitionList.sort(Comparator.comparingLong(t -> -(long) t.get("count")));
+            result.put("transitions", transitionList);
+
+            if (withExamples) {
+                synchronized (examples) {
+                    result.put("examples", new ArrayList<>(examples));
+                }
+            }
+            return result;
+        }
+    }
+}
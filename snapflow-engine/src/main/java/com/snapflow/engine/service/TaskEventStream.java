@@ -0,0 +1,478 @@
+package com.snapflow.engine.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent event streams of inbox changes, so clients learn about new or
+ * reassigned work without polling the task list.
+ *
+ * Every committed task change reported by the {@link TaskInboxIndex} becomes
+ * a numbered event ({@code created}, {@code assigned}, {@code updated},
+ * {@code completed} or {@code removed}) addressed to the assignee, candidate
+ * users and candidate groups of the task before and after the change, so a
+ * group also hears that a task left its queue. A subscriber receives the
+ * events addressed to its user or any of its groups.
+ *
+ * The latest events are kept in a bounded buffer. A client reconnecting with
+ * {@code Last-Event-ID} is sent what it missed from the buffer; if the id is
+ * older than the buffer, or from before a restart, it is sent a
+ * {@code reset} event instead and should reload its inbox. Event ids start
+ * from the startup time, so ids of an earlier run are never mistaken for
+ * current ones.
+ *
+ * Connections are asynchronous requests and hold no thread while idle. One
+ * dispatcher thread, off the engine transactions that raise the changes,
+ * routes each event onto the bounded queue of every subscription it is
+ * addressed to; a pool of writer threads drains the queues, one subscription
+ * at a time each, so a client that stops reading only ever holds up itself
+ * and one writer. A subscription whose queue fills up, or whose write has not
+ * returned within {@code send-timeout-ms}, is evicted: its stream is closed
+ * and the client reconnects and replays from the buffer, or resets. A comment
+ * is queued to every stream on an interval to keep idle connections open
+ * through proxies and to detect dead clients.
+ */
+@Service
+public class TaskEventStream implements TaskInboxIndex.ChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskEventStream.class);
+
+    static final String CONNECTIONS_GAUGE = "snapflow.tasks.stream.connections";
+    static final String EVENTS_COUNTER = "snapflow.tasks.stream.events";
+    static final String EVICTIONS_COUNTER = "snapflow.tasks.stream.evictions";
+
+    /** Suggested client reconnection delay */
+    private static final long RECONNECT_MS = 3000;
+
+    private final TaskInboxIndex index;
+    private final int bufferSize;
+    private final int maxConnections;
+    private final long timeoutMs;
+    private final int queueSize;
+    private final long sendTimeoutNanos;
+    private final Counter eventCounter;
+    private final Counter evictionCounter;
+
+    /** Latest events, oldest first, guarded by this */
+    private final ArrayDeque<Delta> buffer = new ArrayDeque<>();
+    /** Id of the latest event, guarded by this */
+    private long sequence;
+
+    private final Map<String, Set<Subscription>> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscription>> byGroup = new ConcurrentHashMap<>();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ScheduledExecutorService dispatcher;
+    private final ExecutorService writers;
+
+    public TaskEventStream(TaskInboxIndex index, MeterRegistry registry,
+            @Value("${snapflow.tasks.stream.buffer-size:10000}") int bufferSize,
+            @Value("${snapflow.tasks.stream.max-connections:10000}") int maxConnections,
+            @Value("${snapflow.tasks.stream.timeout-ms:1800000}") long timeoutMs,
+            @Value("${snapflow.tasks.stream.heartbeat-ms:25000}") long heartbeatMs,
+            @Value("${snapflow.tasks.stream.queue-size:256}") int queueSize,
+            @Value("${snapflow.tasks.stream.writer-threads:4}") int writerThreads,
+            @Value("${snapflow.tasks.stream.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.index = index;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxConnections = maxConnections;
+        this.timeoutMs = timeoutMs;
+        this.queueSize = Math.max(1, queueSize);
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        this.sequence = System.currentTimeMillis() * 1000;
+        this.eventCounter = Counter.builder(EVENTS_COUNTER)
+                .description("Task change events published to inbox streams")
+                .register(registry);
+        this.evictionCounter = Counter.builder(EVICTIONS_COUNTER)
+                .description("Inbox event streams closed for not keeping up")
+                .register(registry);
+        Gauge.builder(CONNECTIONS_GAUGE, connections, AtomicInteger::get)
+                .description("Open inbox event streams")
+                .register(registry);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tasks-event-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(Math.max(1, writerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "tasks-event-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatMs > 0) {
+            dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+        if (sendTimeoutMs > 0) {
+            long interval = Math.max(100, sendTimeoutMs / 2);
+            dispatcher.scheduleWithFixedDelay(this::evictStalled, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        index.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        writers.shutdownNow();
+        new ArrayList<>(subscriptions).forEach(subscription -> subscription.emitter.complete());
+    }
+
+    /**
+     * Open a stream of the events addressed to the user or any of the groups
+     *
+     * @param lastEventId id of the last event the client received, null on a first connection
+     * @throws IllegalStateException when the inbox index is disabled or the connection limit is reached
+     */
+    public SseEmitter subscribe(String user, Collection<String> groups, Long lastEventId) {
+        if (!index.isEnabled()) {
+            throw new IllegalStateException("Task events need the inbox index, which is disabled");
+        }
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new IllegalStateException("Too many open task event streams");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscription subscription = new Subscription(emitter, user, groups);
+        emitter.onCompletion(() -> close(subscription));
+        emitter.onError(error -> close(subscription));
+        try {
+            dispatcher.execute(() -> open(subscription, lastEventId));
+        } catch (RejectedExecutionException e) {
+            close(subscription);
+            throw new IllegalStateException("Task event streams are shutting down");
+        }
+        return emitter;
+    }
+
+    private void open(Subscription subscription, Long lastEventId) {
+        subscriptions.add(subscription);
+        link(byUser, subscription.user, subscription);
+        subscription.groups.forEach(group -> link(byGroup, group, subscription));
+        if (subscription.closed.get()) {
+            // Closed before it was opened
+            unregister(subscription);
+            return;
+        }
+        subscription.enqueue(SseEmitter.event().reconnectTime(RECONNECT_MS).comment("subscribed"));
+        if (lastEventId == null) {
+            return;
+        }
+
+        List<Delta> missed = new ArrayList<>();
+        long latest;
+        boolean complete;
+        synchronized (this) {
+            latest = sequence;
+            long oldest = buffer.isEmpty() ? latest + 1 : buffer.peekFirst().id;
+            complete = lastEventId >= oldest - 1 && lastEventId <= latest;
+            if (complete) {
+                for (Delta delta : buffer) {
+                    if (delta.id > lastEventId) {
+                        missed.add(delta);
+                    }
+                }
+            }
+        }
+        if (!complete) {
+            // The events in between are gone: have the client reload its inbox
+            Map<String, Object> reset = Map.of("type", "reset");
+            SseEmitter.SseEventBuilder event =
+                    SseEmitter.event().id(Long.toString(latest)).data(reset, MediaType.APPLICATION_JSON);
+            subscription.enqueue(event);
+            subscription.lastQueuedId = latest;
+            return;
+        }
+        for (Delta delta : missed) {
+            if (subscription.accepts(delta)) {
+                subscription.send(delta);
+            }
+        }
+        // Anything up to here still waiting for dispatch has been replayed
+        subscription.lastQueuedId = Math.max(subscription.lastQueuedId, latest);
+    }
+
+    private void close(Subscription subscription) {
+        if (subscription.closed.compareAndSet(false, true)) {
+            connections.decrementAndGet();
+            unregister(subscription);
+            subscription.queue.clear();
+        }
+    }
+
+    private void evict(Subscription subscription, String reason) {
+        if (subscription.closed.get()) {
+            return;
+        }
+        logger.info("Closing task event stream of {}: {}", subscription.user, reason);
+        evictionCounter.increment();
+        // Does not wait for a write in progress; the connection closing fails it
+        subscription.emitter.completeWithError(new IOException(reason));
+        close(subscription);
+    }
+
+    private void unregister(Subscription subscription) {
+        subscriptions.remove(subscription);
+        unlink(byUser, subscription.user, subscription);
+        subscription.groups.forEach(group -> unlink(byGroup, group, subscription));
+    }
+
+    // ============ Publishing ============
+
+    @Override
+    public void taskChanged(TaskInboxIndex.Entry before, TaskInboxIndex.Entry after, boolean completed) {
+        // Listed means in someone's inbox: a task gaining its first candidate is new to them
+        boolean wasListed = isListed(before);
+        boolean listed = isListed(after);
+        String type;
+        if (!wasListed && !listed) {
+            return;
+        } else if (!wasListed) {
+            type = "created";
+        } else if (!listed) {
+            type = completed ? "completed" : "removed";
+        } else if (!Objects.equals(before.assignee, after.assignee)
+                || !before.candidateUsers.equals(after.candidateUsers)
+                || !before.candidateGroups.equals(after.candidateGroups)) {
+            type = "assigned";
+        } else if (!before.sameFields(after)) {
+            type = "updated";
+        } else {
+            return;
+        }
+
+        Set<String> users = new HashSet<>();
+        Set<String> groups = new HashSet<>();
+        if (wasListed) {
+            addRecipients(before, users, groups);
+        }
+        if (listed) {
+            addRecipients(after, users, groups);
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", type);
+        payload.put("task", (listed ? after : before).project(TaskInboxService.DEFAULT_FIELDS));
+
+        Delta delta;
+        synchronized (this) {
+            delta = new Delta(++sequence, payload, users, groups);
+            buffer.addLast(delta);
+            if (buffer.size() > bufferSize) {
+                buffer.removeFirst();
+            }
+        }
+        eventCounter.increment();
+        try {
+            dispatcher.execute(() -> dispatch(delta));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; reconnecting clients replay from the buffer of the next run or reset
+        }
+    }
+
+    private static boolean isListed(TaskInboxIndex.Entry task) {
+        return task != null && !task.suspended && (task.assignee != null || !task.candidateUsers.isEmpty()
+                || !task.candidateGroups.isEmpty());
+    }
+
+    private static void addRecipients(TaskInboxIndex.Entry task, Set<String> users, Set<String> groups) {
+        if (task.assignee != null) {
+            users.add(task.assignee);
+        } else {
+            users.addAll(task.candidateUsers);
+            groups.addAll(task.candidateGroups);
+        }
+    }
+
+    private void dispatch(Delta delta) {
+        Set<Subscription> targets = new HashSet<>();
+        for (String user : delta.users) {
+            targets.addAll(byUser.getOrDefault(user, Set.of()));
+        }
+        for (String group : delta.groups) {
+            targets.addAll(byGroup.getOrDefault(group, Set.of()));
+        }
+        for (Subscription subscription : targets) {
+            subscription.send(delta);
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            // A stream with writes still queued is not idle
+            if (subscription.queue.isEmpty()) {
+                subscription.enqueue(SseEmitter.event().comment("keepalive"));
+            }
+        }
+    }
+
+    private void evictStalled() {
+        long now = System.nanoTime();
+        for (Subscription subscription : subscriptions) {
+            long started = subscription.writeStartedNanos;
+            if (started != 0 && now - started > sendTimeoutNanos) {
+                evict(subscription, "send timed out");
+            }
+        }
+    }
+
+    private static void link(Map<String, Set<Subscription>> sets, String key, Subscription subscription) {
+        sets.compute(key, (k, set) -> {
+            Set<Subscription> target = set != null ? set : ConcurrentHashMap.newKeySet();
+            target.add(subscription);
+            return target;
+        });
+    }
+
+    private static void unlink(Map<String, Set<Subscription>> sets, String key, Subscription subscription) {
+        sets.computeIfPresent(key, (k, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * A published change and who it is addressed to
+     */
+    private static final class Delta {
+
+        final long id;
+        final Map<String, Object> payload;
+        final Set<String> users;
+        final Set<String> groups;
+
+        Delta(long id, Map<String, Object> payload, Set<String> users, Set<String> groups) {
+            this.id = id;
+            this.payload = payload;
+            this.users = users;
+            this.groups = groups;
+        }
+    }
+
+    /**
+     * One open stream. Events are queued from the dispatcher thread and
+     * written by at most one writer thread at a time, in order.
+     */
+    private final class Subscription {
+
+        final SseEmitter emitter;
+        final String user;
+        final Set<String> groups;
+        final AtomicBoolean closed = new AtomicBoolean();
+        final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(queueSize);
+        final AtomicBoolean draining = new AtomicBoolean();
+        /** Id of the latest event queued; dispatcher thread only */
+        long lastQueuedId;
+        /** When the write in progress started, 0 when none is */
+        volatile long writeStartedNanos;
+
+        Subscription(SseEmitter emitter, String user, Collection<String> groups) {
+            this.emitter = emitter;
+            this.user = user;
+            this.groups = Set.copyOf(groups);
+        }
+
+        boolean accepts(Delta delta) {
+            if (delta.users.contains(user)) {
+                return true;
+            }
+            for (String group : groups) {
+                if (delta.groups.contains(group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void send(Delta delta) {
+            // Replay may already have queued it
+            if (delta.id <= lastQueuedId) {
+                return;
+            }
+            enqueue(SseEmitter.event().id(Long.toString(delta.id)).data(delta.payload, MediaType.APPLICATION_JSON));
+            lastQueuedId = delta.id;
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                evict(this, queueSize + " events waiting to be sent");
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while ((event = queue.poll()) != null && write(event)) {
+                    // keep draining
+                }
+            } finally {
+                draining.set(false);
+            }
+            // Queued after the last poll but before draining was cleared
+            if (!queue.isEmpty() && !closed.get()) {
+                schedule();
+            }
+        }
+
+        private boolean write(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) {
+                return false;
+            }
+            writeStartedNanos = System.nanoTime();
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping task event stream of {}: {}", user, e.getMessage());
+                emitter.completeWithError(e);
+                close(this);
+                return false;
+            } finally {
+                writeStartedNanos = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,911 @@
+package com.snapflow.engine.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEventType;
+import org.flowable.common.engine.api.delegate.event.FlowableEntityEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEventListener;
+import org.flowable.common.engine.impl.cfg.TransactionContext;
+import org.flowable.common.engine.impl.cfg.TransactionState;
+import org.flowable.common.engine.impl.context.Context;
+import org.flowable.common.engine.impl.interceptor.CommandContext;
+import org.flowable.engine.ManagementService;
+import org.flowable.engine.RuntimeService;
+import org.flowable.identitylink.api.IdentityLinkType;
+import org.flowable.identitylink.service.impl.persistence.entity.IdentityLinkEntity;
+import org.flowable.task.api.Task;
+import org.flowable.task.service.impl.persistence.entity.TaskEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the active tasks, kept up to date from Flowable engine
+ * events so that inbox pages are answered without touching the task and
+ * identity link tables.
+ *
+ * Tasks are held in sets ordered newest first, one for all tasks and one per
+ * assignee, candidate user, candidate group and process instance. A page
+ * walks the smallest set that covers the filter from the cursor position
+ * (merging the candidate user and group sets), so it costs the page size
+ * rather than the inbox size. Suspended tasks are in no inbox and are only
+ * held by id. Each task is held as compact typed fields and only turned into
+ * a map for the tasks of a page; the index reports an estimate of the heap it
+ * holds alongside its size.
+ *
+ * Changes are applied when the engine transaction that made them commits,
+ * reading the task entity as it was committed; a rolled back transaction
+ * leaves the index untouched. The index is loaded from the database at
+ * startup, and optionally again on an interval to pick up changes made by
+ * other engines sharing the database, which raise no events here. Events
+ * arriving during a load are applied to the live index and replayed on the
+ * new one before it replaces it; every change is idempotent, so replaying
+ * one the load already saw is harmless.
+ *
+ * Until the first load completes {@link #isReady()} is false and
+ * {@link TaskInboxService} queries the database instead.
+ */
+@Component
+public class TaskInboxIndex implements FlowableEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskInboxIndex.class);
+
+    static final String SIZE_GAUGE = "snapflow.tasks.inbox.index.size";
+    static final String PRINCIPALS_GAUGE = "snapflow.tasks.inbox.index.principals";
+    static final String HEAP_GAUGE = "snapflow.tasks.inbox.index.heap";
+    static final String LAG_TIMER = "snapflow.tasks.inbox.index.lag";
+    static final String LOAD_TIMER = "snapflow.tasks.inbox.index.load";
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator.comparingLong((Entry entry) -> entry.createTime)
+            .reversed()
+            .thenComparing(entry -> entry.id, Comparator.reverseOrder());
+
+    private static final Posting EMPTY = new Posting();
+
+    private static final String BATCH_ATTRIBUTE = TaskInboxIndex.class.getName() + ".changes";
+
+    private static final FlowableEngineEventType[] EVENT_TYPES = {
+            FlowableEngineEventType.ENTITY_CREATED, FlowableEngineEventType.ENTITY_UPDATED,
+            FlowableEngineEventType.ENTITY_DELETED, FlowableEngineEventType.ENTITY_SUSPENDED,
+            FlowableEngineEventType.ENTITY_ACTIVATED, FlowableEngineEventType.TASK_CREATED,
+            FlowableEngineEventType.TASK_ASSIGNED, FlowableEngineEventType.TASK_COMPLETED };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RuntimeService runtimeService;
+    private final String taskTable;
+    private final String identityLinkTable;
+    private final boolean enabled;
+    private final long reloadIntervalMs;
+    private final Timer lagTimer;
+    private final Timer loadTimer;
+
+    private final Object loadLock = new Object();
+    private volatile Postings postings = new Postings();
+    private volatile boolean ready;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    /** Changes applied while a load is running, guarded by this */
+    private List<Consumer<Postings>> replay;
+
+    private ScheduledExecutorService scheduler;
+
+    public TaskInboxIndex(JdbcTemplate jdbcTemplate, ManagementService managementService,
+            RuntimeService runtimeService, MeterRegistry registry,
+            @Value("${snapflow.tasks.inbox.index.enabled:true}") boolean enabled,
+            @Value("${snapflow.tasks.inbox.index.reload-interval-ms:0}") long reloadIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.runtimeService = runtimeService;
+        this.taskTable = managementService.getTableName(Task.class);
+        this.identityLinkTable = managementService.getTableName(IdentityLinkEntity.class);
+        this.enabled = enabled;
+        this.reloadIntervalMs = reloadIntervalMs;
+        this.lagTimer = Timer.builder(LAG_TIMER)
+                .description("Time from a task change in the engine to its visibility in the inbox index")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+        this.loadTimer = Timer.builder(LOAD_TIMER)
+                .description("Time to load the inbox index from the database")
+                .register(registry);
+        Gauge.builder(SIZE_GAUGE, this, index -> index.postings.tasks.size())
+                .description("Tasks held by the inbox index")
+                .register(registry);
+        Gauge.builder(PRINCIPALS_GAUGE, this, index -> index.postings.principalCount())
+                .description("Assignees, candidate users and candidate groups with an inbox in the index")
+                .register(registry);
+        Gauge.builder(HEAP_GAUGE, this, index -> index.postings.bytes)
+                .description("Estimated heap held by the inbox index")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Task inbox index is disabled");
+            return;
+        }
+        // Listen before loading so nothing committed in between is missed
+        runtimeService.addEventListener(this, EVENT_TYPES);
+        safeLoad();
+        if (reloadIntervalMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tasks-inbox-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::safeLoad, reloadIntervalMs, reloadIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (enabled) {
+            runtimeService.removeEventListener(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Receives every committed change of a task as the index applies it;
+     * changes picked up by a reload from the database are not reported
+     */
+    interface ChangeListener {
+
+        /**
+         * @param before    the task before the change, null if it was not indexed
+         * @param after     the task after the change, null if it was removed
+         * @param completed whether a removal is the task being completed
+         */
+        void taskChanged(Entry before, Entry after, boolean completed);
+    }
+
+    void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void safeLoad() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            logger.warn("Could not load the task inbox index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rebuild the index from the task and identity link tables, replacing
+     * the current one once it is complete
+     */
+    public void load() {
+        synchronized (loadLock) {
+            long startTime = System.nanoTime();
+            synchronized (this) {
+                replay = new ArrayList<>();
+            }
+            Postings loaded = new Postings();
+            try {
+                loadTasks(loaded);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    replay = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                replay.forEach(change -> change.accept(loaded));
+                replay = null;
+                postings = loaded;
+                ready = true;
+            }
+            long elapsed = System.nanoTime() - startTime;
+            loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("Loaded {} task(s) into the inbox index in {}ms", loaded.tasks.size(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    private void loadTasks(Postings loaded) {
+        StringBuilder sql = new StringBuilder("SELECT SUSPENSION_STATE_");
+        TaskInboxService.FIELDS.values().forEach(column -> sql.append(", ").append(column));
+        sql.append(" FROM ").append(taskTable);
+        jdbcTemplate.query(sql.toString(), (ResultSet rs) -> {
+            loaded.put(Entry.read(rs));
+        });
+        jdbcTemplate.query("SELECT TASK_ID_, USER_ID_, GROUP_ID_ FROM " + identityLinkTable
+                + " WHERE TYPE_ = ? AND TASK_ID_ IS NOT NULL", (ResultSet rs) -> {
+                    loaded.candidate(rs.getString("TASK_ID_"), rs.getString("USER_ID_"), rs.getString("GROUP_ID_"),
+                            true);
+                }, IdentityLinkType.CANDIDATE);
+    }
+
+    // ============ Engine events ============
+
+    @Override
+    public void onEvent(FlowableEvent event) {
+        if (!(event instanceof FlowableEntityEvent)) {
+            return;
+        }
+        Object entity = ((FlowableEntityEvent) event).getEntity();
+        Change change;
+        if (entity instanceof TaskEntity) {
+            TaskEntity task = (TaskEntity) entity;
+            if (event.getType() == FlowableEngineEventType.ENTITY_DELETED
+                    || event.getType() == FlowableEngineEventType.TASK_COMPLETED) {
+                change = new Change(task.getId(), event.getType() == FlowableEngineEventType.TASK_COMPLETED,
+                        index -> index.remove(task.getId()));
+            } else {
+                // Read on commit, so several events of one transaction leave its final state
+                change = new Change(task.getId(), false, index -> index.update(task));
+            }
+        } else if (entity instanceof IdentityLinkEntity) {
+            IdentityLinkEntity link = (IdentityLinkEntity) entity;
+            if (link.getTaskId() == null || !IdentityLinkType.CANDIDATE.equals(link.getType())
+                    || event.getType() == FlowableEngineEventType.ENTITY_UPDATED) {
+                return;
+            }
+            boolean added = event.getType() != FlowableEngineEventType.ENTITY_DELETED;
+            change = new Change(link.getTaskId(), false,
+                    index -> index.candidate(link.getTaskId(), link.getUserId(), link.getGroupId(), added));
+        } else {
+            return;
+        }
+
+        // Changes of one transaction are applied together once it commits
+        CommandContext commandContext = Context.getCommandContext();
+        TransactionContext transaction = Context.getTransactionContext();
+        if (commandContext == null || transaction == null) {
+            apply(List.of(change), System.nanoTime());
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Change> batch = (List<Change>) commandContext.getAttribute(BATCH_ATTRIBUTE);
+        if (batch == null) {
+            List<Change> changes = new ArrayList<>();
+            long raisedAt = System.nanoTime();
+            commandContext.addAttribute(BATCH_ATTRIBUTE, changes);
+            transaction.addTransactionListener(TransactionState.COMMITTED, committed -> apply(changes, raisedAt));
+            batch = changes;
+        }
+        batch.add(change);
+    }
+
+    private void apply(List<Change> changes, long raisedAt) {
+        synchronized (this) {
+            Postings current = postings;
+            Map<String, Entry> before = new LinkedHashMap<>();
+            Set<String> completed = new HashSet<>();
+            for (Change change : changes) {
+                if (!before.containsKey(change.taskId)) {
+                    before.put(change.taskId, current.tasks.get(change.taskId));
+                }
+                if (change.completed) {
+                    completed.add(change.taskId);
+                }
+                change.operation.accept(current);
+                if (replay != null) {
+                    replay.add(change.operation);
+                }
+            }
+            // Under the lock, so listeners see one change per task and transaction, in commit order
+            for (Map.Entry<String, Entry> task : before.entrySet()) {
+                Entry after = current.tasks.get(task.getKey());
+                if (task.getValue() != after) {
+                    notifyListeners(task.getValue(), after, completed.contains(task.getKey()));
+                }
+            }
+        }
+        lagTimer.record(System.nanoTime() - raisedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private void notifyListeners(Entry before, Entry after, boolean completed) {
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.taskChanged(before, after, completed);
+            } catch (RuntimeException e) {
+                logger.warn("Task change listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        // A broken index must never fail task operations; the next load repairs it
+        return false;
+    }
+
+    @Override
+    public boolean isFireOnTransactionLifecycleEvent() {
+        return false;
+    }
+
+    @Override
+    public String getOnTransaction() {
+        return null;
+    }
+
+    // ============ Reads ============
+
+    /**
+     * The page of tasks matching the filter after the given position, with
+     * the same semantics and cursors as the database query of
+     * {@link TaskInboxService}
+     */
+    TaskInboxService.Page page(TaskInboxService.Filter filter, Timestamp afterTime, String afterId, int limit,
+            List<String> fields, boolean includeTotal) {
+        Postings index = postings;
+        Entry after = afterTime == null ? null : new Entry(afterId, afterTime.getTime());
+        List<Map<String, Object>> tasks = new ArrayList<>(limit);
+        String nextCursor = null;
+        Entry last = null;
+        Iterator<Entry> candidates = index.scan(filter, after);
+        while (candidates.hasNext()) {
+            Entry entry = candidates.next();
+            if (!entry.matches(filter)) {
+                continue;
+            }
+            if (tasks.size() == limit) {
+                nextCursor = TaskInboxService.encodeCursor(new Timestamp(last.createTime), last.id);
+                break;
+            }
+            tasks.add(entry.project(fields));
+            last = entry;
+        }
+        return new TaskInboxService.Page(tasks, nextCursor, includeTotal ? index.count(filter) : null);
+    }
+
+    /**
+     * An index update raised by an engine event, applied when its
+     * transaction commits
+     */
+    private static final class Change {
+
+        final String taskId;
+        final boolean completed;
+        final Consumer<Postings> operation;
+
+        Change(String taskId, boolean completed, Consumer<Postings> operation) {
+            this.taskId = taskId;
+            this.completed = completed;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * A task as the index holds it: the response fields as typed values
+     * rather than a map, which is only built for the tasks of a page. Entries
+     * are immutable and ordered by creation time and id only, so a changed
+     * task is swapped for a new entry at the same position.
+     */
+    static final class Entry {
+
+        private static final long NO_DATE = Long.MIN_VALUE;
+
+        // Rough heap costs on a 64-bit JVM with compressed references
+        private static final int ENTRY_BYTES = 96;
+        private static final int BY_ID_BYTES = 48;
+        private static final int LINK_BYTES = 40;
+        private static final int STRING_BYTES = 40;
+        private static final int SET_BYTES = 64;
+
+        final String id;
+        final long createTime;
+        final String name;
+        final String description;
+        final String assignee;
+        final String owner;
+        final long dueDate;
+        final int priority;
+        final String category;
+        final String formKey;
+        final String taskDefinitionKey;
+        final String processInstanceId;
+        final String processDefinitionId;
+        final String executionId;
+        final String tenantId;
+        final boolean suspended;
+        final Set<String> candidateUsers;
+        final Set<String> candidateGroups;
+
+        private Entry(String id, Date createTime, String name, String description, String assignee, String owner,
+                Date dueDate, int priority, String category, String formKey, String taskDefinitionKey,
+                String processInstanceId, String processDefinitionId, String executionId, String tenantId,
+                boolean suspended, Set<String> candidateUsers, Set<String> candidateGroups) {
+            this.id = id;
+            this.createTime = createTime != null ? createTime.getTime() : 0;
+            this.name = name;
+            this.description = description;
+            this.assignee = assignee;
+            this.owner = owner;
+            this.dueDate = dueDate != null ? dueDate.getTime() : NO_DATE;
+            this.priority = priority;
+            this.category = category;
+            this.formKey = formKey;
+            this.taskDefinitionKey = taskDefinitionKey;
+            this.processInstanceId = processInstanceId;
+            this.processDefinitionId = processDefinitionId;
+            this.executionId = executionId;
+            this.tenantId = tenantId;
+            this.suspended = suspended;
+            this.candidateUsers = candidateUsers;
+            this.candidateGroups = candidateGroups;
+        }
+
+        /** Same task with other candidates; the fields are shared, not copied */
+        private Entry(Entry task, Set<String> candidateUsers, Set<String> candidateGroups) {
+            this.id = task.id;
+            this.createTime = task.createTime;
+            this.name = task.name;
+            this.description = task.description;
+            this.assignee = task.assignee;
+            this.owner = task.owner;
+            this.dueDate = task.dueDate;
+            this.priority = task.priority;
+            this.category = task.category;
+            this.formKey = task.formKey;
+            this.taskDefinitionKey = task.taskDefinitionKey;
+            this.processInstanceId = task.processInstanceId;
+            this.processDefinitionId = task.processDefinitionId;
+            this.executionId = task.executionId;
+            this.tenantId = task.tenantId;
+            this.suspended = task.suspended;
+            this.candidateUsers = candidateUsers;
+            this.candidateGroups = candidateGroups;
+        }
+
+        /** Position-only entry for seeking to a cursor */
+        private Entry(String id, long createTime) {
+            this(id, new Date(createTime), null, null, null, null, null, 0, null, null, null, null, null, null,
+                    null, true, Set.of(), Set.of());
+        }
+
+        /**
+         * The task of the current row, selected with the columns of
+         * {@link TaskInboxService#FIELDS} and SUSPENSION_STATE_, without candidates
+         */
+        static Entry read(ResultSet rs) throws SQLException {
+            return new Entry(rs.getString("ID_"), rs.getTimestamp("CREATE_TIME_"), rs.getString("NAME_"),
+                    rs.getString("DESCRIPTION_"), rs.getString("ASSIGNEE_"), rs.getString("OWNER_"),
+                    rs.getTimestamp("DUE_DATE_"), rs.getInt("PRIORITY_"), rs.getString("CATEGORY_"),
+                    rs.getString("FORM_KEY_"), rs.getString("TASK_DEF_KEY_"), rs.getString("PROC_INST_ID_"),
+                    rs.getString("PROC_DEF_ID_"), rs.getString("EXECUTION_ID_"), rs.getString("TENANT_ID_"),
+                    rs.getInt("SUSPENSION_STATE_") != 1, Set.of(), Set.of());
+        }
+
+        /**
+         * The task as the engine holds it, keeping the candidates of {@code current}
+         */
+        static Entry of(TaskEntity task, Entry current) {
+            return new Entry(task.getId(), task.getCreateTime(), task.getName(), task.getDescription(),
+                    task.getAssignee(), task.getOwner(), task.getDueDate(), task.getPriority(), task.getCategory(),
+                    task.getFormKey(), task.getTaskDefinitionKey(), task.getProcessInstanceId(),
+                    task.getProcessDefinitionId(), task.getExecutionId(), task.getTenantId(), task.isSuspended(),
+                    current != null ? current.candidateUsers : Set.of(),
+                    current != null ? current.candidateGroups : Set.of());
+        }
+
+        Entry withCandidates(Set<String> users, Set<String> groups) {
+            return users == candidateUsers && groups == candidateGroups ? this : new Entry(this, users, groups);
+        }
+
+        boolean matches(TaskInboxService.Filter filter) {
+            if (suspended) {
+                return false;
+            }
+            if (filter.assignee != null && !filter.assignee.equals(assignee)) {
+                return false;
+            }
+            if (filter.processInstanceId != null && !filter.processInstanceId.equals(processInstanceId)) {
+                return false;
+            }
+            if (filter.candidateUser == null && filter.candidateGroups.isEmpty()) {
+                return true;
+            }
+            if (assignee != null) {
+                return false;
+            }
+            if (filter.candidateUser != null && candidateUsers.contains(filter.candidateUser)) {
+                return true;
+            }
+            for (String group : filter.candidateGroups) {
+                if (candidateGroups.contains(group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Whether the response fields are the same; candidates and suspension are not compared
+         */
+        boolean sameFields(Entry other) {
+            return id.equals(other.id) && createTime == other.createTime && dueDate == other.dueDate
+                    && priority == other.priority && Objects.equals(name, other.name)
+                    && Objects.equals(description, other.description) && Objects.equals(assignee, other.assignee)
+                    && Objects.equals(owner, other.owner) && Objects.equals(category, other.category)
+                    && Objects.equals(formKey, other.formKey)
+                    && Objects.equals(taskDefinitionKey, other.taskDefinitionKey)
+                    && Objects.equals(processInstanceId, other.processInstanceId)
+                    && Objects.equals(processDefinitionId, other.processDefinitionId)
+                    && Objects.equals(executionId, other.executionId) && Objects.equals(tenantId, other.tenantId);
+        }
+
+        Map<String, Object> project(List<String> selected) {
+            Map<String, Object> task = new LinkedHashMap<>();
+            for (String field : selected) {
+                task.put(field, get(field));
+            }
+            return task;
+        }
+
+        /**
+         * A response field of {@link TaskInboxService#FIELDS}; dates are new
+         * objects, since they are mutable
+         */
+        private Object get(String field) {
+            switch (field) {
+                case "id":
+                    return id;
+                case "name":
+                    return name;
+                case "description":
+                    return description;
+                case "assignee":
+                    return assignee;
+                case "owner":
+                    return owner;
+                case "createTime":
+                    return new Date(createTime);
+                case "dueDate":
+                    return dueDate != NO_DATE ? new Date(dueDate) : null;
+                case "priority":
+                    return priority;
+                case "category":
+                    return category;
+                case "formKey":
+                    return formKey;
+                case "taskDefinitionKey":
+                    return taskDefinitionKey;
+                case "processInstanceId":
+                    return processInstanceId;
+                case "processDefinitionId":
+                    return processDefinitionId;
+                case "executionId":
+                    return executionId;
+                case "tenantId":
+                    return tenantId;
+                default:
+                    throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+
+        /**
+         * Estimated heap held for this task: the entry, its strings and
+         * candidate sets, and its links from the id map and posting sets.
+         * Strings shared with other entries are counted for each.
+         */
+        long bytes() {
+            long bytes = ENTRY_BYTES + BY_ID_BYTES + bytes(id) + bytes(name) + bytes(description) + bytes(assignee)
+                    + bytes(owner) + bytes(category) + bytes(formKey) + bytes(taskDefinitionKey)
+                    + bytes(processInstanceId) + bytes(processDefinitionId) + bytes(executionId) + bytes(tenantId)
+                    + bytes(candidateUsers) + bytes(candidateGroups);
+            if (!suspended) {
+                int links = 1 + (processInstanceId != null ? 1 : 0)
+                        + (assignee != null ? 1 : candidateUsers.size() + candidateGroups.size());
+                bytes += (long) links * LINK_BYTES;
+            }
+            return bytes;
+        }
+
+        private static long bytes(String value) {
+            return value == null ? 0 : STRING_BYTES + value.length();
+        }
+
+        private static long bytes(Set<String> values) {
+            if (values.isEmpty()) {
+                return 0;
+            }
+            long bytes = SET_BYTES;
+            for (String value : values) {
+                bytes += BY_ID_BYTES + bytes(value);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * The active tasks under one key, newest first, and how many there are:
+     * the size of a skip list set is a walk over all of it. Written only
+     * under the monitor of the owning {@link TaskInboxIndex}.
+     */
+    static final class Posting {
+
+        final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        volatile int size;
+
+        void add(Entry entry) {
+            if (entries.add(entry)) {
+                size++;
+            }
+        }
+
+        boolean remove(Entry entry) {
+            if (entries.remove(entry)) {
+                size--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One generation of the index. Written only under the monitor of the
+     * owning {@link TaskInboxIndex}; read concurrently without locking.
+     */
+    static final class Postings {
+
+        final Map<String, Entry> tasks = new ConcurrentHashMap<>();
+        final Posting all = new Posting();
+        final Map<String, Posting> byAssignee = new ConcurrentHashMap<>();
+        final Map<String, Posting> byCandidateUser = new ConcurrentHashMap<>();
+        final Map<String, Posting> byCandidateGroup = new ConcurrentHashMap<>();
+        final Map<String, Posting> byProcessInstance = new ConcurrentHashMap<>();
+        /** Estimated heap held by the entries, see {@link Entry#bytes()} */
+        volatile long bytes;
+
+        int principalCount() {
+            return byAssignee.size() + byCandidateUser.size() + byCandidateGroup.size();
+        }
+
+        void update(TaskEntity task) {
+            put(Entry.of(task, tasks.get(task.getId())));
+        }
+
+        void candidate(String taskId, String userId, String groupId, boolean added) {
+            Entry current = tasks.get(taskId);
+            if (current == null) {
+                return;
+            }
+            Set<String> users = userId == null ? current.candidateUsers : with(current.candidateUsers, userId, added);
+            Set<String> groups = groupId == null ? current.candidateGroups
+                    : with(current.candidateGroups, groupId, added);
+            Entry updated = current.withCandidates(users, groups);
+            if (updated != current) {
+                put(updated);
+            }
+        }
+
+        void put(Entry entry) {
+            Entry previous = tasks.put(entry.id, entry);
+            if (previous != null) {
+                unlink(previous);
+            }
+            bytes += entry.bytes();
+            // Suspended tasks are in no inbox
+            if (entry.suspended) {
+                return;
+            }
+            all.add(entry);
+            link(byProcessInstance, entry.processInstanceId, entry);
+            if (entry.assignee != null) {
+                link(byAssignee, entry.assignee, entry);
+            } else {
+                entry.candidateUsers.forEach(user -> link(byCandidateUser, user, entry));
+                entry.candidateGroups.forEach(group -> link(byCandidateGroup, group, entry));
+            }
+        }
+
+        void remove(String taskId) {
+            Entry previous = tasks.remove(taskId);
+            if (previous != null) {
+                unlink(previous);
+            }
+        }
+
+        private void unlink(Entry entry) {
+            bytes -= entry.bytes();
+            all.remove(entry);
+            unlink(byProcessInstance, entry.processInstanceId, entry);
+            unlink(byAssignee, entry.assignee, entry);
+            entry.candidateUsers.forEach(user -> unlink(byCandidateUser, user, entry));
+            entry.candidateGroups.forEach(group -> unlink(byCandidateGroup, group, entry));
+        }
+
+        private static void link(Map<String, Posting> postings, String key, Entry entry) {
+            if (key != null) {
+                postings.computeIfAbsent(key, k -> new Posting()).add(entry);
+            }
+        }
+
+        private static void unlink(Map<String, Posting> postings, String key, Entry entry) {
+            if (key == null) {
+                return;
+            }
+            Posting posting = postings.get(key);
+            if (posting != null && posting.remove(entry) && posting.size == 0) {
+                postings.remove(key);
+            }
+        }
+
+        /**
+         * Entries after the given position, newest first, from the narrowest
+         * sets covering the filter. May include entries the filter rejects.
+         */
+        Iterator<Entry> scan(TaskInboxService.Filter filter, Entry after) {
+            if (filter.processInstanceId != null) {
+                return tail(byProcessInstance.get(filter.processInstanceId), after);
+            }
+            if (filter.candidateUser != null || !filter.candidateGroups.isEmpty()) {
+                List<Iterator<Entry>> sources = new ArrayList<>();
+                if (filter.candidateUser != null) {
+                    sources.add(tail(byCandidateUser.get(filter.candidateUser), after));
+                }
+                for (String group : new HashSet<>(filter.candidateGroups)) {
+                    sources.add(tail(byCandidateGroup.get(group), after));
+                }
+                return sources.size() == 1 ? sources.get(0) : new MergedIterator(sources);
+            }
+            if (filter.assignee != null) {
+                return tail(byAssignee.get(filter.assignee), after);
+            }
+            return tail(all, after);
+        }
+
+        /**
+         * Number of tasks matching the filter. When a single posting holds
+         * exactly those tasks this is its size; otherwise the narrowest
+         * postings covering the filter are counted through, never the whole
+         * index unless the filter is that wide.
+         */
+        long count(TaskInboxService.Filter filter) {
+            boolean byCandidate = filter.candidateUser != null || !filter.candidateGroups.isEmpty();
+            Posting exact = null;
+            if (filter.processInstanceId != null) {
+                if (filter.assignee == null && !byCandidate) {
+                    exact = orEmpty(byProcessInstance.get(filter.processInstanceId));
+                }
+            } else if (byCandidate) {
+                if (filter.assignee == null) {
+                    if (filter.candidateGroups.isEmpty()) {
+                        exact = orEmpty(byCandidateUser.get(filter.candidateUser));
+                    } else if (filter.candidateUser == null && new HashSet<>(filter.candidateGroups).size() == 1) {
+                        exact = orEmpty(byCandidateGroup.get(filter.candidateGroups.get(0)));
+                    }
+                }
+            } else {
+                exact = filter.assignee != null ? orEmpty(byAssignee.get(filter.assignee)) : all;
+            }
+            if (exact != null) {
+                return exact.size;
+            }
+            long count = 0;
+            for (Iterator<Entry> candidates = scan(filter, null); candidates.hasNext();) {
+                if (candidates.next().matches(filter)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static Posting orEmpty(Posting posting) {
+            return posting != null ? posting : EMPTY;
+        }
+
+        private static Iterator<Entry> tail(Posting posting, Entry after) {
+            if (posting == null) {
+                return Collections.emptyIterator();
+            }
+            return (after == null ? posting.entries : posting.entries.tailSet(after, false)).iterator();
+        }
+
+        private static Set<String> with(Set<String> set, String value, boolean added) {
+            if (set.contains(value) == added) {
+                return set;
+            }
+            Set<String> copy = new HashSet<>(set);
+            if (added) {
+                copy.add(value);
+            } else {
+                copy.remove(value);
+            }
+            return Collections.unmodifiableSet(copy);
+        }
+    }
+
+    /**
+     * Newest-first union of several newest-first iterators, each entry once
+     */
+    private static final class MergedIterator implements Iterator<Entry> {
+
+        private final PriorityQueue<Source> sources =
+                new PriorityQueue<>((a, b) -> NEWEST_FIRST.compare(a.head, b.head));
+        private Entry last;
+
+        MergedIterator(List<Iterator<Entry>> iterators) {
+            for (Iterator<Entry> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    sources.add(new Source(iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!sources.isEmpty() && last != null && NEWEST_FIRST.compare(sources.peek().head, last) == 0) {
+                advance(sources.poll());
+            }
+            return !sources.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Source source = sources.poll();
+            last = source.head;
+            advance(source);
+            return last;
+        }
+
+        private void advance(Source source) {
+            if (source.iterator.hasNext()) {
+                source.head = source.iterator.next();
+                sources.add(source);
+            }
+        }
+
+        private static final class Source {
+
+            final Iterator<Entry> iterator;
+            Entry head;
+
+            Source(Iterator<Entry> iterator) {
+                this.iterator = iterator;
+                this.head = iterator.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.snapflow.engine.service;
+
+import org.flowable.engine.ManagementService;
+import org.flowable.identitylink.service.impl.persistence.entity.IdentityLinkEntity;
+import org.flowable.task.api.Task;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages of active tasks, newest first, read straight from the Flowable task
+ * table with keyset pagination on (create time, id).
+ *
+ * A page is one query bounded by the page size, however deep into the list
+ * it is: the cursor is the position of the last task returned, and the next
+ * page starts strictly after it, so tasks created or completed in between
+ * never make a page skip or repeat rows. Only the requested columns are
+ * selected and no task entities are built. Counting every match is a second
+ * query over the whole filter, so it is only done when asked for.
+ *
+ * Once the {@link TaskInboxIndex} is loaded pages are served from memory
+ * instead, with the same results and interchangeable cursors.
+ */
+@Service
+public class TaskInboxService {
+
+    /** Response field -> column of the task table */
+    static final Map<String, String> FIELDS;
+
+    static {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", "ID_");
+        fields.put("name", "NAME_");
+        fields.put("description", "DESCRIPTION_");
+        fields.put("assignee", "ASSIGNEE_");
+        fields.put("owner", "OWNER_");
+        fields.put("createTime", "CREATE_TIME_");
+        fields.put("dueDate", "DUE_DATE_");
+        fields.put("priority", "PRIORITY_");
+        fields.put("category", "CATEGORY_");
+        fields.put("formKey", "FORM_KEY_");
+        fields.put("taskDefinitionKey", "TASK_DEF_KEY_");
+        fields.put("processInstanceId", "PROC_INST_ID_");
+        fields.put("processDefinitionId", "PROC_DEF_ID_");
+        fields.put("executionId", "EXECUTION_ID_");
+        fields.put("tenantId", "TENANT_ID_");
+        FIELDS = Collections.unmodifiableMap(fields);
+    }
+
+    /** Fields returned when the caller does not choose */
+    public static final List<String> DEFAULT_FIELDS =
+            List.of("id", "name", "assignee", "createTime", "processInstanceId", "formKey");
+
+    private static final int MAX_CANDIDATE_GROUPS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskInboxIndex index;
+    private final String taskTable;
+    private final String identityLinkTable;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public TaskInboxService(JdbcTemplate jdbcTemplate, ManagementService managementService, TaskInboxIndex index,
+            @Value("${snapflow.tasks.inbox.default-page-size:50}") int defaultPageSize,
+            @Value("${snapflow.tasks.inbox.max-page-size:200}") int maxPageSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.index = index;
+        // Resolved through Flowable so a configured table prefix is honored
+        this.taskTable = managementService.getTableName(Task.class);
+        this.identityLinkTable = managementService.getTableName(IdentityLinkEntity.class);
+        this.maxPageSize = Math.max(1, maxPageSize);
+        this.defaultPageSize = Math.min(Math.max(1, defaultPageSize), this.maxPageSize);
+    }
+
+    /**
+     * Which active tasks to list. Candidate filters match unassigned tasks
+     * the user, or any of the groups, is a candidate for.
+     */
+    public static final class Filter {
+
+        final String assignee;
+        final String candidateUser;
+        final List<String> candidateGroups;
+        final String processInstanceId;
+
+        public Filter(String assignee, String candidateUser, List<String> candidateGroups, String processInstanceId) {
+            this.assignee = blankToNull(assignee);
+            this.candidateUser = blankToNull(candidateUser);
+            this.candidateGroups = candidateGroups != null ? candidateGroups : List.of();
+            this.processInstanceId = blankToNull(processInstanceId);
+        }
+    }
+
+    /**
+     * One page of tasks, the cursor of the next page (null on the last page)
+     * and, when requested, the number of tasks matching the filter
+     */
+    public static final class Page {
+
+        private final List<Map<String, Object>> tasks;
+        private final String nextCursor;
+        private final Long total;
+
+        Page(List<Map<String, Object>> tasks, String nextCursor, Long total) {
+            this.tasks = tasks;
+            this.nextCursor = nextCursor;
+            this.total = total;
+        }
+
+        public List<Map<String, Object>> getTasks() {
+            return tasks;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public Long getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Fetch the page after {@code cursor} (the first page when null)
+     *
+     * @param pageSize requested size; null for the default, capped at the configured maximum
+     * @param fields   response fields; null or empty for {@link #DEFAULT_FIELDS}
+     * @throws IllegalArgumentException on an unknown field, a malformed cursor or too many groups
+     */
+    public Page page(Filter filter, String cursor, Integer pageSize, List<String> fields, boolean includeTotal) {
+        List<String> selected = fields == null || fields.isEmpty() ? DEFAULT_FIELDS : fields;
+        for (String field : selected) {
+            if (!FIELDS.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field + ", expected one of " + FIELDS.keySet());
+            }
+        }
+        if (filter.candidateGroups.size() > MAX_CANDIDATE_GROUPS) {
+            throw new IllegalArgumentException("At most " + MAX_CANDIDATE_GROUPS + " candidate groups");
+        }
+        int limit = pageSize == null ? defaultPageSize : Math.min(Math.max(1, pageSize), maxPageSize);
+
+        Object[] position = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : null;
+        if (index.isReady()) {
+            return index.page(filter, position != null ? (Timestamp) position[0] : null,
+                    position != null ? (String) position[1] : null, limit, selected, includeTotal);
+        }
+
+        StringBuilder where = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        appendFilter(filter, where, args);
+
+        StringBuilder sql = new StringBuilder("SELECT T.ID_, T.CREATE_TIME_");
+        for (String field : selected) {
+            String column = FIELDS.get(field);
+            if (!column.equals("ID_") && !column.equals("CREATE_TIME_")) {
+                sql.append(", T.").append(column);
+            }
+        }
+        sql.append(" FROM ").append(taskTable).append(" T").append(where);
+        List<Object> pageArgs = new ArrayList<>(args);
+        if (position != null) {
+            sql.append(" AND (T.CREATE_TIME_ < ? OR (T.CREATE_TIME_ = ? AND T.ID_ < ?))");
+            pageArgs.add(position[0]);
+            pageArgs.add(position[0]);
+            pageArgs.add(position[1]);
+        }
+        // One row past the page tells whether there is a next one
+        sql.append(" ORDER BY T.CREATE_TIME_ DESC, T.ID_ DESC LIMIT ?");
+        pageArgs.add(limit + 1);
+
+        List<Map<String, Object>> tasks = new ArrayList<>(limit + 1);
+        List<String> positions = new ArrayList<>(limit + 1);
+        jdbcTemplate.query(sql.toString(), (ResultSet rs) -> {
+            Map<String, Object> task = new LinkedHashMap<>();
+            for (String field : selected) {
+                task.put(field, read(rs, FIELDS.get(field)));
+            }
+            tasks.add(task);
+            positions.add(encodeCursor(rs.getTimestamp("CREATE_TIME_"), rs.getString("ID_")));
+        }, pageArgs.toArray());
+
+        String nextCursor = null;
+        if (tasks.size() > limit) {
+            tasks.remove(limit);
+            nextCursor = positions.get(limit - 1);
+        }
+        Long total = includeTotal
+                ? jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + taskTable + " T" + where, Long.class,
+                        args.toArray())
+                : null;
+        return new Page(tasks, nextCursor, total);
+    }
+
+    private void appendFilter(Filter filter, StringBuilder where, List<Object> args) {
+        where.append(" WHERE T.SUSPENSION_STATE_ = 1");
+        if (filter.assignee != null) {
+            where.append(" AND T.ASSIGNEE_ = ?");
+            args.add(filter.assignee);
+        }
+        if (filter.processInstanceId != null) {
+            where.append(" AND T.PROC_INST_ID_ = ?");
+            args.add(filter.processInstanceId);
+        }
+        if (filter.candidateUser != null || !filter.candidateGroups.isEmpty()) {
+            where.append(" AND T.ASSIGNEE_ IS NULL AND EXISTS (SELECT 1 FROM ").append(identityLinkTable)
+                    .append(" L WHERE L.TASK_ID_ = T.ID_ AND L.TYPE_ = 'candidate' AND (");
+            boolean first = true;
+            if (filter.candidateUser != null) {
+                where.append("L.USER_ID_ = ?");
+                args.add(filter.candidateUser);
+                first = false;
+            }
+            if (!filter.candidateGroups.isEmpty()) {
+                where.append(first ? "" : " OR ").append("L.GROUP_ID_ IN (");
+                for (int i = 0; i < filter.candidateGroups.size(); i++) {
+                    where.append(i == 0 ? "?" : ", ?");
+                    args.add(filter.candidateGroups.get(i));
+                }
+                where.append(')');
+            }
+            where.append("))");
+        }
+    }
+
+    private static Object read(ResultSet rs, String column) throws SQLException {
+        Object value = rs.getObject(column);
+        // Same JSON shape as java.util.Date from the Flowable API
+        return value instanceof Timestamp ? new java.util.Date(((Timestamp) value).getTime()) : value;
+    }
+
+    static String encodeCursor(Timestamp createTime, String id) {
+        String position = createTime.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Object[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new Object[] { new Timestamp(Long.parseLong(position.substring(0, separator))),
+                    position.substring(separator + 1) };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
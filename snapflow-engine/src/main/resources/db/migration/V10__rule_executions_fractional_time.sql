@@ -0,0 +1,4 @@
+-- Evaluations mostly take well under a millisecond, which INT recorded as 0;
+-- keep the unit but store it to the microsecond
+ALTER TABLE rule_executions
+    ALTER COLUMN execution_time_ms TYPE NUMERIC(12, 3);
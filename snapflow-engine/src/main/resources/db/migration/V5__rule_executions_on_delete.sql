@@ -0,0 +1,10 @@
+-- Rule executions are now written on every evaluation, so they must not
+-- block deleting the rule or rule set they refer to. rule_id keeps no
+-- foreign key: evaluations of a published snapshot report the ids of the
+-- rules it was published with, which may have been deleted since.
+ALTER TABLE rule_executions DROP CONSTRAINT IF EXISTS rule_executions_rule_set_id_fkey;
+ALTER TABLE rule_executions DROP CONSTRAINT IF EXISTS rule_executions_rule_id_fkey;
+
+ALTER TABLE rule_executions
+    ADD CONSTRAINT rule_executions_rule_set_id_fkey
+    FOREIGN KEY (rule_set_id) REFERENCES rule_sets(id) ON DELETE SET NULL;
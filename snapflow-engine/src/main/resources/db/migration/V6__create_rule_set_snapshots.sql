@@ -0,0 +1,12 @@
+-- Published rule set versions. Each publish stores an immutable copy of the
+-- enabled rules; running process instances stay pinned to the version they
+-- started with.
+CREATE TABLE rule_set_snapshots (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    rule_set_id UUID NOT NULL REFERENCES rule_sets(id) ON DELETE CASCADE,
+    version INT NOT NULL,
+    rules JSONB NOT NULL,  -- Rules in priority order: id, name, priority, conditions, actions
+    published_by VARCHAR(255),
+    published_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (rule_set_id, version)
+);
@@ -0,0 +1,2 @@
+-- Opt-in result memoization per rule set
+ALTER TABLE rule_sets ADD COLUMN IF NOT EXISTS memoize BOOLEAN DEFAULT false;
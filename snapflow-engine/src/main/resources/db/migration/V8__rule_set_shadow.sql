@@ -0,0 +1,3 @@
+-- Shadow evaluation: a draft rule set evaluated against a sample of a live one's traffic
+ALTER TABLE rule_sets ADD COLUMN IF NOT EXISTS shadow_of UUID REFERENCES rule_sets(id) ON DELETE SET NULL;
+ALTER TABLE rule_sets ADD COLUMN IF NOT EXISTS shadow_sample_rate DOUBLE PRECISION;
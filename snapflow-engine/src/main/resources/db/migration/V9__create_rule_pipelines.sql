@@ -0,0 +1,9 @@
+-- Named, ordered chains of rule sets evaluated in one call
+CREATE TABLE rule_pipelines (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    name VARCHAR(255) NOT NULL UNIQUE,
+    description TEXT,
+    stages JSONB NOT NULL DEFAULT '[]',  -- Rule set ids in evaluation order
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);